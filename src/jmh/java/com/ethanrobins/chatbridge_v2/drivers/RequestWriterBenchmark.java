@@ -0,0 +1,58 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing request bodies with the {@link RequestWriter} against {@link ObjectMapper} data binding over the
+ * same {@link Request}, for each shape of prompt.
+ * <br>Run with {@code gradle jmh -Pjmh="RequestWriterBenchmark"}; {@code gc.alloc.rate.norm} is the bytes allocated
+ * per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestWriterBenchmark {
+    private static final String MESSAGE = "Everyone, listen up for a moment! **Important**: We've changed the server settings. "
+            + "See [here](https://example.jp/docs) for details. <@&999> ||The schedule is private||";
+
+    @Param({ "message", "embed", "multiTarget" })
+    public String shape;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Request request;
+
+    @Setup
+    public void setup() {
+        Request.Prompt prompt = switch (this.shape) {
+            case "embed" -> {
+                Map<String, String> fields = new LinkedHashMap<>();
+                fields.put("When", "Saturday, 20:00 UTC");
+                fields.put("Where", "#events");
+                yield new Request.Prompt("pmpt_1", "2", "fr", MESSAGE, "Server update", "Moderators", MESSAGE, "See you there", fields);
+            }
+            case "multiTarget" -> new Request.Prompt("pmpt_1", "2", List.of("fr", "de", "pt-BR"), MESSAGE);
+            default -> new Request.Prompt("pmpt_1", "2", "fr", MESSAGE);
+        };
+        this.request = new Request(prompt);
+    }
+
+    @Benchmark
+    public byte[] dataBinding() throws IOException {
+        return this.mapper.writeValueAsBytes(this.request);
+    }
+
+    @Benchmark
+    public byte[] requestWriter() throws IOException {
+        return RequestWriter.write(this.request);
+    }
+}
@@ -0,0 +1,113 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.Model;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding Responses API bodies with the {@link ResponseDecoder} against {@link ObjectMapper} data binding
+ * into the annotated {@link Response} classes, the way the body handlers did before.
+ * <br>The bodies are the assistant outputs of {@code training_data/training.jsonl}, each wrapped in a Responses API
+ * envelope and decoded in turn. Every variant of every target is read, so the lazily decoded embed variants are
+ * measured too. {@code "fields": ""}, which only the decoder accepts, is written as {@code []} for both.
+ * <br>Run with {@code gradle jmh -Pjmh="ResponseDecoderBenchmark"}; {@code gc.alloc.rate.norm} is the bytes allocated
+ * per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecoderBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private byte[][] bodies;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> bodies = new ArrayList<>();
+        try (InputStream in = Objects.requireNonNull(ResponseDecoderBenchmark.class.getResourceAsStream("/training_data/training.jsonl"));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode messages = this.mapper.readTree(line).path("messages");
+                String text = messages.get(messages.size() - 1).path("content").textValue();
+                bodies.add(envelope(bodies.size(), text.replace("\"fields\":\"\"", "\"fields\":[]")));
+            }
+        }
+        this.bodies = bodies.toArray(new byte[0][]);
+    }
+
+    @Benchmark
+    public void dataBinding(Blackhole bh) throws IOException {
+        consume(this.mapper.readValue(nextBody(), Response.class), bh);
+    }
+
+    @Benchmark
+    public void responseDecoder(Blackhole bh) throws IOException {
+        consume(ResponseDecoder.decode(nextBody()), bh);
+    }
+
+    private byte[] nextBody() {
+        byte[] body = this.bodies[this.next];
+        this.next = (this.next + 1) % this.bodies.length;
+        return body;
+    }
+
+    private static void consume(Response response, Blackhole bh) {
+        bh.consume(response.getUsage());
+        Response.Data data = response.getOutput().getContent().getData();
+        bh.consume(data.getSource());
+        for (Response.Data.Target<?> target : data.getTargets()) {
+            if (target instanceof Response.Data.VariantTarget<?> variant) {
+                bh.consume(variant.getContent());
+            } else {
+                bh.consume(target.getExplicit());
+                bh.consume(target.getSafe());
+            }
+        }
+    }
+
+    private byte[] envelope(int id, String text) throws IOException {
+        ObjectNode response = this.mapper.createObjectNode();
+        response.put("id", "resp_" + id);
+        response.put("object", "response");
+        response.put("created_at", 1_700_000_000L);
+        response.put("status", "completed");
+        response.put("background", false);
+        response.putNull("error");
+        response.put("model", Model.getDefault().getId());
+
+        ObjectNode message = response.putArray("output").addObject();
+        message.put("id", "msg_" + id);
+        message.put("type", "message");
+        message.put("status", "completed");
+        message.put("role", "assistant");
+        ObjectNode content = message.putArray("content").addObject();
+        content.put("type", "output_text");
+        content.putArray("annotations");
+        content.put("text", text);
+
+        ObjectNode usage = response.putObject("usage");
+        usage.put("input_tokens", 700);
+        usage.put("output_tokens", 250);
+        usage.put("total_tokens", 950);
+        return this.mapper.writeValueAsBytes(response);
+    }
+}
@@ -1,6 +1,16 @@
 package com.ethanrobins.chatbridge_v2;
 
+import com.ethanrobins.chatbridge_v2.drivers.InMemorySettingsStore;
+import com.ethanrobins.chatbridge_v2.drivers.LocaleWriteBehind;
 import com.ethanrobins.chatbridge_v2.drivers.MySQL;
+import com.ethanrobins.chatbridge_v2.drivers.PromptType;
+import com.ethanrobins.chatbridge_v2.drivers.ReplicaRouter;
+import com.ethanrobins.chatbridge_v2.drivers.SchemaMigrations;
+import com.ethanrobins.chatbridge_v2.drivers.SettingsCache;
+import com.ethanrobins.chatbridge_v2.drivers.SettingsStore;
+import com.ethanrobins.chatbridge_v2.drivers.TranslationCache;
+import com.ethanrobins.chatbridge_v2.drivers.TranslationClient;
+import com.ethanrobins.chatbridge_v2.drivers.UsageLedger;
 import com.ethanrobins.chatbridge_v2.events.GuildEvents;
 import com.ethanrobins.chatbridge_v2.events.MessageInteraction;
 import com.ethanrobins.chatbridge_v2.events.MessageReceived;
@@ -97,9 +107,24 @@ public class ChatBridge {
             }
         }
         loadSecret();
+        PromptType.init(secret);
+        TranslationClient.init(secret);
+        TranslationCache.init(secret);
+        UsageLedger.init(secret);
+        SettingsStore settingsStore = SettingsStore.fromSecret(secret);
+        SettingsCache.set(SettingsCache.fromSecret(secret, settingsStore));
+        if (settingsStore instanceof InMemorySettingsStore) {
+            System.out.println("User and guild settings are kept in memory and will not be saved!");
+        }
+        LocaleWriteBehind.init(secret);
 
         if (!dev) {
             testDatabase();
+            migrateDatabase();
+            ReplicaRouter.init(secret);
+            if (!ReplicaRouter.get().getReplicas().isEmpty()) {
+                System.out.println("Routing settings reads to " + ReplicaRouter.get().getReplicas().size() + " MySQL replicas.");
+            }
         } else {
             System.out.println("Running in dev mode! Database usage is disabled!");
         }
@@ -140,6 +165,19 @@ public class ChatBridge {
         }
     }
 
+    /**
+     * Brings the database schema up to date, see {@link SchemaMigrations}.
+     * @throws RuntimeException If a {@link SQLException} is encountered during a migration.
+     */
+    private static void migrateDatabase() {
+        try {
+            int applied = SchemaMigrations.migrate();
+            System.out.println("MySQL schema is at version " + SchemaMigrations.getLatestVersion() + (applied > 0 ? " (" + applied + " migrations applied)." : "."));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Loads the secret configuration from the {@code secret.ini} file.
      * @throws RuntimeException If the {@code secret.ini} file is not found or an {@link IOException} occurs during loading.
@@ -0,0 +1,363 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.http.HttpHeaders;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <b>Rate-limit-aware admission layer for the translation endpoint.</b>
+ * <p>
+ * Keeps a request bucket and a token bucket that are re-learned from the {@code x-ratelimit-*} headers of every
+ * response. A submission is admitted once both buckets can cover it; otherwise it is held until the next reset.
+ * A {@code retry-after} header (or a {@code 429}) pauses admission altogether until the server says otherwise.
+ * </p>
+ *
+ * <h2>Ordering:</h2>
+ * <p>
+ * Waiting submissions are admitted in arrival order, but a cheaper submission may overtake one that does not fit
+ * the remaining token budget, as long as the skipped submission has not been waiting longer than
+ * {@link #MAX_OVERTAKE_WAIT_NANOS}. This keeps short messages flowing during a burst without starving large embeds.
+ * </p>
+ *
+ * <p>
+ * Until the first response has been seen the limits are unknown and every submission is admitted immediately.
+ * </p>
+ *
+ * <p>
+ * Admitted tickets are completed after {@link #lock} is released, so the caller's continuation (usually the HTTP call)
+ * never runs under it. A ticket that timed out or was cancelled before it could be completed gives its reservation back.
+ * </p>
+ *
+ * @see TranslationClient
+ */
+public class AdmissionController {
+    private static final long MAX_OVERTAKE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> wakeUp = null;
+
+    private long limitRequests = -1;
+    private long limitTokens = -1;
+    private long remainingRequests = -1;
+    private long remainingTokens = -1;
+    private long resetRequestsAt = 0;
+    private long resetTokensAt = 0;
+    private long pausedUntil = 0;
+
+    private long inFlightRequests = 0;
+    private long inFlightTokens = 0;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a new {@link AdmissionController} with its own scheduler thread.
+     */
+    public AdmissionController() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ChatBridge-Admission");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Requests admission for a call estimated to cost {@code estimatedTokens}.
+     * @param estimatedTokens The estimated input plus output tokens of the call.
+     * @return A {@link CompletableFuture} completed with a {@link Ticket} once the call may be sent.
+     *         The ticket must be {@linkplain Ticket#release(int) released} when the call finishes.
+     */
+    public @NotNull CompletableFuture<Ticket> acquire(int estimatedTokens) {
+        Ticket ticket = new Ticket(Math.max(1, estimatedTokens));
+        List<Ticket> admittedTickets;
+        synchronized (this.lock) {
+            this.waiting.addLast(ticket);
+            admittedTickets = drain();
+        }
+        boolean held = !admittedTickets.contains(ticket);
+        complete(admittedTickets);
+        if (held) {
+            this.delayed.incrementAndGet();
+            if (ChatBridge.isDebug()) {
+                System.out.println("Translation held by admission control. Queue depth: " + getQueueDepth());
+            }
+        }
+        return ticket.future;
+    }
+
+    /**
+     * Learns the current budget from the rate-limit headers of a response.
+     * @param statusCode The HTTP status of the response.
+     * @param headers The headers of the response.
+     */
+    public void update(int statusCode, @NotNull HttpHeaders headers) {
+        long now = System.nanoTime();
+        List<Ticket> admittedTickets;
+        synchronized (this.lock) {
+            OptionalLong limitReq = headers.firstValueAsLong("x-ratelimit-limit-requests");
+            OptionalLong limitTok = headers.firstValueAsLong("x-ratelimit-limit-tokens");
+            OptionalLong remainingReq = headers.firstValueAsLong("x-ratelimit-remaining-requests");
+            OptionalLong remainingTok = headers.firstValueAsLong("x-ratelimit-remaining-tokens");
+
+            if (limitReq.isPresent()) this.limitRequests = limitReq.getAsLong();
+            if (limitTok.isPresent()) this.limitTokens = limitTok.getAsLong();
+            // The server has not yet seen the calls we admitted after this one, so keep them reserved
+            if (remainingReq.isPresent()) this.remainingRequests = Math.max(0, remainingReq.getAsLong() - Math.max(0, this.inFlightRequests - 1));
+            if (remainingTok.isPresent()) this.remainingTokens = Math.max(0, remainingTok.getAsLong() - Math.max(0, this.inFlightTokens));
+
+            headers.firstValue("x-ratelimit-reset-requests").map(AdmissionController::parseDurationNanos).ifPresent(d -> this.resetRequestsAt = now + d);
+            headers.firstValue("x-ratelimit-reset-tokens").map(AdmissionController::parseDurationNanos).ifPresent(d -> this.resetTokensAt = now + d);
+
+            Long retryAfter = headers.firstValue("retry-after").map(AdmissionController::parseRetryAfterNanos).orElse(null);
+            if (retryAfter != null) {
+                this.pausedUntil = Math.max(this.pausedUntil, now + retryAfter);
+            } else if (statusCode == 429) {
+                this.pausedUntil = Math.max(this.pausedUntil, Math.max(this.resetRequestsAt, this.resetTokensAt));
+                this.remainingRequests = 0;
+            }
+
+            admittedTickets = drain();
+        }
+        complete(admittedTickets);
+    }
+
+    /**
+     * @return The number of submissions currently held.
+     */
+    public int getQueueDepth() {
+        synchronized (this.lock) {
+            return this.waiting.size();
+        }
+    }
+
+    /**
+     * @return The total number of admitted submissions.
+     */
+    public long getAdmitted() {
+        return this.admitted.get();
+    }
+
+    /**
+     * @return The number of submissions that could not be admitted immediately.
+     */
+    public long getDelayed() {
+        return this.delayed.get();
+    }
+
+    /**
+     * @return The average time a submission waited for admission, in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long count = this.admitted.get();
+        return count == 0 ? 0 : this.totalWaitNanos.get() / (count * 1_000_000.0);
+    }
+
+    /**
+     * @return The longest time a submission waited for admission, in milliseconds.
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get());
+    }
+
+    /**
+     * Stops the scheduler. Held submissions are failed.
+     */
+    public void shutdown() {
+        synchronized (this.lock) {
+            for (Ticket t : this.waiting) {
+                t.future.completeExceptionally(new IllegalStateException("Admission controller has been shut down"));
+            }
+            this.waiting.clear();
+        }
+        this.scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (this.lock) {
+            return "AdmissionController{queueDepth=" + this.waiting.size() + ", remainingRequests=" + this.remainingRequests + "/" + this.limitRequests + ", remainingTokens=" + this.remainingTokens + "/" + this.limitTokens + ", admitted=" + getAdmitted() + ", delayed=" + getDelayed() + ", avgWaitMs=" + String.format("%.1f", getAverageWaitMillis()) + ", maxWaitMs=" + getMaxWaitMillis() + "}";
+        }
+    }
+
+    /**
+     * Reserves the budget of every waiting ticket that currently fits. Must be called while holding {@link #lock}.
+     * @return The admitted tickets, to be passed to {@link #complete(List)} once the lock is released.
+     */
+    private @NotNull List<Ticket> drain() {
+        List<Ticket> admittedTickets = new ArrayList<>();
+        long now = System.nanoTime();
+        if (this.limitRequests >= 0 && now - this.resetRequestsAt >= 0) this.remainingRequests = Math.max(this.remainingRequests, this.limitRequests - this.inFlightRequests);
+        if (this.limitTokens >= 0 && now - this.resetTokensAt >= 0) this.remainingTokens = Math.max(this.remainingTokens, this.limitTokens - this.inFlightTokens);
+
+        if (now - this.pausedUntil < 0) {
+            scheduleWakeUp(this.pausedUntil - now);
+            return admittedTickets;
+        }
+
+        Iterator<Ticket> it = this.waiting.iterator();
+        while (it.hasNext()) {
+            Ticket t = it.next();
+            if (t.future.isDone()) {
+                it.remove();
+                continue;
+            }
+
+            if (this.remainingRequests == 0) break;
+            if (this.remainingTokens >= 0 && this.remainingTokens < t.tokens) {
+                // Let cheaper submissions through, but not past one that has waited too long
+                if (now - t.createdAt > MAX_OVERTAKE_WAIT_NANOS) break;
+                continue;
+            }
+
+            it.remove();
+            admit(t, now);
+            admittedTickets.add(t);
+        }
+
+        if (!this.waiting.isEmpty()) {
+            long next = Math.min(this.resetRequestsAt - now, this.resetTokensAt - now);
+            scheduleWakeUp(next > 0 ? next : TimeUnit.MILLISECONDS.toNanos(250));
+        }
+        return admittedTickets;
+    }
+
+    private void admit(@NotNull Ticket t, long now) {
+        if (this.remainingRequests > 0) this.remainingRequests--;
+        if (this.remainingTokens >= 0) this.remainingTokens = Math.max(0, this.remainingTokens - t.tokens);
+        this.inFlightRequests++;
+        this.inFlightTokens += t.tokens;
+
+        long waited = now - t.createdAt;
+        this.admitted.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waited);
+        this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    /**
+     * Gives back the reservation of an admitted ticket whose future was already completed, by a timeout or a
+     * cancellation, when it was admitted. Must be called while holding {@link #lock}.
+     */
+    private void unadmit(@NotNull Ticket t) {
+        if (this.remainingRequests >= 0) this.remainingRequests++;
+        if (this.remainingTokens >= 0) this.remainingTokens += t.tokens;
+        this.inFlightRequests = Math.max(0, this.inFlightRequests - 1);
+        this.inFlightTokens = Math.max(0, this.inFlightTokens - t.tokens);
+        this.admitted.decrementAndGet();
+    }
+
+    /**
+     * Completes the futures of admitted tickets. Must be called <u>without</u> holding {@link #lock}, since completing a
+     * future runs its dependents. Tickets that were completed in the meantime are unadmitted, and their budget is
+     * offered to the tickets still waiting.
+     */
+    private void complete(@NotNull List<Ticket> tickets) {
+        while (!tickets.isEmpty()) {
+            List<Ticket> abandoned = new ArrayList<>();
+            for (Ticket t : tickets) {
+                if (!t.future.complete(t)) abandoned.add(t);
+            }
+            if (abandoned.isEmpty()) return;
+
+            synchronized (this.lock) {
+                for (Ticket t : abandoned) {
+                    unadmit(t);
+                }
+                tickets = drain();
+            }
+        }
+    }
+
+    private void scheduleWakeUp(long delayNanos) {
+        if (this.wakeUp != null && !this.wakeUp.isDone() && this.wakeUp.getDelay(TimeUnit.NANOSECONDS) <= delayNanos) return;
+        if (this.wakeUp != null) this.wakeUp.cancel(false);
+        this.wakeUp = this.scheduler.schedule(() -> {
+            List<Ticket> admittedTickets;
+            synchronized (this.lock) {
+                this.wakeUp = null;
+                admittedTickets = drain();
+            }
+            complete(admittedTickets);
+        }, Math.max(1, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Parses OpenAI reset durations such as {@code 20ms}, {@code 1s} or {@code 6m0s}.
+     */
+    static long parseDurationNanos(@NotNull String value) {
+        Matcher m = DURATION_PART.matcher(value.trim());
+        double nanos = 0;
+        while (m.find()) {
+            double amount = Double.parseDouble(m.group(1));
+            nanos += switch (m.group(2)) {
+                case "h" -> amount * 3_600_000_000_000.0;
+                case "m" -> amount * 60_000_000_000.0;
+                case "s" -> amount * 1_000_000_000.0;
+                default -> amount * 1_000_000.0;
+            };
+        }
+        return (long) nanos;
+    }
+
+    private static @Nullable Long parseRetryAfterNanos(@NotNull String value) {
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1_000_000_000L);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * An admitted (or waiting) submission. Releasing it returns its reservation to the budget.
+     */
+    public final class Ticket {
+        private final int tokens;
+        private final long createdAt = System.nanoTime();
+        private final CompletableFuture<Ticket> future = new CompletableFuture<>();
+        private boolean released = false;
+
+        private Ticket(int tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Marks the call as finished.
+         * @param actualTokens The tokens the call actually consumed, or a negative value if unknown.
+         */
+        public void release(int actualTokens) {
+            List<Ticket> admittedTickets;
+            synchronized (lock) {
+                if (this.released || !this.future.isDone() || this.future.isCompletedExceptionally()) return;
+                this.released = true;
+
+                inFlightRequests = Math.max(0, inFlightRequests - 1);
+                inFlightTokens = Math.max(0, inFlightTokens - this.tokens);
+                if (actualTokens >= 0 && remainingTokens >= 0) {
+                    // Give back what was over-reserved; never take more than the server will tell us anyway
+                    remainingTokens = Math.max(0, remainingTokens + Math.max(0, this.tokens - actualTokens));
+                }
+                admittedTickets = drain();
+            }
+            complete(admittedTickets);
+        }
+    }
+}
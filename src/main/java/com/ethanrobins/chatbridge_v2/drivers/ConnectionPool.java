@@ -0,0 +1,455 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>Bounded pool of MySQL connections behind {@link MySQL}.</b>
+ * <p>
+ * Opening a connection costs a TCP, TLS and authentication handshake, which used to happen for every
+ * {@link MySQL} instance. The pool keeps up to {@code maxPoolSize} physical connections and hands out wrappers whose
+ * {@link Connection#close()} returns the connection instead of closing it.
+ * </p>
+ *
+ * <p>
+ * Each physical connection also keeps its own cache of server-side prepared statements, so the fixed SQL of
+ * {@link MySQL} is parsed once per connection rather than on every call.
+ * </p>
+ *
+ * <h2>Lifecycle:</h2>
+ * <ul>
+ *     <li>Idle connections are validated with {@link Connection#isValid(int)} before they are handed out, unless
+ *     they were returned within the last 500 ms. A connection that was just working is not worth a round trip.</li>
+ *     <li>Connections older than {@code maxLifetime}, or idle for longer than {@code idleTimeout}, are retired.</li>
+ *     <li>A borrower that waits longer than {@code connectionTimeout} fails with a {@link SQLTransientConnectionException}.</li>
+ *     <li>A connection held for longer than {@code leakDetectionThreshold} is reported once, with the stack trace of
+ *     the code that borrowed it.</li>
+ * </ul>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [mysql]
+ * ; optional
+ * maxPoolSize = 8
+ * connectionTimeout = 5000        ; milliseconds
+ * maxLifetime = 1800000           ; milliseconds
+ * idleTimeout = 600000            ; milliseconds
+ * leakDetectionThreshold = 30000  ; milliseconds, 0 disables
+ * </pre>
+ *
+ * @see Stats
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final int DEFAULT_MAX_POOL_SIZE = 8;
+    private static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_MAX_LIFETIME = Duration.ofMinutes(30);
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration DEFAULT_LEAK_DETECTION_THRESHOLD = Duration.ofSeconds(30);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    /**
+     * Connections returned to the pool more recently than this are handed out again without validation.
+     */
+    private static final long VALIDATION_SKIP_NANOS = Duration.ofMillis(500).toNanos();
+    /**
+     * Connector/J properties for every pooled connection.
+     * <ul>
+     *     <li>{@code useAffectedRows}: upserts report 0 for an unchanged row, see {@link MySQL.State#UNCHANGED}.</li>
+     *     <li>{@code rewriteBatchedStatements}: JDBC batches are sent as multi-row statements.</li>
+     *     <li>{@code useServerPrepStmts}, {@code cachePrepStmts}: statements are prepared once per physical connection
+     *     and reused each time the same SQL is prepared again, instead of being re-parsed by the server.</li>
+     * </ul>
+     */
+    private static final String DRIVER_PROPERTIES = "useAffectedRows=true&rewriteBatchedStatements=true"
+            + "&useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=64&prepStmtCacheSqlLimit=2048";
+
+    private static ConnectionPool instance = null;
+
+    private final @NotNull String url;
+    private final @Nullable String user;
+    private final @Nullable String pass;
+    /**
+     * The maximum number of physical connections.
+     */
+    @Getter
+    private final int maxPoolSize;
+    private final long connectionTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long idleTimeoutNanos;
+    private final long leakDetectionNanos;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder retired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private volatile long maxWaitNanos = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new, empty pool. Connections are opened on demand.
+     * @param url The JDBC url.
+     * @param user The database user.
+     * @param pass The database password.
+     * @param maxPoolSize The maximum number of physical connections.
+     * @param connectionTimeout How long a borrower waits for a connection.
+     * @param maxLifetime The maximum age of a connection.
+     * @param idleTimeout How long a connection may stay idle.
+     * @param leakDetectionThreshold How long a connection may be held before it is reported, or {@link Duration#ZERO} to disable.
+     */
+    public ConnectionPool(@NotNull String url, @Nullable String user, @Nullable String pass, int maxPoolSize, @NotNull Duration connectionTimeout, @NotNull Duration maxLifetime, @NotNull Duration idleTimeout, @NotNull Duration leakDetectionThreshold) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxPoolSize = Math.max(1, maxPoolSize);
+        this.connectionTimeoutNanos = connectionTimeout.toNanos();
+        this.maxLifetimeNanos = maxLifetime.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.leakDetectionNanos = leakDetectionThreshold.toNanos();
+        this.permits = new Semaphore(this.maxPoolSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mysql-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Builds a {@link ConnectionPool} from the {@code [mysql]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new {@link ConnectionPool}.
+     */
+    public static @NotNull ConnectionPool fromSecret(@NotNull Ini secret) {
+        return fromSecret(secret, secret.get("mysql", "address") + ":" + secret.get("mysql", "port"));
+    }
+
+    /**
+     * Builds a {@link ConnectionPool} to another server, such as a read replica, with the database, credentials and
+     * pool settings of the {@code [mysql]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @param host The server's {@code address:port}.
+     * @return A new {@link ConnectionPool}.
+     */
+    public static @NotNull ConnectionPool fromSecret(@NotNull Ini secret, @NotNull String host) {
+        String url = "jdbc:mysql://" + host + "/" + secret.get("mysql", "db") + "?" + DRIVER_PROPERTIES;
+        int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+        Duration connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+        Duration maxLifetime = DEFAULT_MAX_LIFETIME;
+        Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        Duration leakDetection = DEFAULT_LEAK_DETECTION_THRESHOLD;
+
+        try {
+            String maxPoolSizeStr = secret.get("mysql", "maxPoolSize");
+            if (maxPoolSizeStr != null && !maxPoolSizeStr.isBlank()) maxPoolSize = Integer.parseInt(maxPoolSizeStr.trim());
+            connectionTimeout = millisOrDefault(secret.get("mysql", "connectionTimeout"), connectionTimeout);
+            maxLifetime = millisOrDefault(secret.get("mysql", "maxLifetime"), maxLifetime);
+            idleTimeout = millisOrDefault(secret.get("mysql", "idleTimeout"), idleTimeout);
+            leakDetection = millisOrDefault(secret.get("mysql", "leakDetectionThreshold"), leakDetection);
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [mysql] pool configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+        }
+
+        return new ConnectionPool(url, secret.get("mysql", "user"), secret.get("mysql", "pass"), maxPoolSize, connectionTimeout, maxLifetime, idleTimeout, leakDetection);
+    }
+
+    /**
+     * Retrieves the shared {@link ConnectionPool}, creating it from {@link ChatBridge#getSecret()} on first use.
+     * @return The shared {@link ConnectionPool}.
+     */
+    public static synchronized @NotNull ConnectionPool get() {
+        if (instance == null) {
+            instance = fromSecret(ChatBridge.getSecret());
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link ConnectionPool}. The previous instance, if any, is closed.
+     * @param pool The new shared pool, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable ConnectionPool pool) {
+        if (instance != null && instance != pool) {
+            instance.close();
+        }
+        instance = pool;
+    }
+
+    /**
+     * Borrows a connection, waiting up to {@code connectionTimeout} for one to become available.
+     * <br>Closing the returned {@link Connection} returns it to the pool.
+     * @return A validated {@link Connection}.
+     * @throws SQLException If no connection became available in time or a new one could not be opened.
+     */
+    public @NotNull Connection borrow() throws SQLException {
+        if (this.closed) throw new SQLException("The connection pool has been closed");
+
+        long start = System.nanoTime();
+        this.waiting.incrementAndGet();
+        try {
+            if (!this.permits.tryAcquire(this.connectionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                this.timeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(this.connectionTimeoutNanos) + "ms waiting for a MySQL connection. " + getStats());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a MySQL connection", ex);
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) pooled = open();
+
+            long waited = System.nanoTime() - start;
+            this.waitNanos.add(waited);
+            if (waited > this.maxWaitNanos) this.maxWaitNanos = waited;
+            this.borrowed.increment();
+
+            Lease lease = new Lease(pooled, this.leakDetectionNanos > 0 ? new Throwable("Connection borrowed here") : null);
+            this.leases.add(lease);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, lease);
+        } catch (SQLException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return A snapshot of this pool's statistics.
+     */
+    public @NotNull Stats getStats() {
+        int idleCount = this.idle.size();
+        long count = this.borrowed.sum();
+        return new Stats(this.total.get(), this.leases.size(), idleCount, this.waiting.get(), count,
+                this.created.sum(), this.retired.sum(), this.timeouts.sum(), this.leaks.sum(),
+                count > 0 ? TimeUnit.NANOSECONDS.toMicros(this.waitNanos.sum() / count) : 0,
+                TimeUnit.NANOSECONDS.toMicros(this.maxWaitNanos));
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = this.idle.pollFirst()) != null) {
+            retire(pooled);
+        }
+    }
+
+    private @Nullable PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = this.idle.pollFirst()) != null) {
+            long now = System.nanoTime();
+            boolean recent = now - pooled.lastUsed < VALIDATION_SKIP_NANOS;
+            if (now - pooled.createdAt > this.maxLifetimeNanos || (!recent && !isValid(pooled.connection))) {
+                retire(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    private @NotNull PooledConnection open() throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("MySQL JDBC Driver not found.", ex);
+        }
+        Connection connection = DriverManager.getConnection(this.url, this.user, this.pass);
+        this.total.incrementAndGet();
+        this.created.increment();
+        if (ChatBridge.isDebug()) {
+            System.out.println("MySQL connection opened. " + getStats());
+        }
+        return new PooledConnection(connection, System.nanoTime());
+    }
+
+    private void giveBack(@NotNull Lease lease) {
+        this.leases.remove(lease);
+        PooledConnection pooled = lease.pooled;
+        try {
+            boolean broken = lease.broken || pooled.connection.isClosed();
+            if (!broken && !pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            if (broken || this.closed || System.nanoTime() - pooled.createdAt > this.maxLifetimeNanos) {
+                retire(pooled);
+            } else {
+                pooled.lastUsed = System.nanoTime();
+                this.idle.offerFirst(pooled);
+            }
+        } catch (SQLException ex) {
+            retire(pooled);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private void retire(@NotNull PooledConnection pooled) {
+        try {
+            pooled.connection.close();
+        } catch (SQLException ex) {
+            System.err.println("MySQL connection failed to close: " + ex.getMessage());
+        }
+        this.total.decrementAndGet();
+        this.retired.increment();
+        if (ChatBridge.isDebug()) {
+            System.out.println("MySQL connection closed. " + getStats());
+        }
+    }
+
+    private void housekeep() {
+        long now = System.nanoTime();
+        // Least recently used connections sit at the tail
+        for (PooledConnection pooled : this.idle.toArray(new PooledConnection[0])) {
+            if ((now - pooled.lastUsed > this.idleTimeoutNanos || now - pooled.createdAt > this.maxLifetimeNanos) && this.idle.remove(pooled)) {
+                retire(pooled);
+            }
+        }
+        if (this.leakDetectionNanos > 0) {
+            for (Lease lease : this.leases) {
+                if (now - lease.borrowedAt > this.leakDetectionNanos && lease.reported.compareAndSet(false, true)) {
+                    this.leaks.increment();
+                    System.err.println("Possible MySQL connection leak: held for " + TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAt) + "ms. " + getStats());
+                    if (lease.origin != null) lease.origin.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(@NotNull Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private static @NotNull Duration millisOrDefault(@Nullable String value, @NotNull Duration def) {
+        return value != null && !value.isBlank() ? Duration.ofMillis(Long.parseLong(value.trim())) : def;
+    }
+
+    private static final class PooledConnection {
+        private final @NotNull Connection connection;
+        private final long createdAt;
+        private volatile long lastUsed;
+
+        private PooledConnection(@NotNull Connection connection, long createdAt) {
+            this.connection = connection;
+            this.createdAt = createdAt;
+            this.lastUsed = createdAt;
+        }
+    }
+
+    /**
+     * One borrowed connection. Every call is forwarded to the physical connection until the lease is closed.
+     */
+    private final class Lease implements InvocationHandler {
+        private final @NotNull PooledConnection pooled;
+        private final @Nullable Throwable origin;
+        private final long borrowedAt = System.nanoTime();
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private volatile boolean broken = false;
+
+        private Lease(@NotNull PooledConnection pooled, @Nullable Throwable origin) {
+            this.pooled = pooled;
+            this.origin = origin;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (this.returned.compareAndSet(false, true)) giveBack(this);
+                    return null;
+                }
+                case "isClosed" -> {
+                    return this.returned.get() || this.pooled.connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + this.pooled.connection + "]";
+                }
+                default -> {}
+            }
+            if (this.returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(this.pooled.connection, args);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                // Connection-level failures (SQLState class 08) mean the physical connection is unusable
+                if (cause instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                    this.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    /**
+     * A snapshot of pool statistics.
+     * @param total Physical connections currently open.
+     * @param active Connections currently borrowed.
+     * @param idle Connections waiting in the pool.
+     * @param waiting Threads currently waiting for a connection.
+     * @param borrowed Connections handed out since the pool was created.
+     * @param created Physical connections opened since the pool was created.
+     * @param retired Physical connections closed since the pool was created.
+     * @param timeouts Borrowers that gave up waiting.
+     * @param leaks Connections reported as possibly leaked.
+     * @param averageWaitMicros The average time to borrow a connection, including opening it.
+     * @param maxWaitMicros The longest time to borrow a connection.
+     */
+    public record Stats(int total, int active, int idle, int waiting, long borrowed, long created, long retired, long timeouts, long leaks, long averageWaitMicros, long maxWaitMicros) {
+        @Override
+        public String toString() {
+            return "Pool: " + this.total + " open, " + this.active + " active, " + this.idle + " idle, " + this.waiting + " waiting, avg wait " + this.averageWaitMicros + "us, max wait " + this.maxWaitMicros + "us";
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The stored settings of a registered guild, as read from {@code chatbridge_guildstore}.
+ *
+ * @param status Whether the bot is active in the guild.
+ * @param safetyLevel The guild's safety level.
+ */
+public record GuildSettings(boolean status, @NotNull SafetyLevel safetyLevel) {
+    /**
+     * @param safetyLevel The new safety level.
+     * @return A copy of these settings with the given safety level.
+     */
+    public @NotNull GuildSettings withSafetyLevel(@NotNull SafetyLevel safetyLevel) {
+        return new GuildSettings(this.status, safetyLevel);
+    }
+}
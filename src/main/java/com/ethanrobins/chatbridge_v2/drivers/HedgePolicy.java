@@ -0,0 +1,192 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>Request hedging for the translation endpoint.</b>
+ * <p>
+ * Tracks the latency of recent successful calls. When a call has not completed within the configured percentile of
+ * those latencies, {@link TranslationClient} sends the same payload a second time; whichever response arrives first
+ * wins and the other is cancelled. Hedges are limited by a budget that only grows as calls are made, so hedging can
+ * never add more than {@link #getBudgetRatio()} extra calls.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [chatgpt]
+ * hedge = true
+ * hedgePercentile = 95    ; hedge calls slower than the p95 of recent latencies
+ * hedgeBudget = 0.05      ; at most 5% extra calls
+ * </pre>
+ *
+ * @see TranslationClient
+ */
+public class HedgePolicy {
+    private static final int WINDOW = 512;
+    private static final int MIN_SAMPLES = 32;
+    private static final double MAX_BUDGET = 10;
+
+    /**
+     * A policy that never hedges.
+     */
+    public static final HedgePolicy DISABLED = new HedgePolicy(false, 95, 0);
+
+    /**
+     * Whether hedging is enabled.
+     */
+    @Getter
+    private final boolean enabled;
+    /**
+     * The latency percentile (0-100) after which a call is hedged.
+     */
+    @Getter
+    private final double percentile;
+    /**
+     * The maximum ratio of hedged calls to calls.
+     */
+    @Getter
+    private final double budgetRatio;
+
+    private final long[] latencies = new long[WINDOW];
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+    private double budget = 0;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final LongAdder primaryTokens = new LongAdder();
+    private final LongAdder hedgeTokens = new LongAdder();
+
+    public HedgePolicy(boolean enabled, double percentile, double budgetRatio) {
+        this.enabled = enabled;
+        this.percentile = Math.min(100, Math.max(0, percentile));
+        this.budgetRatio = Math.max(0, budgetRatio);
+    }
+
+    /**
+     * Builds a {@link HedgePolicy} from the {@code [chatgpt]} section of the given secret configuration. Hedging is disabled unless {@code hedge = true}.
+     * @param secret The secret configuration.
+     * @return A new {@link HedgePolicy}.
+     */
+    public static @NotNull HedgePolicy fromSecret(@NotNull Ini secret) {
+        if (!"true".equalsIgnoreCase(secret.get("chatgpt", "hedge"))) return DISABLED;
+        try {
+            return new HedgePolicy(true, parse(secret.get("chatgpt", "hedgePercentile"), 95), parse(secret.get("chatgpt", "hedgeBudget"), 0.05));
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid hedge configuration in secret.ini: " + ex.getMessage() + ". Hedging is disabled.");
+            return DISABLED;
+        }
+    }
+
+    /**
+     * Registers a new call and returns how long to wait before hedging it.
+     * @return The hedge delay in milliseconds, or {@code -1} if the call should not be hedged.
+     */
+    public synchronized long onCall() {
+        if (!this.enabled) return -1;
+
+        this.budget = Math.min(MAX_BUDGET, this.budget + this.budgetRatio);
+        if (this.latencyCount < MIN_SAMPLES) return -1;
+
+        long[] sorted = Arrays.copyOf(this.latencies, this.latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(this.percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Spends one unit of the hedge budget.
+     * @return {@code true} if a hedge may be sent.
+     */
+    public synchronized boolean tryHedge() {
+        if (this.budget < 1) return false;
+        this.budget -= 1;
+        this.hedged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the latency of a successful attempt.
+     * @param latencyMillis How long the attempt took, from send to parsed response.
+     */
+    public synchronized void recordLatency(long latencyMillis) {
+        this.latencies[this.latencyIndex] = latencyMillis;
+        this.latencyIndex = (this.latencyIndex + 1) % WINDOW;
+        this.latencyCount = Math.min(WINDOW, this.latencyCount + 1);
+    }
+
+    /**
+     * Records the cost of a completed attempt of a hedged call.
+     * @param hedge Whether the attempt was the hedge.
+     * @param response The parsed response.
+     * @param won Whether this attempt's response was used.
+     */
+    public void recordResult(boolean hedge, @NotNull Response response, boolean won) {
+        (hedge ? this.hedgeTokens : this.primaryTokens).add(response.getUsage().getTotal());
+        if (hedge && won) this.hedgeWins.incrementAndGet();
+
+        if (ChatBridge.isDebug()) {
+            System.out.println("\u001B[35mhedge\u001B[0m " + (hedge ? "secondary " : "primary ") + response.getOpenaiId() + " used " + response.getUsage().getTotal() + " tokens (" + (won ? "won" : "lost") + ")");
+        }
+    }
+
+    /**
+     * Records that a losing attempt was cancelled before its response arrived.
+     */
+    public void recordCancelled() {
+        this.cancelled.incrementAndGet();
+    }
+
+    /**
+     * @return The number of hedges sent.
+     */
+    public long getHedged() {
+        return this.hedged.get();
+    }
+
+    /**
+     * @return The number of hedges whose response was used.
+     */
+    public long getHedgeWins() {
+        return this.hedgeWins.get();
+    }
+
+    /**
+     * @return The number of losing attempts cancelled before completing.
+     */
+    public long getCancelled() {
+        return this.cancelled.get();
+    }
+
+    /**
+     * @return The total tokens reported by hedge attempts that completed.
+     */
+    public long getHedgeTokens() {
+        return this.hedgeTokens.sum();
+    }
+
+    /**
+     * @return The total tokens reported by the primary attempts of hedged calls that completed.
+     */
+    public long getPrimaryTokens() {
+        return this.primaryTokens.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{enabled=" + this.enabled + ", p" + this.percentile + ", budget=" + this.budgetRatio + ", hedged=" + getHedged() + ", hedgeWins=" + getHedgeWins() + ", cancelled=" + getCancelled() + ", hedgeTokens=" + getHedgeTokens() + ", primaryTokens=" + getPrimaryTokens() + "}";
+    }
+
+    private static double parse(@Nullable String value, double def) {
+        return (value == null || value.isBlank()) ? def : Double.parseDouble(value.trim());
+    }
+}
@@ -0,0 +1,151 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <b>Single-flight registry for asynchronous calls.</b>
+ * <p>
+ * Concurrent callers asking for the same key attach to one outstanding call instead of starting their own.
+ * Every caller receives its own {@link CompletableFuture}, so one caller cancelling does not affect the others;
+ * the shared call is only cancelled once every attached caller has cancelled.
+ * </p>
+ *
+ * <h2>Completion:</h2>
+ * <ul>
+ *     <li>A successful result is delivered to every attached caller.</li>
+ *     <li>A failure is propagated, unwrapped, to every attached caller.</li>
+ *     <li>The key is released as soon as the call completes, so later callers start a fresh call.</li>
+ * </ul>
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+public class InFlightRegistry<K, V> {
+    private final ConcurrentHashMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Attaches to the outstanding call for {@code key}, or starts one with {@code call} if there is none.
+     * @param key The key identifying the call.
+     * @param call Starts the call. Only invoked by the caller that creates the flight.
+     * @return A {@link CompletableFuture} owned by this caller, completed with the shared result.
+     */
+    public @NotNull CompletableFuture<V> join(@NotNull K key, @NotNull Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            Flight existing = this.flights.get(key);
+            if (existing != null) {
+                if (existing.attach()) {
+                    this.coalesced.incrementAndGet();
+                    return existing.subscribe();
+                }
+                // Finished or abandoned; replace it below
+            }
+
+            Flight created = new Flight(key);
+            boolean won = existing == null ? this.flights.putIfAbsent(key, created) == null : this.flights.replace(key, existing, created);
+            if (!won) continue;
+
+            created.attach();
+            CompletableFuture<V> subscription = created.subscribe();
+            this.started.incrementAndGet();
+            created.start(call);
+            return subscription;
+        }
+    }
+
+    /**
+     * @return The number of calls currently outstanding.
+     */
+    public int size() {
+        return this.flights.size();
+    }
+
+    /**
+     * @return The number of calls started through this registry.
+     */
+    public long getStarted() {
+        return this.started.get();
+    }
+
+    /**
+     * @return The number of callers that attached to an already outstanding call.
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    private final class Flight {
+        private final @NotNull K key;
+        private final CompletableFuture<V> shared = new CompletableFuture<>();
+        private volatile CompletableFuture<V> source = null;
+        private int callers = 0;
+        private boolean abandoned = false;
+
+        private Flight(@NotNull K key) {
+            this.key = key;
+            this.shared.whenComplete((v, ex) -> flights.remove(this.key, this));
+        }
+
+        private synchronized boolean attach() {
+            if (this.abandoned || this.shared.isDone()) return false;
+            this.callers++;
+            return true;
+        }
+
+        private synchronized void detach() {
+            if (--this.callers > 0 || this.shared.isDone()) return;
+
+            this.abandoned = true;
+            this.shared.cancel(false);
+            CompletableFuture<V> src = this.source;
+            if (src != null) src.cancel(true);
+        }
+
+        private void start(@NotNull Supplier<CompletableFuture<V>> call) {
+            CompletableFuture<V> src;
+            try {
+                src = call.get();
+            } catch (RuntimeException ex) {
+                src = CompletableFuture.failedFuture(ex);
+            }
+            this.source = src;
+
+            src.whenComplete((v, ex) -> {
+                if (ex != null) {
+                    this.shared.completeExceptionally(unwrap(ex));
+                } else {
+                    this.shared.complete(v);
+                }
+            });
+            // Every caller may have cancelled before the call was started
+            if (this.shared.isCancelled()) src.cancel(true);
+        }
+
+        private CompletableFuture<V> subscribe() {
+            CompletableFuture<V> subscription = new CompletableFuture<>();
+            this.shared.whenComplete((v, ex) -> {
+                if (ex != null) {
+                    subscription.completeExceptionally(unwrap(ex));
+                } else {
+                    subscription.complete(v);
+                }
+            });
+            subscription.whenComplete((v, ex) -> {
+                if (ex instanceof CancellationException && subscription.isCancelled()) detach();
+            });
+            return subscription;
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+    }
+}
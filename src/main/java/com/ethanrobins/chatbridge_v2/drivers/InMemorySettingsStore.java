@@ -0,0 +1,161 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import lombok.Getter;
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link SettingsStore} kept in concurrent maps.
+ * <p>
+ * Used in dev mode, where the database is disabled, and for load tests without a MySQL server. It follows the same
+ * rules as {@link JdbcSettingsStore}: new users and guilds start out {@link SafetyLevel#SAFE}, a safety level can only
+ * be set for a registered user or guild, and writes report {@link MySQL.State#INSERTED}, {@link MySQL.State#UPDATED}
+ * or {@link MySQL.State#UNCHANGED}. An optional latency is added to every call to stand in for the database round trip.
+ * Nothing is persisted.
+ * </p>
+ */
+public class InMemorySettingsStore implements SettingsStore {
+    private final Map<String, UserSettings> users = new ConcurrentHashMap<>();
+    private final Map<String, GuildSettings> guilds = new ConcurrentHashMap<>();
+
+    /**
+     * The latency added to every call.
+     */
+    @Getter
+    private final @NotNull Duration latency;
+
+    /**
+     * Creates an empty store without added latency.
+     */
+    public InMemorySettingsStore() {
+        this(Duration.ZERO);
+    }
+
+    /**
+     * Creates an empty store.
+     * @param latency The latency added to every call.
+     */
+    public InMemorySettingsStore(@NotNull Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Builds an {@link InMemorySettingsStore} from the optional {@code [settings] memoryLatency} of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new, empty {@link InMemorySettingsStore}.
+     */
+    public static @NotNull InMemorySettingsStore fromSecret(@NotNull Ini secret) {
+        String latencyStr = secret.get("settings", "memoryLatency");
+        try {
+            return new InMemorySettingsStore(latencyStr != null && !latencyStr.isBlank() ? Duration.ofMillis(Long.parseLong(latencyStr.trim())) : Duration.ZERO);
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [settings] memoryLatency in secret.ini: " + ex.getMessage() + ". Using 0.");
+            return new InMemorySettingsStore();
+        }
+    }
+
+    @Override
+    public @Nullable UserSettings getUser(@NotNull String userId) {
+        roundTrip();
+        return this.users.get(userId);
+    }
+
+    @Override
+    public @Nullable GuildSettings getGuild(@NotNull String guildId) {
+        roundTrip();
+        return this.guilds.get(guildId);
+    }
+
+    @Override
+    public @NotNull MySQL.Status updateLocale(@NotNull String userId, @NotNull DiscordLocale locale) {
+        roundTrip();
+        MySQL.State[] state = new MySQL.State[1];
+        this.users.compute(userId, (id, user) -> {
+            if (user == null) {
+                state[0] = MySQL.State.INSERTED;
+                return new UserSettings(locale, SafetyLevel.SAFE);
+            }
+            state[0] = user.locale() == locale ? MySQL.State.UNCHANGED : MySQL.State.UPDATED;
+            return user.withLocale(locale);
+        });
+        return new MySQL.Status().setStatus(state[0]);
+    }
+
+    @Override
+    public @NotNull MySQL.Status updateLocales(@NotNull Map<String, DiscordLocale> locales) {
+        roundTrip();
+        for (Map.Entry<String, DiscordLocale> entry : locales.entrySet()) {
+            this.users.compute(entry.getKey(), (id, user) -> user == null ? new UserSettings(entry.getValue(), SafetyLevel.SAFE) : user.withLocale(entry.getValue()));
+        }
+        return new MySQL.Status().setStatus(locales.isEmpty() ? MySQL.State.UNCHANGED : MySQL.State.UPDATED);
+    }
+
+    @Override
+    public @NotNull MySQL.Status setSafetyLevel(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel) {
+        roundTrip();
+        MySQL.State[] state = new MySQL.State[1];
+        if (isUser) {
+            this.users.computeIfPresent(id, (k, user) -> {
+                state[0] = user.safetyLevel() == safetyLevel ? MySQL.State.UNCHANGED : MySQL.State.UPDATED;
+                return user.withSafetyLevel(safetyLevel);
+            });
+        } else {
+            this.guilds.computeIfPresent(id, (k, guild) -> {
+                state[0] = guild.safetyLevel() == safetyLevel ? MySQL.State.UNCHANGED : MySQL.State.UPDATED;
+                return guild.withSafetyLevel(safetyLevel);
+            });
+        }
+
+        if (state[0] == null) {
+            return new MySQL.Status().setFailed(new SQLException(isUser ? "User not found!" : "Guild not found!"));
+        }
+        return new MySQL.Status().setStatus(state[0]);
+    }
+
+    @Override
+    public @NotNull MySQL.Status setGuildStatus(@NotNull String guildId, boolean status) {
+        roundTrip();
+        MySQL.State[] state = new MySQL.State[1];
+        this.guilds.compute(guildId, (id, guild) -> {
+            if (guild == null) {
+                state[0] = MySQL.State.INSERTED;
+                return new GuildSettings(status, SafetyLevel.SAFE);
+            }
+            state[0] = guild.status() == status ? MySQL.State.UNCHANGED : MySQL.State.UPDATED;
+            return new GuildSettings(status, guild.safetyLevel());
+        });
+        return new MySQL.Status().setStatus(state[0]);
+    }
+
+    @Override
+    public @NotNull Map<String, Boolean> getGuildStatuses() {
+        roundTrip();
+        Map<String, Boolean> statuses = new HashMap<>();
+        this.guilds.forEach((id, guild) -> statuses.put(id, guild.status()));
+        return statuses;
+    }
+
+    @Override
+    public @NotNull MySQL.Status setGuildStatuses(@NotNull Map<String, Boolean> guildStatuses) {
+        roundTrip();
+        for (Map.Entry<String, Boolean> entry : guildStatuses.entrySet()) {
+            this.guilds.compute(entry.getKey(), (id, guild) -> new GuildSettings(entry.getValue(), guild != null ? guild.safetyLevel() : SafetyLevel.SAFE));
+        }
+        return new MySQL.Status().setStatus(guildStatuses.isEmpty() ? MySQL.State.UNCHANGED : MySQL.State.UPDATED);
+    }
+
+    private void roundTrip() {
+        if (!this.latency.isZero()) {
+            LockSupport.parkNanos(this.latency.toNanos());
+        }
+    }
+}
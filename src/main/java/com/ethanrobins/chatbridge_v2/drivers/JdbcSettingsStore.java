@@ -0,0 +1,134 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link SettingsStore} backed by the {@code chatbridge_userstore} and {@code chatbridge_guildstore} tables.
+ * Every call borrows a {@link MySQL} connection and returns it when done. Lookups of a single user or guild are sent to
+ * a read replica picked by the {@link ReplicaRouter}, and retried on the primary if the replica fails; everything else,
+ * including the guild reconciliation, uses the shared {@link ConnectionPool} of the primary. Written ids are pinned to
+ * the primary, so a lookup right after a write sees it.
+ */
+public class JdbcSettingsStore implements SettingsStore {
+    @Override
+    public @Nullable UserSettings getUser(@NotNull String userId) throws SQLException {
+        return read(userId, sql -> sql.getUserSettings(userId));
+    }
+
+    @Override
+    public @Nullable GuildSettings getGuild(@NotNull String guildId) throws SQLException {
+        return read(guildId, sql -> sql.getGuildSettings(guildId));
+    }
+
+    @Override
+    public @NotNull MySQL.Status updateLocale(@NotNull String userId, @NotNull DiscordLocale locale) {
+        return write(List.of(userId), sql -> sql.updateLocale(userId, locale));
+    }
+
+    @Override
+    public @NotNull MySQL.Status updateLocales(@NotNull Map<String, DiscordLocale> locales) {
+        return write(locales.keySet(), sql -> sql.updateLocales(locales));
+    }
+
+    @Override
+    public @NotNull MySQL.Status setSafetyLevel(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel) {
+        return write(List.of(id), sql -> sql.setSafetyLevel(isUser, id, safetyLevel));
+    }
+
+    @Override
+    public @NotNull MySQL.Status setGuildStatus(@NotNull String guildId, boolean status) {
+        return write(List.of(guildId), sql -> sql.setGuildStatus(guildId, status));
+    }
+
+    @Override
+    public @NotNull Map<String, Boolean> getGuildStatuses() throws SQLException {
+        MySQL sql = new MySQL();
+        try {
+            return sql.getGuilds();
+        } finally {
+            sql.close();
+        }
+    }
+
+    @Override
+    public @NotNull MySQL.Status setGuildStatuses(@NotNull Map<String, Boolean> guildStatuses) {
+        return write(guildStatuses.keySet(), sql -> sql.setGuildStatuses(guildStatuses));
+    }
+
+    /**
+     * Reads and writes the guild statuses on a single connection.
+     */
+    @Override
+    public @NotNull Map<String, Boolean> reconcileGuilds(@NotNull Set<String> readyGuilds) throws SQLException {
+        MySQL sql = new MySQL();
+        try {
+            Map<String, Boolean> changes = SettingsStore.diffGuilds(sql.getGuilds(), readyGuilds);
+            MySQL.Status status = sql.setGuildStatuses(changes);
+            ReplicaRouter.get().pin(changes.keySet());
+            if (status.isFailed()) throw new SQLException("Unable to reconcile " + changes.size() + " guild statuses", status.getException());
+            return changes;
+        } finally {
+            sql.close();
+        }
+    }
+
+    private static <T> T read(@NotNull String id, @NotNull Read<T> read) throws SQLException {
+        ReplicaRouter.Replica replica = ReplicaRouter.get().route(id);
+        if (replica != null) {
+            long start = System.nanoTime();
+            try {
+                MySQL sql = new MySQL(replica.getPool());
+                try {
+                    T result = read.apply(sql);
+                    replica.recordRead(System.nanoTime() - start);
+                    return result;
+                } finally {
+                    sql.close();
+                }
+            } catch (SQLException ex) {
+                replica.recordFailure(ex);
+            }
+        }
+
+        MySQL sql = new MySQL();
+        try {
+            return read.apply(sql);
+        } finally {
+            sql.close();
+        }
+    }
+
+    private static @NotNull MySQL.Status write(@NotNull Collection<String> ids, @NotNull Write write) {
+        MySQL sql;
+        try {
+            sql = new MySQL();
+        } catch (SQLException ex) {
+            return new MySQL.Status().setFailedConnection(ex);
+        }
+        try {
+            MySQL.Status status = write.apply(sql);
+            ReplicaRouter.get().pin(ids);
+            return status;
+        } finally {
+            sql.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T apply(@NotNull MySQL sql) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Write {
+        @NotNull MySQL.Status apply(@NotNull MySQL sql);
+    }
+}
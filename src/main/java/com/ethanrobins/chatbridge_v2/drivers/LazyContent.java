@@ -0,0 +1,87 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+
+/**
+ * One variant of a translation target, kept as its raw JSON until someone asks for it.
+ * <p>
+ * A reply only ever renders one {@link SafetyLevel}, so decoding both variants of a large embed up front keeps twice
+ * the object graph alive for nothing. The raw slice is compact and is what the {@link TranslationCache} holds;
+ * {@link #get()} decodes it on first use, remembers the result and lets go of the JSON, so an instance only ever
+ * holds one of the two.
+ * </p>
+ *
+ * @param <T> The decoded type.
+ */
+final class LazyContent<T> {
+    private @Nullable String json;
+    private @Nullable Function<String, T> decoder;
+    private volatile T value;
+
+    private LazyContent(@Nullable String json, @Nullable Function<String, T> decoder, @Nullable T value) {
+        this.json = json;
+        this.decoder = decoder;
+        this.value = value;
+    }
+
+    /**
+     * @param value An already decoded variant.
+     * @return A {@link LazyContent} holding {@code value}.
+     */
+    static <T> @NotNull LazyContent<T> of(@NotNull T value) {
+        return new LazyContent<>(null, null, value);
+    }
+
+    /**
+     * @param json The raw JSON of the variant.
+     * @param decoder Decodes {@code json} on first use. Must not return {@code null}.
+     * @return A {@link LazyContent} that decodes {@code json} when first asked for.
+     */
+    static <T> @NotNull LazyContent<T> of(@NotNull String json, @NotNull Function<String, T> decoder) {
+        return new LazyContent<>(json, decoder, null);
+    }
+
+    /**
+     * @return The decoded variant.
+     */
+    @NotNull T get() {
+        T v = this.value;
+        if (v == null) {
+            synchronized (this) {
+                v = this.value;
+                if (v == null) {
+                    v = this.decoder.apply(this.json);
+                    this.value = v;
+                    this.json = null;
+                    this.decoder = null;
+                }
+            }
+        }
+        return v;
+    }
+
+    /**
+     * @return {@code true} if the variant has been decoded.
+     */
+    boolean isMaterialized() {
+        return this.value != null;
+    }
+
+    /**
+     * @return The raw JSON of the variant, or {@code null} once it has been decoded.
+     */
+    synchronized @Nullable String getJson() {
+        return this.json;
+    }
+
+    /**
+     * @return A {@link LazyContent} over the same JSON that decodes on its own, or this instance if it has already
+     * been decoded. Decoding the copy leaves this instance as it is.
+     */
+    synchronized @NotNull LazyContent<T> detached() {
+        return this.json != null ? new LazyContent<>(this.json, this.decoder, null) : this;
+    }
+}
@@ -0,0 +1,205 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>Write-behind queue for locale changes of registered users.</b>
+ * <p>
+ * Every message context interaction reports the user's locale. {@link SettingsCache#updateLocale(String, DiscordLocale)}
+ * drops the update if it matches the cached locale and hands changed locales of known users to this queue, so the
+ * interaction never waits on the database. Repeated updates of the same user within one flush interval are coalesced
+ * (the last locale wins), and a background thread writes the rest to the {@link SettingsStore} as multi-row upserts.
+ * </p>
+ * <p>
+ * New users are not queued: their first locale is inserted synchronously, so {@link MySQL.Status#isInserted()} still
+ * detects the first interaction.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [settings]
+ * writeBehindInterval = 5000   ; milliseconds
+ * writeBehindBatchSize = 500   ; rows per upsert
+ * </pre>
+ */
+public class LocaleWriteBehind {
+    private static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(5);
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static LocaleWriteBehind instance = null;
+
+    /**
+     * How long updates are coalesced before they are written.
+     */
+    @Getter
+    private final @NotNull Duration interval;
+    /**
+     * The maximum number of rows written by one upsert.
+     */
+    @Getter
+    private final int batchSize;
+
+    private final Map<String, DiscordLocale> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher = null;
+
+    /**
+     * @param interval How long updates are coalesced before they are written.
+     * @param batchSize The maximum number of rows written by one upsert.
+     */
+    public LocaleWriteBehind(@NotNull Duration interval, int batchSize) {
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Builds a {@link LocaleWriteBehind} from the optional {@code [settings]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new {@link LocaleWriteBehind}.
+     */
+    public static @NotNull LocaleWriteBehind fromSecret(@NotNull Ini secret) {
+        try {
+            String intervalStr = secret.get("settings", "writeBehindInterval");
+            String batchSizeStr = secret.get("settings", "writeBehindBatchSize");
+            return new LocaleWriteBehind(
+                    intervalStr != null && !intervalStr.isBlank() ? Duration.ofMillis(Math.max(1, Long.parseLong(intervalStr.trim()))) : DEFAULT_INTERVAL,
+                    batchSizeStr != null && !batchSizeStr.isBlank() ? Integer.parseInt(batchSizeStr.trim()) : DEFAULT_BATCH_SIZE
+            );
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [settings] write-behind configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+            return new LocaleWriteBehind(DEFAULT_INTERVAL, DEFAULT_BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Creates the shared instance from the secret configuration and starts flushing it. Called once by {@link ChatBridge#main(String[])}.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        if (instance != null) instance.shutdown();
+        instance = fromSecret(secret);
+        instance.start();
+    }
+
+    /**
+     * Retrieves the shared {@link LocaleWriteBehind}, creating it from {@link ChatBridge#getSecret()} if it has not been initialized yet.
+     * <br>An instance created this way is not flushed until {@link #start()} is called.
+     * @return The shared {@link LocaleWriteBehind}.
+     */
+    public static synchronized @NotNull LocaleWriteBehind get() {
+        if (instance == null) {
+            instance = ChatBridge.getSecret() != null ? fromSecret(ChatBridge.getSecret()) : new LocaleWriteBehind(DEFAULT_INTERVAL, DEFAULT_BATCH_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link LocaleWriteBehind}.
+     * @param writeBehind The new shared queue, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable LocaleWriteBehind writeBehind) {
+        instance = writeBehind;
+    }
+
+    /**
+     * Starts writing queued locales every {@link #getInterval()}, and once more on shutdown.
+     */
+    public synchronized void start() {
+        if (this.flusher != null) return;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "locale-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = this.interval.toMillis();
+        this.flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "locale-flush-shutdown"));
+    }
+
+    /**
+     * Stops the periodic flush. Queued locales are flushed one last time.
+     */
+    public synchronized void shutdown() {
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+            this.flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * Queues a registered user's new locale, replacing any locale still queued for that user.
+     * @param userId The user id.
+     * @param locale The user's new locale.
+     */
+    public void enqueue(@NotNull String userId, @NotNull DiscordLocale locale) {
+        this.pending.put(userId, locale);
+    }
+
+    /**
+     * @return The number of users whose locale is waiting to be written.
+     */
+    public int getPending() {
+        return this.pending.size();
+    }
+
+    /**
+     * Writes all queued locales, {@link #getBatchSize()} rows per upsert. Locales that could not be written are
+     * queued again unless a newer locale was queued in the meantime.
+     */
+    public synchronized void flush() {
+        if (this.pending.isEmpty()) return;
+
+        Map<String, DiscordLocale> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, DiscordLocale> entry : this.pending.entrySet()) {
+            if (this.pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        SettingsStore store = SettingsCache.get().getStore();
+        Map<String, DiscordLocale> chunk = new LinkedHashMap<>();
+        int written = 0;
+        try {
+            for (Map.Entry<String, DiscordLocale> entry : batch.entrySet()) {
+                chunk.put(entry.getKey(), entry.getValue());
+                if (chunk.size() == this.batchSize) {
+                    written += write(store, chunk);
+                }
+            }
+            if (!chunk.isEmpty()) written += write(store, chunk);
+
+            if (ChatBridge.isDebug()) {
+                System.out.println("\u001B[35mlocale\u001B[0m flushed " + written + " locale updates");
+            }
+        } catch (SQLException ex) {
+            System.err.println("Unable to flush locale updates, retrying on the next flush: " + ex.getMessage());
+            int i = 0;
+            for (Map.Entry<String, DiscordLocale> entry : batch.entrySet()) {
+                if (i++ >= written) this.pending.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static int write(@NotNull SettingsStore store, @NotNull Map<String, DiscordLocale> chunk) throws SQLException {
+        MySQL.Status status = store.updateLocales(chunk);
+        if (status.isFailed()) throw new SQLException(status.getException());
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+}
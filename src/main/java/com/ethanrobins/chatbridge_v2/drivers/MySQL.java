@@ -7,6 +7,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -39,8 +40,9 @@ import java.util.*;
  *
  * <h2>Concurrency and Resource Management:</h2>
  * <p>
- * The class maintains a static counter to track the number of active MySQL connections. This ensures that
- * the system has visibility into the number of open connections and can manage resource limitations effectively.
+ * Each instance borrows a connection from the shared {@link ConnectionPool} and returns it on {@link #close()}, so
+ * creating a {@link MySQL} is cheap once the pool is warm. {@link #getPoolStats()} reports how many connections are
+ * open, active and idle, and how long borrowers wait.
  * </p>
  *
  * <h2>Error Handling:</h2>
@@ -60,17 +62,6 @@ import java.util.*;
  * @see Connection
  */
 public class MySQL {
-    @Getter
-    private static int counter = 0;
-
-    private static final String ADDRESS = ChatBridge.getSecret().get("mysql", "address");
-    private static final String PORT = ChatBridge.getSecret().get("mysql", "port");
-    private static final String DB = ChatBridge.getSecret().get("mysql", "db");
-    private static final String USER = ChatBridge.getSecret().get("mysql", "user");
-    private static final String PASS = ChatBridge.getSecret().get("mysql", "pass");
-
-    private static final String URL = "jdbc:mysql://" + ADDRESS + ":" + PORT + "/" + DB;
-
     @Getter
     private final Status status = new Status();
     private final Connection conn;
@@ -78,29 +69,21 @@ public class MySQL {
     /**
      * Initializes a new MySQL connection.
      * <p>
-     * Attempts to establish a connection to the MySQL database using the provided credentials.
-     * If the connection is successful, the {@link State#CONNECTED} status is set.
+     * Borrows a connection to the MySQL database from the shared {@link ConnectionPool}.
+     * If a connection is available, the {@link State#CONNECTED} status is set.
      * In development mode, the connection is skipped, the {@link State#NO_CONNECTION} is kept, and database usage is disabled.
      * </p>
      *
-     * @throws SQLException If an error occurs while connecting to the database or if the MySQL driver is not found.
+     * @throws SQLException If no connection became available in time, or the database or MySQL driver could not be reached.
      */
     public MySQL() throws SQLException {
         if (!ChatBridge.isDev()) {
             try {
-                Class.forName("com.mysql.cj.jdbc.Driver");
-                this.conn = DriverManager.getConnection(URL, USER, PASS);
-                counter++;
-                if (ChatBridge.isDebug()) {
-                    System.out.println("MySQL connection started. There are " + counter + " MySQL connections open.");
-                }
+                this.conn = ConnectionPool.get().borrow();
                 this.status.setStatus(State.CONNECTED);
             } catch (SQLException ex) {
                 this.status.setException(ex);
                 throw new SQLException("Error connecting to the database: " + ex.getMessage(), ex);
-            } catch (ClassNotFoundException ex) {
-                this.status.setException(ex);
-                throw new SQLException("MySQL JDBC Driver not found.", ex);
             }
         } else {
             System.out.println("Running in dev mode! Database usage is disabled!");
@@ -108,6 +91,21 @@ public class MySQL {
         }
     }
 
+    /**
+     * Initializes a new MySQL connection to a specific server, such as a read replica of the {@link ReplicaRouter}.
+     * @param pool The {@link ConnectionPool} of the server.
+     * @throws SQLException If no connection became available in time, or the server could not be reached.
+     */
+    public MySQL(@NotNull ConnectionPool pool) throws SQLException {
+        try {
+            this.conn = pool.borrow();
+            this.status.setStatus(State.CONNECTED);
+        } catch (SQLException ex) {
+            this.status.setException(ex);
+            throw new SQLException("Error connecting to the database: " + ex.getMessage(), ex);
+        }
+    }
+
     /**
      * Retrieves this instance's {@link Connection}, if available.
      * @return The associated {@link Connection}, or {@code null} if the instance is not connected.
@@ -146,7 +144,7 @@ public class MySQL {
     }
 
     /**
-     * Closes a given MySQL {@link Connection}.
+     * Closes a given MySQL {@link Connection}. Connections borrowed from the {@link ConnectionPool} are returned to it.
      * <br><b>WARNING:</b> This method should only be used for emergency or direct {@link Connection} closures.
      * To properly handle and update the status of a {@link MySQL} object, close it directly through the {@link MySQL} instance instead.
      * @param connection The {@link Connection} to be closed.
@@ -155,21 +153,29 @@ public class MySQL {
         if (connection != null) {
             try {
                 connection.close();
-                counter--;
-                if (ChatBridge.isDebug()) {
-                    System.out.println("MySQL connection closed. There are " + counter + " MySQL connections open.");
-                }
             } catch (SQLException ex) {
                 ex.printStackTrace();
-                System.out.println("MySQL connection failed to close. There are " + counter + " MySQL connections open.");
+                System.out.println("MySQL connection failed to close. " + getPoolStats());
             }
         }
     }
 
+    /**
+     * @return A snapshot of the shared {@link ConnectionPool}'s statistics: open, active and idle connections, waiting threads and wait times.
+     */
+    public static @NotNull ConnectionPool.Stats getPoolStats() {
+        return ConnectionPool.get().getStats();
+    }
+
     // --- HELPERS ---
 
+    /**
+     * Retrieves a registered user's settings.
+     * @param id The user id.
+     * @return The user's settings, or {@code null} if the user is not registered or the query failed. See {@link #getStatus()}.
+     */
     @Nullable
-    public ResultSet getUser(@NotNull String id) {
+    public UserSettings getUser(@NotNull String id) {
         if (!this.status.isConnected()) return null;
 
         if (ChatBridge.isDebug()) {
@@ -177,29 +183,22 @@ public class MySQL {
         }
 
         try {
-            PreparedStatement stmt = this.conn.prepareStatement(
-                    "SELECT * FROM chatbridge_userstore WHERE id = ?",
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
-            );
-            stmt.setString(1, id);
-            ResultSet rs = stmt.executeQuery();
-
-            if (!rs.isBeforeFirst()) {
-                rs.close();
-                stmt.close();
+            UserSettings user = getUserSettings(id);
+            if (user == null) {
                 this.status.setFailed(new SQLException("Unable to find user with id " + id));
-                return null;
             }
-
-            this.status.setStatus(State.SUCCESS);
-            return rs;
+            return user;
         } catch (SQLException ex) {
-            this.status.setFailed(ex);
             return null;
         }
     }
+    /**
+     * Retrieves a registered guild's settings.
+     * @param id The guild id.
+     * @return The guild's settings, or {@code null} if the guild is not registered or the query failed. See {@link #getStatus()}.
+     */
     @Nullable
-    public ResultSet getGuild(@NotNull String id) {
+    public GuildSettings getGuild(@NotNull String id) {
         if (!this.status.isConnected()) return null;
 
         if (ChatBridge.isDebug()) {
@@ -207,51 +206,32 @@ public class MySQL {
         }
 
         try {
-            PreparedStatement stmt = this.conn.prepareStatement(
-                    "SELECT * FROM chatbridge_guildstore WHERE id = ?",
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
-            );
-            stmt.setString(1, id);
-            ResultSet rs = stmt.executeQuery();
-
-            if (!rs.isBeforeFirst()) {
-                rs.close();
-                stmt.close();
-                return null;
-            }
-
-            this.status.setStatus(State.SUCCESS);
-            return rs;
+            return getGuildSettings(id);
         } catch (SQLException ex) {
-            this.status.setFailed(ex);
             return null;
         }
     }
 
     /**
-     * Outdated
+     * Retrieves the status of every registered guild.
+     * @return Whether the bot is active in each registered guild, keyed by guild id. Empty if no guild is registered.
+     * @throws SQLException If MySQL is not connected or the query failed.
      */
     @NotNull
     public Map<String, Boolean> getGuilds() throws SQLException {
         if (this.status.isConnected()) {
             Map<String, Boolean> guilds = new HashMap<>();
-            try {
-                PreparedStatement stmt = this.conn.prepareStatement("SELECT * FROM chatbridge_guildstore");
-                ResultSet result = stmt.executeQuery();
-
+            try (PreparedStatement stmt = this.conn.prepareStatement("SELECT id, status FROM chatbridge_guildstore");
+                 ResultSet result = stmt.executeQuery()) {
                 while (result.next()) {
-                    guilds.put(result.getString("guild_id"), result.getBoolean("status"));
+                    guilds.put(Long.toUnsignedString(result.getLong("id")), result.getBoolean("status"));
                 }
 
-                if (guilds.isEmpty()) {
-                    this.status.setFailed(new SQLException("No guilds found!"));
-                } else {
-                    this.status.setStatus(State.SUCCESS);
-                }
+                this.status.setStatus(State.SUCCESS);
                 return guilds;
             } catch (SQLException ex) {
                 this.status.setFailed(ex);
-                return guilds;
+                throw ex;
             }
         }
 
@@ -262,6 +242,42 @@ public class MySQL {
         throw new SQLException("MySQL is not connected!");
     }
 
+    /**
+     * Inserts or updates the status of several guilds in one batch and transaction.
+     * @param guildStatuses Whether the bot is active in each guild, keyed by guild id.
+     * @return The {@link Status}: {@link State#UPDATED} once every row is written, or {@link State#FAILED} if the batch was rolled back.
+     */
+    public Status setGuildStatuses(@NotNull Map<String, Boolean> guildStatuses) {
+        if (guildStatuses.isEmpty()) return this.status.setStatus(State.UNCHANGED);
+
+        if (this.status.isConnected()) {
+            try {
+                boolean autoCommit = this.conn.getAutoCommit();
+                this.conn.setAutoCommit(false);
+                try (PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_guildstore (id, status) VALUES (?, ?) ON DUPLICATE KEY UPDATE status=VALUES(status)")) {
+                    for (Map.Entry<String, Boolean> entry : guildStatuses.entrySet()) {
+                        stmt.setLong(1, snowflake(entry.getKey()));
+                        stmt.setBoolean(2, entry.getValue());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    this.conn.commit();
+                } catch (SQLException ex) {
+                    this.conn.rollback();
+                    throw ex;
+                } finally {
+                    this.conn.setAutoCommit(autoCommit);
+                }
+
+                return this.status.setStatus(State.UPDATED);
+            } catch (SQLException ex) {
+                return this.status.setFailed(ex);
+            }
+        }
+
+        return this.status.setFailed(new SQLException("MySQL is not connected!"));
+    }
+
     @NotNull
     public DiscordLocale getLocale(@NotNull String userId) {
         DiscordLocale locale = getLocale(userId, false);
@@ -271,26 +287,16 @@ public class MySQL {
     @Nullable
     public DiscordLocale getLocale(@NotNull String userId, boolean returnNullIfNotExists) {
         if (this.status.isConnected()) {
-            try {
-                ResultSet rs = this.getUser(userId);
-
-                DiscordLocale locale = null;
-                if (rs != null) {
-                    locale = DiscordLocale.from(rs.getString("locale"));
-                }
+            UserSettings user = this.getUser(userId);
+            DiscordLocale locale = user != null ? user.locale() : null;
 
-                if (!returnNullIfNotExists && (locale == DiscordLocale.UNKNOWN || locale == null)) {
-                    this.status.setFailed(new SQLException("Locale is unknown!"));
-                    locale = DiscordLocale.ENGLISH_US;
-                    return locale;
-                }
-
-                this.status.setStatus(State.SUCCESS);
-                return locale != DiscordLocale.UNKNOWN ? locale : null;
-            } catch (SQLException ex) {
-                this.status.setException(ex);
-                return returnNullIfNotExists ? null : DiscordLocale.ENGLISH_US;
+            if (!returnNullIfNotExists && locale == null) {
+                this.status.setFailed(new SQLException("Locale is unknown!"));
+                return DiscordLocale.ENGLISH_US;
             }
+
+            if (user != null) this.status.setStatus(State.SUCCESS);
+            return locale;
         }
 
         return returnNullIfNotExists ? null : DiscordLocale.ENGLISH_US;
@@ -299,16 +305,19 @@ public class MySQL {
     public Status updateLocale(@NotNull String userId, @NotNull String locale) {
         return updateLocale(userId, DiscordLocale.from(locale));
     }
+    /**
+     * Inserts or updates a user's locale in a single round trip.
+     * @param userId The user id.
+     * @param locale The user's locale.
+     * @return The {@link Status}: {@link State#INSERTED} for a new user, {@link State#UPDATED} if the locale changed,
+     *         or {@link State#UNCHANGED} if it was already stored.
+     */
     public Status updateLocale(@NotNull String userId, @NotNull DiscordLocale locale) {
         if (this.status.isConnected()) {
-            try {
-                Status status = this.status.setStatus(this.getUser(userId) != null ? State.UPDATED : State.INSERTED);
-
-                PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_userstore (id, locale) VALUES (?, ?) ON DUPLICATE KEY UPDATE locale=?");
-                stmt.setString(1, userId);
-                stmt.setString(2, locale.getLocale());
-                stmt.setString(3, locale.getLocale());
-                stmt.executeUpdate();
+            try (PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_userstore (id, locale_code) VALUES (?, ?) ON DUPLICATE KEY UPDATE locale_code=VALUES(locale_code)")) {
+                stmt.setLong(1, snowflake(userId));
+                stmt.setInt(2, SettingsCodes.localeCode(locale));
+                Status status = this.status.setStatus(upsertState(stmt.executeUpdate()));
 
                 return status;
             } catch (SQLException ex) {
@@ -320,67 +329,142 @@ public class MySQL {
         return this.status.setFailed(new SQLException("The connection couldn't be established!"));
     }
 
+    /**
+     * Loads a user's locale and safety level in a single query, for the {@link JdbcSettingsStore}.
+     * @param userId The user id.
+     * @return The user's settings, or {@code null} if the user is not registered.
+     * @throws SQLException If the database could not be queried.
+     */
+    @Nullable
+    public UserSettings getUserSettings(@NotNull String userId) throws SQLException {
+        if (!this.status.isConnected()) throw new SQLException("MySQL is not connected!");
+
+        try (PreparedStatement stmt = this.conn.prepareStatement("SELECT locale_code, safety_code FROM chatbridge_userstore WHERE id = ?")) {
+            stmt.setLong(1, snowflake(userId));
+            try (ResultSet rs = stmt.executeQuery()) {
+                this.status.setStatus(State.SUCCESS);
+                if (!rs.next()) return null;
+
+                return new UserSettings(SettingsCodes.locale(rs.getInt("locale_code")), SettingsCodes.safetyLevel(rs.getInt("safety_code")));
+            }
+        } catch (SQLException ex) {
+            this.status.setFailed(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Loads a guild's status and safety level in a single query, for the {@link JdbcSettingsStore}.
+     * @param guildId The guild id.
+     * @return The guild's settings, or {@code null} if the guild is not registered.
+     * @throws SQLException If the database could not be queried.
+     */
+    @Nullable
+    public GuildSettings getGuildSettings(@NotNull String guildId) throws SQLException {
+        if (!this.status.isConnected()) throw new SQLException("MySQL is not connected!");
+
+        try (PreparedStatement stmt = this.conn.prepareStatement("SELECT status, safety_code FROM chatbridge_guildstore WHERE id = ?")) {
+            stmt.setLong(1, snowflake(guildId));
+            try (ResultSet rs = stmt.executeQuery()) {
+                this.status.setStatus(State.SUCCESS);
+                if (!rs.next()) return null;
+
+                return new GuildSettings(rs.getBoolean("status"), SettingsCodes.safetyLevel(rs.getInt("safety_code")));
+            }
+        } catch (SQLException ex) {
+            this.status.setFailed(ex);
+            throw ex;
+        }
+    }
+
     @NotNull
     public SafetyLevel getSafetyLevel(boolean isUser, @NotNull String id) {
         if (this.status.isConnected()) {
-            try {
-                ResultSet rs;
-                if (isUser) {
-                    rs = this.getUser(id);
-                    if (ChatBridge.isDebug()) {
-                        System.out.println("isUser");
-                        System.out.println(rs);
-                    }
-                } else {
-                    rs = this.getGuild(id);
-                    if (ChatBridge.isDebug()) {
-                        System.out.println("isGuild");
-                        System.out.println(rs);
-                    }
-                }
+            SafetyLevel l;
+            if (isUser) {
+                UserSettings user = this.getUser(id);
+                l = user != null ? user.safetyLevel() : SafetyLevel.SAFE;
+            } else {
+                GuildSettings guild = this.getGuild(id);
+                l = guild != null ? guild.safetyLevel() : SafetyLevel.SAFE;
+            }
 
-                SafetyLevel l = SafetyLevel.SAFE;
-                if (rs != null) {
-                    if (!rs.next()) throw new SQLException(rs.getWarnings());
-                    l = SafetyLevel.fromId(rs.getString("safety"));
-                    if (ChatBridge.isDebug()) {
-                        System.out.println(isUser ? "User's safety level set to " + l.getId() : "Guild's safety level set to " + l.getId());
-                    }
+            if (ChatBridge.isDebug()) {
+                System.out.println(isUser ? "User's safety level set to " + l.getId() : "Guild's safety level set to " + l.getId());
+            }
+            return l;
+        }
+
+        return SafetyLevel.SAFE;
+    }
+    /**
+     * Inserts or updates the locales of several users with one multi-row upsert.
+     * <p>
+     * Used by {@link LocaleWriteBehind}, which has already updated the {@link SettingsCache}.
+     * </p>
+     * @param locales The locale of each user id.
+     * @return The {@link Status}: {@link State#UPDATED} once the rows are written.
+     */
+    public Status updateLocales(@NotNull Map<String, DiscordLocale> locales) {
+        if (locales.isEmpty()) return this.status.setStatus(State.UNCHANGED);
+
+        if (this.status.isConnected()) {
+            StringBuilder sql = new StringBuilder("INSERT INTO chatbridge_userstore (id, locale_code) VALUES ");
+            for (int i = 0; i < locales.size(); i++) {
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE locale_code=VALUES(locale_code)");
+
+            try (PreparedStatement stmt = this.conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                for (Map.Entry<String, DiscordLocale> entry : locales.entrySet()) {
+                    stmt.setLong(i++, snowflake(entry.getKey()));
+                    stmt.setInt(i++, SettingsCodes.localeCode(entry.getValue()));
                 }
+                stmt.executeUpdate();
 
-                this.status.setStatus(State.SUCCESS);
-                return l;
+                return this.status.setStatus(State.UPDATED);
             } catch (SQLException ex) {
-                this.status.setException(ex);
-                if (ChatBridge.isDebug()) {
-                    System.out.println(this.status.getException().getMessage());
-                }
-                return SafetyLevel.SAFE;
+                return this.status.setFailed(ex);
             }
         }
 
-        return SafetyLevel.SAFE;
+        return this.status.setFailed(new SQLException("MySQL is not connected!"));
     }
+
+    /**
+     * Updates the safety level of a registered user or guild.
+     * <p>
+     * The {@code UPDATE} alone decides the outcome. Only when it changes no row is a second query needed,
+     * to tell an unchanged safety level apart from an unknown user or guild.
+     * </p>
+     * @param isUser {@code true} for a user, {@code false} for a guild.
+     * @param id The user or guild id.
+     * @param safetyLevel The new safety level.
+     * @return The {@link Status}: {@link State#UPDATED}, {@link State#UNCHANGED}, or {@link State#FAILED} if the user or guild is not registered.
+     */
     public Status setSafetyLevel(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel) {
         if (this.status.isConnected()) {
+            String table = "chatbridge_" + (isUser ? "userstore" : "guildstore");
             try {
-                Status status;
-                if (isUser) {
-                    if (this.getUser(id) == null) {
-                        return this.status.setFailed(new SQLException("User not found!"));
-                    }
-                    status = this.status.setStatus(State.UPDATED);
-                } else {
-                    if (this.getGuild(id) == null) {
-                        return this.status.setFailed(new SQLException("Guild not found!"));
-                    }
-                    status = this.status.setStatus(State.UPDATED);
+                int rows;
+                try (PreparedStatement stmt = this.conn.prepareStatement("UPDATE " + table + " SET safety_code=? WHERE id=?")) {
+                    stmt.setInt(1, SettingsCodes.safetyCode(safetyLevel));
+                    stmt.setLong(2, snowflake(id));
+                    rows = stmt.executeUpdate();
                 }
 
-                PreparedStatement stmt = this.conn.prepareStatement("UPDATE chatbridge_" + (isUser ? "userstore" : "guildstore") + " SET safety=? WHERE id=?");
-                stmt.setString(1, safetyLevel.getId());
-                stmt.setString(2, id);
-                stmt.executeUpdate();
+                if (rows == 0) {
+                    try (PreparedStatement stmt = this.conn.prepareStatement("SELECT 1 FROM " + table + " WHERE id=?")) {
+                        stmt.setLong(1, snowflake(id));
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (!rs.next()) {
+                                return this.status.setFailed(new SQLException(isUser ? "User not found!" : "Guild not found!"));
+                            }
+                        }
+                    }
+                }
+                Status status = this.status.setStatus(rows == 0 ? State.UNCHANGED : State.UPDATED);
 
                 return status;
             } catch (SQLException ex) {
@@ -395,34 +479,25 @@ public class MySQL {
     @Nullable
     public Boolean getGuildStatus(@NotNull String guildId) {
         if (this.status.isConnected()) {
-            try {
-                ResultSet rs = this.getGuild(guildId);
-
-                Boolean s = null;
-                if (rs != null) {
-                    s = rs.getBoolean("status");
-                }
-
-                this.status.setStatus(State.SUCCESS);
-                return s;
-            } catch (SQLException ex) {
-                this.status.setException(ex);
-                return null;
-            }
+            GuildSettings guild = this.getGuild(guildId);
+            return guild != null ? guild.status() : null;
         }
 
         return null;
     }
+    /**
+     * Inserts or updates a guild's status in a single round trip.
+     * @param guildId The guild id.
+     * @param guildStatus Whether the bot is active in the guild.
+     * @return The {@link Status}: {@link State#INSERTED} for a new guild, {@link State#UPDATED} if the status changed,
+     *         or {@link State#UNCHANGED} if it was already stored.
+     */
     public Status setGuildStatus(@NotNull String guildId, boolean guildStatus) {
         if (this.status.isConnected()) {
-            try {
-                Status status = this.status.setStatus(getGuild(guildId) != null ? State.UPDATED : State.INSERTED);
-
-                PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_guildstore (id, status) values (?, ?) ON DUPLICATE KEY UPDATE status=?");
-                stmt.setString(1, guildId);
+            try (PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_guildstore (id, status) VALUES (?, ?) ON DUPLICATE KEY UPDATE status=VALUES(status)")) {
+                stmt.setLong(1, snowflake(guildId));
                 stmt.setBoolean(2, guildStatus);
-                stmt.setBoolean(3, guildStatus);
-                stmt.executeUpdate();
+                Status status = this.status.setStatus(upsertState(stmt.executeUpdate()));
 
                 return status;
             } catch (SQLException ex) {
@@ -434,6 +509,111 @@ public class MySQL {
         return this.status.setFailed(new SQLException("MySQL is not connected!"));
     }
 
+    /**
+     * Converts a Discord snowflake id to the {@code BIGINT UNSIGNED} stored in the settings tables.
+     */
+    private static long snowflake(@NotNull String id) throws SQLException {
+        try {
+            return Long.parseUnsignedLong(id);
+        } catch (NumberFormatException ex) {
+            throw new SQLException("Invalid snowflake id: " + id, ex);
+        }
+    }
+
+    /**
+     * Maps the affected-rows count of an {@code INSERT ... ON DUPLICATE KEY UPDATE} to a {@link State}.
+     * <p>
+     * MySQL reports 1 for an inserted row, 2 for an updated row and 0 for an existing row that already held the same values.
+     * The last two can only be told apart with {@code useAffectedRows=true}, which {@link ConnectionPool} sets on its connections.
+     * </p>
+     */
+    private static State upsertState(int affectedRows) {
+        return switch (affectedRows) {
+            case 0 -> State.UNCHANGED;
+            case 1 -> State.INSERTED;
+            default -> State.UPDATED;
+        };
+    }
+
+    /**
+     * Adds token usage to {@code chatbridge_usage} in a single batch and transaction.
+     * <pre>
+     * CREATE TABLE chatbridge_usage (
+     *     day DATE NOT NULL,
+     *     guild_id VARCHAR(32) NOT NULL DEFAULT '',
+     *     user_id VARCHAR(32) NOT NULL DEFAULT '',
+     *     model VARCHAR(128) NOT NULL DEFAULT '',
+     *     prompt VARCHAR(32) NOT NULL DEFAULT '',
+     *     requests BIGINT NOT NULL DEFAULT 0,
+     *     input_tokens BIGINT NOT NULL DEFAULT 0,
+     *     output_tokens BIGINT NOT NULL DEFAULT 0,
+     *     PRIMARY KEY (day, guild_id, user_id, model, prompt)
+     * );
+     * </pre>
+     * @param deltas The usage to add, one entry per row.
+     * @return The {@link Status} of the operation.
+     */
+    public Status addUsage(@NotNull List<UsageLedger.Delta> deltas) {
+        if (this.status.isConnected()) {
+            try {
+                boolean autoCommit = this.conn.getAutoCommit();
+                this.conn.setAutoCommit(false);
+                try (PreparedStatement stmt = this.conn.prepareStatement("INSERT INTO chatbridge_usage (day, guild_id, user_id, model, prompt, requests, input_tokens, output_tokens) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE requests=requests+VALUES(requests), input_tokens=input_tokens+VALUES(input_tokens), output_tokens=output_tokens+VALUES(output_tokens)")) {
+                    for (UsageLedger.Delta d : deltas) {
+                        stmt.setObject(1, d.key().day());
+                        stmt.setString(2, d.key().guildId());
+                        stmt.setString(3, d.key().userId());
+                        stmt.setString(4, d.key().model());
+                        stmt.setString(5, d.key().prompt());
+                        stmt.setLong(6, d.requests());
+                        stmt.setLong(7, d.input());
+                        stmt.setLong(8, d.output());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    this.conn.commit();
+                } catch (SQLException ex) {
+                    this.conn.rollback();
+                    throw ex;
+                } finally {
+                    this.conn.setAutoCommit(autoCommit);
+                }
+
+                return this.status.setStatus(State.UPDATED);
+            } catch (SQLException ex) {
+                return this.status.setFailed(ex);
+            }
+        }
+
+        return this.status.setFailed(new SQLException("MySQL is not connected!"));
+    }
+
+    /**
+     * Sums the tokens a guild has used on a given day.
+     * @param guildId The guild id.
+     * @param day The day (UTC).
+     * @return The input plus output tokens, or {@code 0} if none were recorded.
+     * @throws SQLException If the query fails.
+     */
+    public long getGuildUsage(@NotNull String guildId, @NotNull LocalDate day) throws SQLException {
+        if (this.status.isConnected()) {
+            try (PreparedStatement stmt = this.conn.prepareStatement("SELECT COALESCE(SUM(input_tokens + output_tokens), 0) FROM chatbridge_usage WHERE day = ? AND guild_id = ?")) {
+                stmt.setObject(1, day);
+                stmt.setString(2, guildId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    this.status.setStatus(State.SUCCESS);
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            } catch (SQLException ex) {
+                this.status.setException(ex);
+                throw ex;
+            }
+        }
+
+        return 0;
+    }
+
     /**
      * Represents the status of a {@link MySQL} connection or operation.
      * <p>
@@ -746,6 +926,19 @@ public class MySQL {
             return this.states.contains(State.INSERTED);
         }
 
+        /**
+         * Checks whether the current {@link Status} is in an unchanged state.
+         * <p>
+         * This method verifies if the internal state collection contains {@link State#UNCHANGED}.
+         * </p>
+         *
+         * @return {@code true} if the write found the values already stored (i.e., contains {@link State#UNCHANGED});
+         *         {@code false} otherwise.
+         */
+        public boolean isUnchanged() {
+            return this.states.contains(State.UNCHANGED);
+        }
+
         @Override
         public String toString() {
             return "Status{" + this.states + "}";
@@ -797,7 +990,11 @@ public class MySQL {
         /**
          * The INSERT query was executed successfully.
          */
-        INSERTED(StateCategory.RESPONSE);
+        INSERTED(StateCategory.RESPONSE),
+        /**
+         * The write matched an existing row that already held the same values, so nothing was changed.
+         */
+        UNCHANGED(StateCategory.RESPONSE);
 
         /**
          * Retrieves the {@link StateCategory} associated with this {@link State}.
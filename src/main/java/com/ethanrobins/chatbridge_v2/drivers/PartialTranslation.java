@@ -0,0 +1,188 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A message translation that is still being generated.
+ * <p>
+ * Built from the model's output text as it streams in, which is a JSON document cut off at an arbitrary point.
+ * Every string value seen so far is recovered, including the one currently being written, so the explicit and safe
+ * variants can be shown before the model has finished.
+ * </p>
+ */
+@Getter
+public class PartialTranslation {
+    private final @Nullable String sourceTag;
+    private final @Nullable String sourceLang;
+    private final @Nullable String targetTag;
+    private final @Nullable String targetLang;
+    private final @Nullable String explicit;
+    private final @Nullable String safe;
+    /**
+     * The only variant of a single-variant translation, if this is one.
+     */
+    private final @Nullable String variant;
+    /**
+     * The {@link SafetyLevel} id of {@link #getVariant()}.
+     */
+    private final @Nullable String level;
+
+    private PartialTranslation(@NotNull Map<String, String> values) {
+        this.sourceTag = values.get("src.tag");
+        this.sourceLang = values.get("src.lang");
+        this.targetTag = values.get("tgt.tag");
+        this.targetLang = values.get("tgt.lang");
+        this.explicit = values.get("tgt.e");
+        this.safe = values.get("tgt.s");
+        this.variant = values.get("tgt.v");
+        this.level = values.get("tgt.lvl");
+    }
+
+    /**
+     * Recovers what has been generated so far.
+     * @param json The output text received so far.
+     * @return The {@link PartialTranslation}.
+     */
+    public static @NotNull PartialTranslation parse(@NotNull CharSequence json) {
+        return new PartialTranslation(scan(json));
+    }
+
+    /**
+     * @param safetyLevel The {@link SafetyLevel} to render.
+     * @return The variant for {@code safetyLevel} generated so far, or {@code null} if it has not started yet.
+     */
+    public @Nullable String getBySafetyLevel(@NotNull SafetyLevel safetyLevel) {
+        if (this.variant != null) {
+            // As with Response.Data.VariantTarget, never show an explicit variant as safe
+            boolean allowed = safetyLevel == SafetyLevel.EXPLICIT || SafetyLevel.SAFE.getId().equals(this.level);
+            return allowed ? this.variant : null;
+        }
+        return safetyLevel == SafetyLevel.EXPLICIT ? this.explicit : this.safe;
+    }
+
+    /**
+     * @return {@code true} once both languages are known, so a caption can be rendered.
+     */
+    public boolean hasHeader() {
+        return this.sourceTag != null && this.sourceLang != null && this.targetTag != null && this.targetLang != null;
+    }
+
+    /**
+     * Collects every string value of a possibly truncated JSON document, keyed by its dotted object path.
+     */
+    private static Map<String, String> scan(@NotNull CharSequence json) {
+        Map<String, String> values = new HashMap<>();
+        Deque<Frame> stack = new ArrayDeque<>();
+        StringBuilder str = new StringBuilder();
+
+        int i = 0;
+        int len = json.length();
+        while (i < len) {
+            char c = json.charAt(i);
+            switch (c) {
+                case '{' -> { stack.push(new Frame(true)); i++; }
+                case '[' -> { stack.push(new Frame(false)); i++; }
+                case '}', ']' -> { if (!stack.isEmpty()) stack.pop(); i++; }
+                case ',' -> {
+                    if (!stack.isEmpty() && stack.peek().object) {
+                        stack.peek().expectingKey = true;
+                        stack.peek().key = null;
+                    }
+                    i++;
+                }
+                case '"' -> {
+                    str.setLength(0);
+                    i = readString(json, i + 1, str);
+                    Frame frame = stack.peek();
+                    if (frame != null && frame.object && frame.expectingKey) {
+                        frame.key = str.toString();
+                        frame.expectingKey = false;
+                    } else if (frame != null && frame.object && frame.key != null) {
+                        values.put(path(stack), str.toString());
+                    }
+                }
+                default -> i++;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads a string starting just after its opening quote, stopping early if the input ends.
+     * @return The index just after the closing quote, or the input length if it was truncated.
+     */
+    private static int readString(@NotNull CharSequence json, int i, @NotNull StringBuilder out) {
+        int len = json.length();
+        while (i < len) {
+            char c = json.charAt(i);
+            if (c == '"') return i + 1;
+            if (c != '\\') {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            if (i + 1 >= len) break;
+            char e = json.charAt(i + 1);
+            switch (e) {
+                case 'n' -> out.append('\n');
+                case 't' -> out.append('\t');
+                case 'r' -> out.append('\r');
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'u' -> {
+                    if (i + 6 > len) {
+                        i = len;
+                        continue;
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(json.subSequence(i + 2, i + 6).toString(), 16));
+                    } catch (NumberFormatException ex) {
+                        // Malformed escape; drop it
+                    }
+                    i += 6;
+                    continue;
+                }
+                default -> out.append(e);
+            }
+            i += 2;
+        }
+
+        // Never end on half of a surrogate pair
+        if (!out.isEmpty() && Character.isHighSurrogate(out.charAt(out.length() - 1))) {
+            out.setLength(out.length() - 1);
+        }
+        return len;
+    }
+
+    private static String path(@NotNull Deque<Frame> stack) {
+        StringBuilder path = new StringBuilder();
+        var it = stack.descendingIterator();
+        while (it.hasNext()) {
+            Frame f = it.next();
+            if (f.object && f.key != null) {
+                if (!path.isEmpty()) path.append('.');
+                path.append(f.key);
+            }
+        }
+        return path.toString();
+    }
+
+    private static final class Frame {
+        private final boolean object;
+        private boolean expectingKey;
+        private String key = null;
+
+        private Frame(boolean object) {
+            this.object = object;
+            this.expectingKey = object;
+        }
+    }
+}
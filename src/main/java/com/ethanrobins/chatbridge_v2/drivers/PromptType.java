@@ -1,23 +1,117 @@
 package com.ethanrobins.chatbridge_v2.drivers;
 
+import com.ethanrobins.chatbridge_v2.ChatBridge;
 import lombok.Getter;
+import org.ini4j.Ini;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-@Getter
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum representing the stored OpenAI prompts used for translation.
+ * <p>
+ * Any prompt id can be overridden in the optional {@code [prompts]} section of {@code secret.ini}, keyed by the
+ * prompt's {@link #getKey() key}. Prompts without a built-in id are only {@linkplain #isAvailable() available}
+ * once one has been configured. The ids are resolved once by {@link #init(Ini)} when the secret is loaded.
+ * </p>
+ * <pre>
+ * [prompts]
+ * embeds = pmpt_...
+ * </pre>
+ */
 public enum PromptType {
-    MESSAGE("pmpt_68b501fb1e2c81938482bd862d30b2f1021303d66903eb25", "1"),
-    EMBED("pmpt_68b50229644c8197ac944fa90aba9c1907e598a420ae7409", "1");
+    MESSAGE("message", "pmpt_68b501fb1e2c81938482bd862d30b2f1021303d66903eb25", "1"),
+    EMBED("embed", "pmpt_68b50229644c8197ac944fa90aba9c1907e598a420ae7409", "1"),
+    /**
+     * Every rich embed of a message in a single call. See {@link Response.Data.EmbedsTarget}.
+     */
+    EMBEDS("embeds", null, "1"),
+    /**
+     * One message into several target locales in a single call. See {@link Response.Data#getTargets()}.
+     * <br>API only: none of the event handlers translate into more than one locale yet. Build it with
+     * {@link Request.Prompt#Prompt(String, String, java.util.Collection, String)}.
+     */
+    MESSAGES("messages", null, "1"),
+    /**
+     * {@link #MESSAGE}, generating only the variant for the requested {@link SafetyLevel}. See {@link Response.Data.VariantTarget}.
+     */
+    MESSAGE_SINGLE("messageSingle", null, "1"),
+    /**
+     * {@link #EMBED}, generating only the variant for the requested {@link SafetyLevel}. See {@link Response.Data.VariantTarget}.
+     */
+    EMBED_SINGLE("embedSingle", null, "1");
 
-    private final @NotNull String id;
+    /**
+     * The option name of this prompt in the {@code [prompts]} section.
+     */
+    @Getter
+    private final @NotNull String key;
+    private final @Nullable String defaultId;
+    @Getter
     private final @NotNull String version;
+    private volatile @Nullable String id;
+
+    private static volatile Map<String, PromptType> byId = index();
 
-    PromptType(@NotNull String id, @NotNull String version) {
-        this.id = id;
+    PromptType(@NotNull String key, @Nullable String defaultId, @NotNull String version) {
+        this.key = key;
+        this.defaultId = defaultId;
         this.version = version;
+        this.id = defaultId;
+    }
+
+    /**
+     * Resolves the id of every prompt from the {@code [prompts]} section of the given secret configuration. Called
+     * once by {@link ChatBridge#main(String[])}; until then the built-in ids are used.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        for (PromptType type : values()) {
+            String id = secret.get("prompts", type.key);
+            type.id = id != null && !id.isBlank() ? id.trim() : type.defaultId;
+        }
+        byId = index();
+    }
+
+    private static @NotNull Map<String, PromptType> index() {
+        Map<String, PromptType> index = new HashMap<>();
+        for (PromptType type : values()) {
+            if (type.id != null) index.putIfAbsent(type.id, type);
+        }
+        return Map.copyOf(index);
+    }
+
+    /**
+     * @return The configured prompt id, falling back to the built-in one.
+     * @throws IllegalStateException If this prompt is not {@linkplain #isAvailable() available}.
+     */
+    public @NotNull String getId() {
+        String id = this.id;
+        if (id == null) {
+            throw new IllegalStateException("No prompt id configured for " + this.name() + ". Set [prompts] " + this.key + " in secret.ini");
+        }
+        return id;
+    }
+
+    /**
+     * @return {@code true} if this prompt has an id and can be used.
+     */
+    public boolean isAvailable() {
+        return this.id != null;
+    }
+
+    /**
+     * @param id A prompt id.
+     * @return The available {@link PromptType} configured with {@code id}, or {@code null} if there is none.
+     */
+    public static @Nullable PromptType fromId(@NotNull String id) {
+        return byId.get(id);
     }
 
     @Override
     public String toString() {
-        return this.id;
+        return isAvailable() ? getId() : this.name();
     }
 }
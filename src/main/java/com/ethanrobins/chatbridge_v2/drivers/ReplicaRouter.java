@@ -0,0 +1,452 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>Routes settings reads to MySQL read replicas.</b>
+ * <p>
+ * Settings are read far more often than they are written, so {@link JdbcSettingsStore} sends point lookups of users and
+ * guilds to the replicas listed in {@code [mysql] replicas} and everything else to the primary. Each replica has its own
+ * {@link ConnectionPool}. A background thread checks every replica each {@code replicaCheckInterval}: a replica is
+ * used only while it answers and its replication lag is at most {@code replicaMaxLag}. Reads are spread round-robin
+ * over the usable replicas and fall back to the primary when there is none.
+ * </p>
+ * <p>
+ * A replica may not have applied a write yet, so every id written through {@link JdbcSettingsStore} is pinned to the
+ * primary for {@code readYourWritesWindow}; reads of a pinned id go to the primary even if the cached entry was
+ * evicted in the meantime.
+ * </p>
+ * <p>
+ * The lag is read from {@code SHOW REPLICA STATUS}, which needs the {@code REPLICATION CLIENT} privilege. A replica
+ * whose replication is stopped, or whose lag cannot be read, is not used. Neither is a server that does not replicate
+ * from anywhere, since that usually means replication was reset or the host is misconfigured and its data may be
+ * arbitrarily stale; set {@code replicaAllowStandalone} to read from such servers anyway, for example when the
+ * "replicas" are kept in sync by other means.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [mysql]
+ * ; optional, same db, user and pool settings as the primary
+ * replicas = replica-1:3306, replica-2   ; the port defaults to [mysql] port
+ * replicaMaxLag = 5                      ; seconds
+ * replicaCheckInterval = 5000            ; milliseconds
+ * readYourWritesWindow = 10000           ; milliseconds, defaults to replicaMaxLag + replicaCheckInterval
+ * replicaAllowStandalone = false         ; use replicas that do not replicate from anywhere
+ * </pre>
+ */
+public class ReplicaRouter {
+    private static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(5);
+
+    private static volatile ReplicaRouter instance = null;
+
+    /**
+     * The configured replicas, usable or not.
+     */
+    @Getter
+    private final @NotNull List<Replica> replicas;
+    /**
+     * The highest replication lag at which a replica is still used.
+     */
+    @Getter
+    private final @NotNull Duration maxLag;
+    /**
+     * How often the replicas are checked.
+     */
+    @Getter
+    private final @NotNull Duration checkInterval;
+    /**
+     * How long reads of a written id go to the primary.
+     */
+    @Getter
+    private final @NotNull Duration readYourWritesWindow;
+    /**
+     * Whether a server that does not replicate from anywhere is still used.
+     */
+    @Getter
+    private final boolean allowStandalone;
+
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+    private ScheduledExecutorService checker = null;
+
+    /**
+     * @param replicas The replicas to route reads to. May be empty, in which case every read goes to the primary.
+     * @param maxLag The highest replication lag at which a replica is still used.
+     * @param checkInterval How often the replicas are checked.
+     * @param readYourWritesWindow How long reads of a written id go to the primary.
+     * @param allowStandalone Whether a server that does not replicate from anywhere is still used.
+     */
+    public ReplicaRouter(@NotNull List<Replica> replicas, @NotNull Duration maxLag, @NotNull Duration checkInterval, @NotNull Duration readYourWritesWindow, boolean allowStandalone) {
+        this.replicas = List.copyOf(replicas);
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.readYourWritesWindow = readYourWritesWindow;
+        this.allowStandalone = allowStandalone;
+    }
+
+    /**
+     * Builds a {@link ReplicaRouter} from the optional replica settings of the {@code [mysql]} section of the given
+     * secret configuration. Each replica gets its own {@link ConnectionPool}.
+     * @param secret The secret configuration.
+     * @return A new {@link ReplicaRouter}, without replicas if none are configured.
+     */
+    public static @NotNull ReplicaRouter fromSecret(@NotNull Ini secret) {
+        Duration maxLag = DEFAULT_MAX_LAG;
+        Duration checkInterval = DEFAULT_CHECK_INTERVAL;
+        Duration window = null;
+        try {
+            String maxLagStr = secret.get("mysql", "replicaMaxLag");
+            String checkIntervalStr = secret.get("mysql", "replicaCheckInterval");
+            String windowStr = secret.get("mysql", "readYourWritesWindow");
+            if (maxLagStr != null && !maxLagStr.isBlank()) maxLag = Duration.ofSeconds(Math.max(0, Long.parseLong(maxLagStr.trim())));
+            if (checkIntervalStr != null && !checkIntervalStr.isBlank()) checkInterval = Duration.ofMillis(Math.max(100, Long.parseLong(checkIntervalStr.trim())));
+            if (windowStr != null && !windowStr.isBlank()) window = Duration.ofMillis(Math.max(0, Long.parseLong(windowStr.trim())));
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [mysql] replica configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+        }
+
+        boolean allowStandalone = Boolean.parseBoolean(secret.get("mysql", "replicaAllowStandalone"));
+
+        List<Replica> replicas = new ArrayList<>();
+        String replicasStr = secret.get("mysql", "replicas");
+        if (replicasStr != null) {
+            for (String host : replicasStr.split(",")) {
+                host = host.trim();
+                if (host.isEmpty()) continue;
+                if (!host.contains(":")) host += ":" + secret.get("mysql", "port");
+                replicas.add(new Replica(host, ConnectionPool.fromSecret(secret, host)));
+            }
+        }
+
+        return new ReplicaRouter(replicas, maxLag, checkInterval, window != null ? window : maxLag.plus(checkInterval), allowStandalone);
+    }
+
+    /**
+     * Creates the shared instance from the secret configuration and starts checking its replicas. Called once by
+     * {@link ChatBridge#main(String[])} when the database is enabled.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        if (instance != null) instance.shutdown();
+        instance = fromSecret(secret);
+        instance.start();
+    }
+
+    /**
+     * Retrieves the shared {@link ReplicaRouter}. Until {@link #init(Ini)} is called it has no replicas, and every
+     * read goes to the primary. Called on every settings read, so it only locks while the instance is created.
+     * @return The shared {@link ReplicaRouter}.
+     */
+    public static @NotNull ReplicaRouter get() {
+        ReplicaRouter router = instance;
+        if (router != null) return router;
+        synchronized (ReplicaRouter.class) {
+            if (instance == null) {
+                instance = new ReplicaRouter(List.of(), DEFAULT_MAX_LAG, DEFAULT_CHECK_INTERVAL, DEFAULT_MAX_LAG.plus(DEFAULT_CHECK_INTERVAL), false);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Replaces the shared {@link ReplicaRouter}. The previous instance, if any, is shut down.
+     * @param router The new shared router, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable ReplicaRouter router) {
+        if (instance != null && instance != router) {
+            instance.shutdown();
+        }
+        instance = router;
+    }
+
+    /**
+     * Checks every replica once, then again every {@link #getCheckInterval()}. Does nothing without replicas.
+     */
+    public synchronized void start() {
+        if (this.checker != null || this.replicas.isEmpty()) return;
+        check();
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mysql-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = this.checkInterval.toMillis();
+        this.checker.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops checking the replicas and closes their pools.
+     */
+    public synchronized void shutdown() {
+        if (this.checker != null) {
+            this.checker.shutdownNow();
+            this.checker = null;
+        }
+        for (Replica replica : this.replicas) {
+            replica.getPool().close();
+        }
+    }
+
+    /**
+     * Picks the replica for a read.
+     * @param id The user or guild id that is read.
+     * @return A usable replica, or {@code null} if the read has to go to the primary because the id was written
+     *         recently or no replica is usable.
+     */
+    public @Nullable Replica route(@NotNull String id) {
+        if (this.replicas.isEmpty()) return null;
+        if (isPinned(id)) {
+            this.pinnedReads.increment();
+            return null;
+        }
+
+        int size = this.replicas.size();
+        int start = Math.floorMod(this.next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = this.replicas.get((start + i) % size);
+            if (replica.isHealthy()) {
+                this.replicaReads.increment();
+                return replica;
+            }
+        }
+        this.fallbackReads.increment();
+        return null;
+    }
+
+    /**
+     * Sends reads of the given ids to the primary for the next {@link #getReadYourWritesWindow()}.
+     * @param ids The user or guild ids that were written.
+     */
+    public void pin(@NotNull Collection<String> ids) {
+        if (this.replicas.isEmpty() || this.readYourWritesWindow.isZero()) return;
+        long until = System.nanoTime() + this.readYourWritesWindow.toNanos();
+        for (String id : ids) {
+            this.pinnedUntil.put(id, until);
+        }
+    }
+
+    /**
+     * @param id A user or guild id.
+     * @return Whether reads of the id currently go to the primary.
+     */
+    public boolean isPinned(@NotNull String id) {
+        Long until = this.pinnedUntil.get(id);
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) return true;
+        this.pinnedUntil.remove(id, until);
+        return false;
+    }
+
+    /**
+     * Checks the health and lag of every replica, and forgets expired pins.
+     */
+    public void check() {
+        for (Replica replica : this.replicas) {
+            replica.check(this.maxLag, this.allowStandalone);
+        }
+
+        long now = System.nanoTime();
+        this.pinnedUntil.entrySet().removeIf(entry -> entry.getValue() - now <= 0);
+
+        if (ChatBridge.isDebug()) {
+            System.out.println("\u001B[36mreplicas\u001B[0m " + this.replicaReads.sum() + " replica reads, " + this.pinnedReads.sum() + " pinned to primary, " + this.fallbackReads.sum() + " fell back to primary");
+            for (Replica replica : this.replicas) {
+                System.out.println("\u001B[36mreplicas\u001B[0m " + replica.getStats());
+            }
+        }
+    }
+
+    /**
+     * @return A snapshot of the statistics of every replica.
+     */
+    public @NotNull List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>(this.replicas.size());
+        for (Replica replica : this.replicas) {
+            stats.add(replica.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * One read replica, its pool, health and latency metrics.
+     */
+    public static class Replica {
+        /**
+         * The replica's {@code address:port}.
+         */
+        @Getter
+        private final @NotNull String host;
+        @Getter
+        private final @NotNull ConnectionPool pool;
+
+        private volatile boolean healthy = false;
+        private volatile long lagSeconds = -1;
+        private volatile long probeNanos = 0;
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder readNanos = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile long maxReadNanos = 0;
+
+        /**
+         * @param host The replica's {@code address:port}.
+         * @param pool The replica's {@link ConnectionPool}.
+         */
+        public Replica(@NotNull String host, @NotNull ConnectionPool pool) {
+            this.host = host;
+            this.pool = pool;
+        }
+
+        /**
+         * @return Whether the last check reached the replica with an acceptable lag, and no read has failed since.
+         */
+        public boolean isHealthy() {
+            return this.healthy;
+        }
+
+        /**
+         * Records a read served by this replica.
+         * @param nanos How long the read took, including borrowing the connection.
+         */
+        public void recordRead(long nanos) {
+            this.reads.increment();
+            this.readNanos.add(nanos);
+            if (nanos > this.maxReadNanos) this.maxReadNanos = nanos;
+        }
+
+        /**
+         * Records a failed read. If the replica could not be reached, it is not used again until the next check succeeds.
+         * @param ex The cause of the failure.
+         */
+        public void recordFailure(@NotNull SQLException ex) {
+            this.failures.increment();
+            if (isConnectionFailure(ex)) {
+                setHealthy(false, ex.getMessage());
+            }
+        }
+
+        /**
+         * @return A snapshot of this replica's statistics.
+         */
+        public @NotNull Stats getStats() {
+            long count = this.reads.sum();
+            return new Stats(this.host, this.healthy, this.lagSeconds, TimeUnit.NANOSECONDS.toMicros(this.probeNanos), count,
+                    count > 0 ? TimeUnit.NANOSECONDS.toMicros(this.readNanos.sum() / count) : 0,
+                    TimeUnit.NANOSECONDS.toMicros(this.maxReadNanos), this.failures.sum());
+        }
+
+        private void check(@NotNull Duration maxLag, boolean allowStandalone) {
+            long start = System.nanoTime();
+            try (Connection conn = this.pool.borrow();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = showReplicaStatus(stmt)) {
+                this.probeNanos = System.nanoTime() - start;
+                if (!rs.next()) {
+                    this.lagSeconds = allowStandalone ? 0 : -1;
+                    setHealthy(allowStandalone, "it does not replicate from a source (set [mysql] replicaAllowStandalone to use it anyway)");
+                    return;
+                }
+                Long lag = readLag(rs);
+                if (lag == null) {
+                    this.lagSeconds = -1;
+                    setHealthy(false, "replication is not running");
+                } else {
+                    this.lagSeconds = lag;
+                    setHealthy(lag <= maxLag.toSeconds(), "replication lag of " + lag + "s");
+                }
+            } catch (SQLException ex) {
+                this.probeNanos = System.nanoTime() - start;
+                this.lagSeconds = -1;
+                setHealthy(false, ex.getMessage());
+            }
+        }
+
+        private static boolean isConnectionFailure(@NotNull SQLException ex) {
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLRecoverableException || cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException) return true;
+                if (cause instanceof SQLException sqlEx && sqlEx.getSQLState() != null && sqlEx.getSQLState().startsWith("08")) return true;
+            }
+            return false;
+        }
+
+        private void setHealthy(boolean healthy, @NotNull String reason) {
+            if (this.healthy == healthy) return;
+            this.healthy = healthy;
+            if (healthy) {
+                System.out.println("MySQL replica " + this.host + " is serving reads.");
+            } else {
+                System.err.println("MySQL replica " + this.host + " is not serving reads: " + reason);
+            }
+        }
+
+        /**
+         * @param rs The current row of {@code SHOW REPLICA STATUS}.
+         * @return The replication lag in seconds, or {@code null} if replication is stopped.
+         */
+        private static @Nullable Long readLag(@NotNull ResultSet rs) throws SQLException {
+            int column;
+            try {
+                column = rs.findColumn("Seconds_Behind_Source");
+            } catch (SQLException ex) {
+                column = rs.findColumn("Seconds_Behind_Master");
+            }
+            long lag = rs.getLong(column);
+            return rs.wasNull() ? null : lag;
+        }
+
+        private static @NotNull ResultSet showReplicaStatus(@NotNull Statement stmt) throws SQLException {
+            try {
+                return stmt.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException ex) {
+                // Before MySQL 8.0.22
+                return stmt.executeQuery("SHOW SLAVE STATUS");
+            }
+        }
+    }
+
+    /**
+     * A snapshot of a replica's statistics.
+     * @param host The replica's {@code address:port}.
+     * @param healthy Whether the replica is serving reads.
+     * @param lagSeconds The replication lag at the last check, or {@code -1} if it is unknown.
+     * @param probeMicros How long the last check took.
+     * @param reads The number of reads served.
+     * @param averageReadMicros The average latency of a read.
+     * @param maxReadMicros The highest latency of a read.
+     * @param failures The number of failed reads.
+     */
+    public record Stats(@NotNull String host, boolean healthy, long lagSeconds, long probeMicros, long reads, long averageReadMicros, long maxReadMicros, long failures) {
+        @Override
+        public String toString() {
+            return "Replica " + this.host + ": " + (this.healthy ? "healthy" : "unhealthy") + ", lag " + (this.lagSeconds >= 0 ? this.lagSeconds + "s" : "unknown")
+                    + ", probe " + this.probeMicros + "us, " + this.reads + " reads, avg " + this.averageReadMicros + "us, max " + this.maxReadMicros + "us, " + this.failures + " failures";
+        }
+    }
+}
@@ -2,12 +2,11 @@ package com.ethanrobins.chatbridge_v2.drivers;
 
 import com.ethanrobins.chatbridge_v2.ChatBridge;
 import com.ethanrobins.chatbridge_v2.Model;
-import com.ethanrobins.chatbridge_v2.exceptions.HttpErrorCode;
+import com.ethanrobins.chatbridge_v2.exceptions.BudgetExceededException;
 import com.ethanrobins.chatbridge_v2.utils.RandomString;
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import net.dv8tion.jda.api.entities.MessageEmbed;
@@ -15,22 +14,19 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.Instant;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-@JsonPropertyOrder({ "model", "temperature", "max_output_tokens", "store", "prompt" })
+@JsonPropertyOrder({ "model", "temperature", "max_output_tokens", "store", "stream", "prompt" })
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE, creatorVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE)
 @JsonDeserialize(using = Request.NoDeserialize.class)
 public class Request {
-    private static final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final InFlightRegistry<Flight, Response> inFlight = new InFlightRegistry<>();
+    private static final int PROMPT_OVERHEAD_TOKENS = 600;
     private final @NotNull String id;
 
     private final @Nullable Model model;
@@ -40,6 +36,10 @@ public class Request {
     private final @NotNull Prompt prompt;
 
     private Response response = null;
+    private @Nullable Instant deadline = null;
+    private @Nullable String guildId = null;
+    private @Nullable String userId = null;
+    private boolean stream = false;
 
     public Request(@Nullable String id, @Nullable Model model, @Nullable Double temperature, @Nullable Integer maxTokens, @Nullable Boolean store, @NotNull Prompt prompt) {
         this.id = id != null ? id : "request_" + RandomString.generate(8, RandomString.Content.NUMBERS);
@@ -66,6 +66,45 @@ public class Request {
         return this.response;
     }
 
+    @JsonIgnore
+    public @Nullable Instant getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * Sets the time after which a translation is no longer useful. Retries are not attempted past it.
+     * @param deadline The deadline, or {@code null} to only bound the request by its number of attempts.
+     * @return This {@link Request} for chaining.
+     */
+    @JsonIgnore
+    public @NotNull Request setDeadline(@Nullable Instant deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    @JsonIgnore
+    public @Nullable String getGuildId() {
+        return this.guildId;
+    }
+    @JsonIgnore
+    public @Nullable String getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * Sets who the translation is for, so its token usage is accounted to them and the guild's budget applies.
+     * @param guildId The guild the translation was requested in, or {@code null} outside a guild.
+     * @param userId The user who requested the translation.
+     * @return This {@link Request} for chaining.
+     * @see UsageLedger
+     */
+    @JsonIgnore
+    public @NotNull Request setOrigin(@Nullable String guildId, @Nullable String userId) {
+        this.guildId = guildId;
+        this.userId = userId;
+        return this;
+    }
+
     @JsonGetter("model")
     public @Nullable String getModelId() {
         return this.model != null ? this.model.getId() : null;
@@ -82,55 +121,210 @@ public class Request {
     public @Nullable Boolean isStore() {
         return this.store;
     }
+    @JsonGetter("stream")
+    public @Nullable Boolean isStream() {
+        return this.stream ? true : null;
+    }
     @JsonGetter("prompt")
     public @NotNull Prompt getPrompt() {
         return this.prompt;
     }
 
+    /**
+     * Estimates the tokens this request will consume, for admission control.
+     * <br>Input is estimated from the prompt variables at roughly three characters per token, plus the stored
+     * prompt's instructions. Unless {@link #getMaxTokens()} is set, output is assumed to be twice the input since
+     * the model emits both an explicit and a safe variant, once per target locale. A single-variant prompt, one with
+     * a {@code lvl} variable, emits only one variant, so its output is assumed to be about the size of the input.
+     * @return The estimated input plus output tokens.
+     */
+    @JsonIgnore
+    public int estimateTokens() {
+        int chars = 0;
+        for (Map.Entry<String, String> variable : this.prompt.getVariables().entrySet()) {
+            if (variable.getValue() != null && !variable.getKey().equals("tgts")) chars += variable.getValue().length();
+        }
+        int input = PROMPT_OVERHEAD_TOKENS + (chars + 2) / 3;
+        int variants = this.prompt.getVariables().containsKey("lvl") ? 1 : 2;
+        int output = this.maxTokens != null ? this.maxTokens : this.prompt.getTargets().size() * (variants * (chars + 2) / 3 + 64);
+        return input + output;
+    }
+
     @JsonIgnore
     public CompletableFuture<Response> queue() {
-        final String API_URL = ChatBridge.getSecret().get("chatgpt", "url");
-        final String API_KEY = ChatBridge.getSecret().get("chatgpt", "key");
-
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                String jsonPayload = objectMapper.writeValueAsString(this);
-
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(new URI(API_URL))
-                        .header("Authorization", "Bearer " + API_KEY)
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
-                        .build();
-
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                if (response.statusCode() != 200) {
-                    throw new HttpErrorCode(response.statusCode(), "Failed to translate the text. HTTP Error Code: " + response.statusCode() + "\n" + response.body());
-                }
-                String responseStr = response.body();
-
-                System.out.println("\u001B[33m" + this.getId() + "\u001B[0m completed");
-
-                Response data;
-                try {
-                    data = objectMapper.readValue(responseStr, Response.class);
-                    if (data != null) {
-                        data.setId(this.getId());
-                    }
-                } catch (JsonProcessingException ex) {
-                    System.err.println("Unable to parse data: " + ex.getMessage() + "\n\nData: " + responseStr);
-                    data = null;
+        return queue(TranslationClient.get());
+    }
+
+    @JsonIgnore
+    public CompletableFuture<Response> queue(@NotNull TranslationClient client) {
+        return queue(client, TranslationCache.get());
+    }
+
+    @JsonIgnore
+    public CompletableFuture<Response> queue(@NotNull TranslationClient client, @NotNull TranslationCache cache) {
+        return queue(client, cache, null);
+    }
+
+    /**
+     * Like {@link #queue()}, but streams the translation and reports it as it is generated.
+     * <br>{@code onPartial} is not called if the translation is served from the cache, or if an identical
+     * translation is already in flight; the returned future completes as usual in both cases.
+     * @param onPartial Receives the translation generated so far. Called on the client's executor.
+     * @return A {@link CompletableFuture} completed with the final {@link Response}.
+     */
+    @JsonIgnore
+    public CompletableFuture<Response> stream(@NotNull Consumer<PartialTranslation> onPartial) {
+        return stream(TranslationClient.get(), TranslationCache.get(), onPartial);
+    }
+
+    @JsonIgnore
+    public CompletableFuture<Response> stream(@NotNull TranslationClient client, @NotNull TranslationCache cache, @NotNull Consumer<PartialTranslation> onPartial) {
+        return queue(client, cache, onPartial);
+    }
+
+    private CompletableFuture<Response> queue(@NotNull TranslationClient client, @NotNull TranslationCache cache, @Nullable Consumer<PartialTranslation> onPartial) {
+        final TranslationKey key = TranslationKey.of(this.prompt);
+        Response.Data cached = this.prompt.isMultiTarget() ? getCachedTargets(cache) : cache.get(key);
+        if (cached != null) {
+            Response data = Response.fromCache(this.getId(), cached);
+            if (ChatBridge.isDebug()) {
+                System.out.println("\u001B[33m" + this.getId() + "\u001B[0m served from cache");
+            }
+            this.response = data;
+            return CompletableFuture.completedFuture(data);
+        }
+
+        // The call reserves from and is charged to the first caller's guild, so only calls of one guild are shared
+        CompletableFuture<Response> shared = inFlight.join(new Flight(key, this.guildId), () -> send(client, cache, key, onPartial));
+        CompletableFuture<Response> result = shared.thenApply(data -> {
+            Response copy = data.copyFor(this.getId());
+            this.response = copy;
+            return copy;
+        });
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) shared.cancel(false);
+        });
+        return result;
+    }
+
+    private CompletableFuture<Response> send(@NotNull TranslationClient client, @NotNull TranslationCache cache, @NotNull TranslationKey key, @Nullable Consumer<PartialTranslation> onPartial) {
+        final byte[] jsonPayload;
+        try {
+            this.stream = onPartial != null;
+            jsonPayload = RequestWriter.write(this);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final UsageLedger ledger = UsageLedger.get();
+        final int estimate = this.estimateTokens();
+        final long delay;
+        try {
+            delay = ledger.reserve(this.guildId, estimate, this.deadline);
+        } catch (BudgetExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final PromptType type = PromptType.fromId(this.prompt.getId());
+        // The losing attempt of a hedged call reserved nothing, but its tokens were spent all the same
+        final Consumer<Response> onDiscarded = extra -> ledger.settle(this.guildId, this.userId, 0, type, extra);
+        CompletableFuture<Response> call = delay > 0
+                ? dispatchAfter(delay, client, jsonPayload, estimate, onPartial, onDiscarded)
+                : dispatch(client, jsonPayload, estimate, onPartial, onDiscarded);
+        call.whenComplete((data, ex) -> ledger.settle(this.guildId, this.userId, estimate, type, ex == null ? data : null));
+        CompletableFuture<Response> result = call.thenApply(data -> {
+
+            System.out.println("\u001B[33m" + this.getId() + "\u001B[0m completed");
+
+            Response.Output output = data.getOutput();
+            Response.Output.Content content = output != null ? output.getContent() : null;
+            if (content != null && content.getData() != null) {
+                if (this.prompt.isMultiTarget()) {
+                    putTargets(cache, content.getData());
+                } else {
+                    cache.put(key, content.getData());
                 }
-                this.response = data;
-                return data;
-            } catch (URISyntaxException | IOException | InterruptedException | HttpErrorCode e) {
-                e.printStackTrace();
-                return null;
             }
+            return data;
+        });
+        // Cancelling a dependent stage does not cancel its source, so pass it on to the call itself
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) call.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * Like {@link #dispatch(TranslationClient, byte[], int, Consumer, Consumer)}, but only once {@code delay} has passed.
+     * Cancelling the returned future cancels the wait, or the call if it has already been sent.
+     */
+    private CompletableFuture<Response> dispatchAfter(long delay, @NotNull TranslationClient client, byte[] jsonPayload, int estimate, @Nullable Consumer<PartialTranslation> onPartial, @NotNull Consumer<Response> onDiscarded) {
+        final CompletableFuture<Response> call = new CompletableFuture<>();
+        final CompletableFuture<Void> wait = CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        wait.whenComplete((v, waitEx) -> {
+            if (call.isDone()) return;
+            CompletableFuture<Response> dispatched = dispatch(client, jsonPayload, estimate, onPartial, onDiscarded);
+            dispatched.whenComplete((data, ex) -> {
+                if (ex == null) {
+                    call.complete(data);
+                } else {
+                    call.completeExceptionally(ex);
+                }
+            });
+            call.whenComplete((data, ex) -> {
+                if (call.isCancelled()) dispatched.cancel(true);
+            });
+        });
+        call.whenComplete((data, ex) -> {
+            if (call.isCancelled()) wait.cancel(true);
         });
+        return call;
     }
 
+    private CompletableFuture<Response> dispatch(@NotNull TranslationClient client, byte[] jsonPayload, int estimate, @Nullable Consumer<PartialTranslation> onPartial, @NotNull Consumer<Response> onDiscarded) {
+        return onPartial != null
+                ? client.streamTranslation(jsonPayload, estimate, this.deadline, text -> onPartial.accept(PartialTranslation.parse(text)))
+                : client.sendTranslation(jsonPayload, estimate, this.deadline, onDiscarded);
+    }
+
+    /**
+     * Serves a {@link PromptType#MESSAGES} prompt from the cache if every one of its targets is cached.
+     * @return The combined {@link Response.Data}, or {@code null} if any target is missing.
+     */
+    private @Nullable Response.Data getCachedTargets(@NotNull TranslationCache cache) {
+        List<Response.Data.Target<?>> targets = new ArrayList<>();
+        Response.Data.Source source = null;
+        for (String target : this.prompt.getTargets()) {
+            Response.Data data = cache.get(TranslationKey.forTarget(this.prompt, target));
+            if (data == null) return null;
+            source = data.getSource();
+            targets.add(data.getTarget());
+        }
+        return source != null ? new Response.Data(source, targets) : null;
+    }
+
+    /**
+     * Caches each target of a {@link PromptType#MESSAGES} response as its own single-target translation.
+     * Targets are matched to the requested locales by tag, or by position if the tags differ.
+     */
+    private void putTargets(@NotNull TranslationCache cache, @NotNull Response.Data data) {
+        List<String> requested = this.prompt.getTargets();
+        for (int i = 0; i < requested.size(); i++) {
+            Response.Data.Target<?> target = data.getTarget(requested.get(i));
+            if (target == null && data.getTargets().size() == requested.size()) target = data.getTargets().get(i);
+            if (target == null) {
+                System.err.println("No translation returned for " + requested.get(i) + " in " + this.getId());
+                continue;
+            }
+            cache.put(TranslationKey.forTarget(this.prompt, requested.get(i)), new Response.Data(data.getSource(), target));
+        }
+    }
+
+    /**
+     * Identifies a call that concurrent identical requests of the same guild may share.
+     */
+    private record Flight(@NotNull TranslationKey key, @Nullable String guildId) {}
+
     @JsonPropertyOrder({ "id", "version", "variables" })
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE, creatorVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE)
@@ -139,32 +333,83 @@ public class Request {
         private final @NotNull String id;
         private final @Nullable String version;
         private final @NotNull Map<String, String> variables = new HashMap<>();
+        private final @NotNull List<String> targets;
 
+        private Prompt(@NotNull String id, @Nullable String version, @NotNull Map<String, String> variables, @NotNull List<String> targets) {
+            this.id = id;
+            this.version = version;
+            this.variables.putAll(variables);
+            this.targets = targets;
+        }
         public Prompt(@Nullable String id, @Nullable String version, @NotNull String target, @NotNull String message) {
             this.id = id != null ? id : PromptType.MESSAGE.getId();
             this.version = version;
+            this.targets = List.of(target);
             this.variables.put("tgt", target);
             this.variables.put("msg", message);
         }
+        /**
+         * Creates a {@link PromptType#MESSAGES} prompt that translates one message into every given locale in one call.
+         * <br>The message is sent once; only the output grows with the number of targets. Duplicate locales are
+         * removed and the rest sorted, so the same set of locales always produces the same prompt.
+         */
+        public Prompt(@Nullable String id, @Nullable String version, @NotNull Collection<String> targets, @NotNull String message) {
+            if (targets.isEmpty()) {
+                throw new IllegalArgumentException("At least one target locale is required");
+            }
+            this.id = id != null ? id : PromptType.MESSAGES.getId();
+            this.version = version;
+            this.targets = List.copyOf(new TreeSet<>(targets));
+            this.variables.put("tgts", RequestWriter.toJson(this.targets));
+            this.variables.put("msg", message);
+        }
         public Prompt(@Nullable String id, @Nullable String version, @NotNull String target, @Nullable String message, @Nullable String title, @Nullable String author, @Nullable String description, @Nullable String footer, @Nullable Map<String, String> fields) {
             this.id = id != null ? id : PromptType.EMBED.getId();
             this.version = version;
+            this.targets = List.of(target);
             this.variables.put("tgt", target);
             this.variables.put("msg", message != null ? message : "");
             this.variables.put("title", title != null ? title : "");
             this.variables.put("author", author != null ? author : "");
             this.variables.put("desc", description != null ? description : "");
             this.variables.put("footer", footer != null ? footer : "");
-            try {
-                this.variables.put("fields", objectMapper.writeValueAsString(fields));
-            } catch (JsonProcessingException e) {
-                System.err.println("Unable to parse fields: " + e.getMessage());
-                this.variables.put("fields", null);
-            }
+            this.variables.put("fields", RequestWriter.toJson(fields));
         }
         public Prompt(@Nullable String id, @Nullable String version, @NotNull String target, @Nullable String message, @Nullable String title, @Nullable MessageEmbed.AuthorInfo author, @Nullable String description, @Nullable MessageEmbed.Footer footer, @Nullable List<MessageEmbed.Field> fields) {
             this(id, version, target, message, title, author != null ? author.getName() : null, description, footer != null ? footer.getText() : null, getFieldsFromEmbedFields(fields));
         }
+        /**
+         * Creates a {@link PromptType#EMBEDS} prompt that translates the message and all of its embeds in one call.
+         * <br>Embeds are sent as a JSON array in their original order, and so are the fields of each embed, so the
+         * translated embeds can be matched back to the originals by index.
+         */
+        public Prompt(@Nullable String id, @Nullable String version, @NotNull String target, @Nullable String message, @NotNull List<MessageEmbed> embeds) {
+            this.id = id != null ? id : PromptType.EMBEDS.getId();
+            this.version = version;
+            this.targets = List.of(target);
+            this.variables.put("tgt", target);
+            this.variables.put("msg", message != null ? message : "");
+
+            List<Map<String, Object>> embedList = new ArrayList<>();
+            for (MessageEmbed embed : embeds) {
+                Map<String, Object> e = new LinkedHashMap<>();
+                e.put("title", embed.getTitle() != null ? embed.getTitle() : "");
+                e.put("author", embed.getAuthor() != null && embed.getAuthor().getName() != null ? embed.getAuthor().getName() : "");
+                e.put("desc", embed.getDescription() != null ? embed.getDescription() : "");
+                e.put("footer", embed.getFooter() != null && embed.getFooter().getText() != null ? embed.getFooter().getText() : "");
+
+                List<Map<String, String>> fields = new ArrayList<>();
+                for (MessageEmbed.Field f : embed.getFields()) {
+                    Map<String, String> field = new LinkedHashMap<>();
+                    field.put("name", f.getName() != null ? f.getName() : "");
+                    field.put("value", f.getValue() != null ? f.getValue() : "");
+                    fields.add(field);
+                }
+                e.put("fields", fields);
+                embedList.add(e);
+            }
+            this.variables.put("embeds", RequestWriter.toJson(embedList));
+        }
         private static Map<String, String> getFieldsFromEmbedFields(@Nullable List<MessageEmbed.Field> fields) {
             if (fields != null) {
                 Map<String, String> fieldMap = new HashMap<>();
@@ -189,6 +434,35 @@ public class Request {
         public @NotNull Map<String, String> getVariables() {
             return this.variables;
         }
+
+        /**
+         * Derives a single-variant prompt that asks the model for only one {@link SafetyLevel}, roughly halving the
+         * output tokens. The variables are kept and {@code lvl} is added; the result is a {@link Response.Data.VariantTarget}.
+         * @param type The single-variant prompt to use, such as {@link PromptType#MESSAGE_SINGLE}.
+         * @param safetyLevel The variant to generate.
+         * @return A new {@link Prompt}.
+         */
+        public @NotNull Prompt singleVariant(@NotNull PromptType type, @NotNull SafetyLevel safetyLevel) {
+            Prompt prompt = new Prompt(type.getId(), type.getVersion(), this.variables, this.targets);
+            prompt.variables.put("lvl", safetyLevel.getId());
+            return prompt;
+        }
+
+        /**
+         * @return The target locales of this prompt. Holds a single locale unless this is a {@link PromptType#MESSAGES} prompt.
+         */
+        @JsonIgnore
+        public @NotNull List<String> getTargets() {
+            return this.targets;
+        }
+
+        /**
+         * @return {@code true} if this prompt translates into several locales at once.
+         */
+        @JsonIgnore
+        public boolean isMultiTarget() {
+            return !this.variables.containsKey("tgt");
+        }
     }
 
     static final class NoDeserialize extends JsonDeserializer<Request> {
@@ -0,0 +1,152 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming writer for the body of a Responses API call.
+ * <p>
+ * Writes a {@link Request} straight to bytes with a {@link JsonGenerator}, in the same shape Jackson's data binding
+ * produces from the {@code @JsonGetter}s on {@link Request} and {@link Request.Prompt}, but without reflection or
+ * intermediate objects. Property names, model ids, prompt ids, versions and variable names come from a small fixed
+ * set and are encoded once; each thread writes into its own reusable buffer, so a request costs little more than
+ * the returned array.
+ * </p>
+ *
+ * @see ResponseDecoder
+ */
+final class RequestWriter {
+    private static final JsonFactory factory = new JsonFactory();
+    /**
+     * Buffers that grew past this are not kept for reuse, so one huge request does not pin memory on a thread.
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(4096));
+    private static final Map<String, SerializedString> encoded = new ConcurrentHashMap<>();
+
+    private static final SerializedString MODEL = new SerializedString("model");
+    private static final SerializedString TEMPERATURE = new SerializedString("temperature");
+    private static final SerializedString MAX_OUTPUT_TOKENS = new SerializedString("max_output_tokens");
+    private static final SerializedString STORE = new SerializedString("store");
+    private static final SerializedString STREAM = new SerializedString("stream");
+    private static final SerializedString PROMPT = new SerializedString("prompt");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString VARIABLES = new SerializedString("variables");
+
+    private RequestWriter() {}
+
+    /**
+     * @param request The {@link Request} to write.
+     * @return The JSON body of {@code request}.
+     * @throws IOException If the body could not be written.
+     */
+    static byte[] write(@NotNull Request request) throws IOException {
+        ByteArrayBuilder buffer = buffers.get();
+        buffer.reset();
+        try (JsonGenerator g = factory.createGenerator(buffer)) {
+            g.writeStartObject();
+            if (request.getModelId() != null) {
+                g.writeFieldName(MODEL);
+                g.writeString(encoded(request.getModelId()));
+            }
+            if (request.getTemperature() != null) {
+                g.writeFieldName(TEMPERATURE);
+                g.writeNumber(request.getTemperature());
+            }
+            if (request.getMaxTokens() != null) {
+                g.writeFieldName(MAX_OUTPUT_TOKENS);
+                g.writeNumber(request.getMaxTokens());
+            }
+            if (request.isStore() != null) {
+                g.writeFieldName(STORE);
+                g.writeBoolean(request.isStore());
+            }
+            if (request.isStream() != null) {
+                g.writeFieldName(STREAM);
+                g.writeBoolean(request.isStream());
+            }
+            g.writeFieldName(PROMPT);
+            writePrompt(g, request.getPrompt());
+            g.writeEndObject();
+        }
+
+        byte[] body = buffer.toByteArray();
+        if (body.length > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return body;
+    }
+
+    private static void writePrompt(@NotNull JsonGenerator g, @NotNull Request.Prompt prompt) throws IOException {
+        g.writeStartObject();
+        g.writeFieldName(ID);
+        g.writeString(encoded(prompt.getId()));
+        if (prompt.getVersion() != null) {
+            g.writeFieldName(VERSION);
+            g.writeString(encoded(prompt.getVersion()));
+        }
+        g.writeFieldName(VARIABLES);
+        g.writeStartObject();
+        for (Map.Entry<String, String> variable : prompt.getVariables().entrySet()) {
+            g.writeFieldName(encoded(variable.getKey()));
+            g.writeString(variable.getValue());
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    /**
+     * Encodes a nested value as a JSON string, for prompt variables that carry structured data.
+     * <br>Prompt variables must be strings, so the result is escaped once more in the request body.
+     * @param value {@code null}, a {@link String}, a {@link Map} or a {@link Collection} of these.
+     * @return The JSON text of {@code value}.
+     */
+    static @NotNull String toJson(@Nullable Object value) {
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator g = factory.createGenerator(writer)) {
+            writeValue(g, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeValue(@NotNull JsonGenerator g, @Nullable Object value) throws IOException {
+        if (value == null) {
+            g.writeNull();
+        } else if (value instanceof String s) {
+            g.writeString(s);
+        } else if (value instanceof Map<?, ?> map) {
+            g.writeStartObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                g.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(g, entry.getValue());
+            }
+            g.writeEndObject();
+        } else if (value instanceof Collection<?> list) {
+            g.writeStartArray();
+            for (Object item : list) {
+                writeValue(g, item);
+            }
+            g.writeEndArray();
+        } else {
+            throw new IllegalArgumentException("Cannot write " + value.getClass().getName() + " as a prompt variable");
+        }
+    }
+
+    private static @NotNull SerializedString encoded(@NotNull String value) {
+        return encoded.computeIfAbsent(value, SerializedString::new);
+    }
+}
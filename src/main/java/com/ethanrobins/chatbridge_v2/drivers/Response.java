@@ -7,6 +7,7 @@ import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
@@ -23,6 +24,7 @@ public class Response {
     private static final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false).enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
 
     private String id = null;
+    private boolean cached = false;
     private final @NotNull String openaiId;
     private final long createdAt;
     private final @Nullable Boolean background;
@@ -50,6 +52,32 @@ public class Response {
         this.model = modelVal;
     }
 
+    /**
+     * Wraps a cached translation in a {@link Response} so it can be consumed exactly like a fresh one.
+     * <br>Cached responses report zero {@link Usage} and {@link #isCached()} returns {@code true}.
+     * @param id The id of the {@link Request} being answered.
+     * @param data The cached translation.
+     * @return A new {@link Response} containing {@code data}.
+     */
+    static @NotNull Response fromCache(@NotNull String id, @NotNull Data data) {
+        Response response = new Response("cache", System.currentTimeMillis() / 1000, null, null, null, List.of(new Output("cache", "completed", List.of(new Output.Content(data)))), new Usage(0, 0, 0));
+        response.cached = true;
+        response.setId(id);
+        return response;
+    }
+
+    /**
+     * Creates a copy of this {@link Response} for another {@link Request} that was answered by the same model call.
+     * @param id The id of the {@link Request} being answered.
+     * @return A new {@link Response} sharing this response's content.
+     */
+    @NotNull Response copyFor(@NotNull String id) {
+        Response response = new Response(this.openaiId, this.createdAt, this.background, this.error, this.model != null ? this.model.getId() : null, this.output, this.usage);
+        response.cached = this.cached;
+        response.setId(id);
+        return response;
+    }
+
     @JsonIgnore
     public void setId(@NotNull String id) {
         if (this.id != null) {
@@ -117,6 +145,9 @@ public class Response {
                 }
                 this.data = data;
             }
+            Content(@Nullable Data data) {
+                this.data = data;
+            }
         }
     }
 
@@ -126,12 +157,41 @@ public class Response {
     @JsonSerialize(using = Response.NoSerialize.class)
     public static class Data {
         private final @NotNull Source source;
+        /**
+         * The target, or the first target of a {@link PromptType#MESSAGES} response.
+         */
         private final @NotNull Target<?> target;
+        /**
+         * Every target. Holds only {@link #getTarget()} unless this is a {@link PromptType#MESSAGES} response.
+         */
+        private final @NotNull List<Target<?>> targets;
 
+        public Data(@NotNull Source src, @NotNull Target<?> tgt) {
+            this(src, tgt, null);
+        }
+        public Data(@NotNull Source src, @NotNull List<Target<?>> tgts) {
+            this(src, null, tgts);
+        }
         @JsonCreator
-        public Data(@JsonProperty("src") @NotNull Source src, @JsonProperty("tgt") @NotNull @JsonDeserialize(using = Data.TargetDeserializer.class) Target<?> tgt) {
+        public Data(@JsonProperty("src") @NotNull Source src, @JsonProperty("tgt") @Nullable @JsonDeserialize(using = Data.TargetDeserializer.class) Target<?> tgt, @JsonProperty("tgts") @Nullable @JsonDeserialize(contentUsing = Data.TargetDeserializer.class) List<Target<?>> tgts) {
+            if (tgt == null && (tgts == null || tgts.isEmpty())) {
+                throw new IllegalArgumentException("Either 'tgt' or a non-empty 'tgts' must be present");
+            }
             this.source = src;
-            this.target = tgt;
+            this.target = tgt != null ? tgt : tgts.getFirst();
+            this.targets = (tgts != null && !tgts.isEmpty()) ? List.copyOf(tgts) : List.of(tgt);
+        }
+
+        /**
+         * Finds the target for a locale.
+         * @param tag The locale tag, such as {@code en-US}.
+         * @return The matching target, or {@code null} if there is none.
+         */
+        public @Nullable Target<?> getTarget(@NotNull String tag) {
+            for (Target<?> t : this.targets) {
+                if (t.getTag().equalsIgnoreCase(tag)) return t;
+            }
+            return null;
         }
 
         public interface SourceFields {
@@ -198,24 +258,158 @@ public class Response {
         @JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
         @JsonSerialize(using = Response.NoSerialize.class)
         public static class EmbedTarget extends Source implements Target<EmbedContent> {
-            private final @NotNull EmbedContent explicit;
-            private final @NotNull EmbedContent safe;
+            @Getter(AccessLevel.PACKAGE)
+            private final @NotNull LazyContent<EmbedContent> explicitContent;
+            @Getter(AccessLevel.PACKAGE)
+            private final @NotNull LazyContent<EmbedContent> safeContent;
 
             @JsonCreator
             public EmbedTarget(@JsonProperty("tag") @NotNull String tag, @JsonProperty("lang") @NotNull String lang, @JsonProperty("e") @NotNull EmbedContent explicit, @JsonProperty("s") @NotNull EmbedContent safe) {
+                this(tag, lang, LazyContent.of(explicit), LazyContent.of(safe));
+            }
+            /**
+             * Creates a target whose variants are decoded only when first asked for.
+             */
+            EmbedTarget(@NotNull String tag, @NotNull String lang, @NotNull LazyContent<EmbedContent> explicit, @NotNull LazyContent<EmbedContent> safe) {
                 super(tag, lang);
-                this.explicit = explicit;
-                this.safe = safe;
+                this.explicitContent = explicit;
+                this.safeContent = safe;
+            }
+
+            @JsonIgnore
+            @Override
+            public EmbedContent getExplicit() {
+                return this.explicitContent.get();
+            }
+
+            @JsonIgnore
+            @Override
+            public EmbedContent getSafe() {
+                return this.safeContent.get();
             }
 
             @JsonIgnore
             @Override
             public EmbedContent getBySafetyLevel(@NotNull SafetyLevel safetyLevel) {
                 if (safetyLevel == SafetyLevel.EXPLICIT) {
-                    return this.explicit;
+                    return getExplicit();
                 }
 
-                return this.safe;
+                return getSafe();
+            }
+        }
+
+        /**
+         * The target of a single-variant prompt such as {@link PromptType#MESSAGE_SINGLE}: only the variant for one
+         * {@link SafetyLevel} was generated.
+         * <br>A safe variant may be shown wherever an explicit one is allowed, so {@link #getExplicit()} always returns
+         * the content. An explicit variant is never handed out as safe; {@link #getSafe()} throws instead.
+         * @param <T> {@code String} for messages, {@link EmbedContent} for embeds.
+         */
+        @Getter
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        @JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+        @JsonSerialize(using = Response.NoSerialize.class)
+        public static class VariantTarget<T> extends Source implements Target<T> {
+            private final @NotNull SafetyLevel level;
+            private final @NotNull T content;
+
+            public VariantTarget(@NotNull String tag, @NotNull String lang, @NotNull SafetyLevel level, @NotNull T content) {
+                super(tag, lang);
+                this.level = level;
+                this.content = content;
+            }
+
+            @JsonIgnore
+            @Override
+            public T getExplicit() {
+                return this.content;
+            }
+
+            @JsonIgnore
+            @Override
+            public T getSafe() {
+                if (this.level != SafetyLevel.SAFE) {
+                    throw new IllegalStateException("Only the " + this.level.getId() + " variant was generated for this target");
+                }
+                return this.content;
+            }
+
+            @JsonIgnore
+            @Override
+            public T getBySafetyLevel(@NotNull SafetyLevel safetyLevel) {
+                if (safetyLevel == SafetyLevel.EXPLICIT) {
+                    return getExplicit();
+                }
+
+                return getSafe();
+            }
+        }
+
+        /**
+         * The target of a {@link PromptType#EMBEDS} prompt: the message and every embed, translated in one call.
+         */
+        @Getter
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        @JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+        @JsonSerialize(using = Response.NoSerialize.class)
+        public static class EmbedsTarget extends Source implements Target<EmbedsContent> {
+            @Getter(AccessLevel.PACKAGE)
+            private final @NotNull LazyContent<EmbedsContent> explicitContent;
+            @Getter(AccessLevel.PACKAGE)
+            private final @NotNull LazyContent<EmbedsContent> safeContent;
+
+            @JsonCreator
+            public EmbedsTarget(@JsonProperty("tag") @NotNull String tag, @JsonProperty("lang") @NotNull String lang, @JsonProperty("e") @NotNull EmbedsContent explicit, @JsonProperty("s") @NotNull EmbedsContent safe) {
+                this(tag, lang, LazyContent.of(explicit), LazyContent.of(safe));
+            }
+            /**
+             * Creates a target whose variants are decoded only when first asked for.
+             */
+            EmbedsTarget(@NotNull String tag, @NotNull String lang, @NotNull LazyContent<EmbedsContent> explicit, @NotNull LazyContent<EmbedsContent> safe) {
+                super(tag, lang);
+                this.explicitContent = explicit;
+                this.safeContent = safe;
+            }
+
+            @JsonIgnore
+            @Override
+            public EmbedsContent getExplicit() {
+                return this.explicitContent.get();
+            }
+
+            @JsonIgnore
+            @Override
+            public EmbedsContent getSafe() {
+                return this.safeContent.get();
+            }
+
+            @JsonIgnore
+            @Override
+            public EmbedsContent getBySafetyLevel(@NotNull SafetyLevel safetyLevel) {
+                if (safetyLevel == SafetyLevel.EXPLICIT) {
+                    return getExplicit();
+                }
+
+                return getSafe();
+            }
+        }
+
+        /**
+         * One variant of an {@link EmbedsTarget}. The embeds are in the same order as they were sent.
+         */
+        @Getter
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        @JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, fieldVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+        @JsonSerialize(using = Response.NoSerialize.class)
+        public static class EmbedsContent {
+            private final @Nullable String message;
+            private final @NotNull List<EmbedContent> embeds;
+
+            @JsonCreator
+            public EmbedsContent(@JsonProperty("msg") @Nullable String message, @JsonProperty("embeds") @Nullable List<EmbedContent> embeds) {
+                this.message = (message == null || message.isEmpty()) ? null : message;
+                this.embeds = embeds != null ? embeds : List.of();
             }
         }
 
@@ -267,6 +461,20 @@ public class Response {
                 final ObjectMapper mapper = (ObjectMapper) p.getCodec();
                 final JsonNode node = mapper.readTree(p);
 
+                JsonNode v = node.get("v");
+                if (v != null) {
+                    SafetyLevel level = SafetyLevel.fromIdOrNull(node.path("lvl").asText());
+                    if (level == null) {
+                        ctxt.reportInputMismatch(Target.class, "'lvl' must be present on a single-variant 'tgt'. Found lvl=%s", typeOf(node.get("lvl")));
+                    }
+                    String tag = node.path("tag").asText();
+                    String lang = node.path("lang").asText();
+                    if (v.isTextual()) return new VariantTarget<>(tag, lang, level, v.asText());
+                    if (v.isObject())  return new VariantTarget<>(tag, lang, level, mapper.treeToValue(v, EmbedContent.class));
+
+                    ctxt.reportInputMismatch(Target.class, "'v' must be a string or an object. Found v=%s", typeOf(v));
+                }
+
                 JsonNode e = node.get("e");
                 JsonNode s = node.get("s");
 
@@ -278,10 +486,11 @@ public class Response {
                 boolean bothObj  = e.isObject()  && s.isObject();
 
                 if (bothText)  return mapper.treeToValue(node, MessageTarget.class);
+                if (bothObj && e.has("embeds")) return mapper.treeToValue(node, EmbedsTarget.class);
                 if (bothObj)   return mapper.treeToValue(node, EmbedTarget.class);
 
                 ctxt.reportInputMismatch(Target.class,
-                        "'e' and 's' must be the same kind (both strings for MessageTarget, or both objects for EmbedTarget). Found e=%s, s=%s",
+                        "'e' and 's' must be the same kind (both strings for MessageTarget, or both objects for EmbedTarget/EmbedsTarget). Found e=%s, s=%s",
                         typeOf(e), typeOf(s));
                 return null;
             }
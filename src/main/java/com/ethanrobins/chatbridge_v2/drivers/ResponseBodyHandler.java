@@ -0,0 +1,63 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.exceptions.HttpErrorCode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-blocking {@link HttpResponse.BodyHandler} that turns a Responses API reply into a {@link Response}.
+ * <p>
+ * The body is collected by the {@link java.net.http.HttpClient} as it arrives and decoded once complete by the
+ * single-pass {@link ResponseDecoder}, so no thread is held while the model is generating. Any non-{@code 200} status completes the body exceptionally with
+ * an {@link HttpErrorCode} carrying the error payload.
+ * </p>
+ * <p>
+ * The response headers are handed to the {@link AdmissionController}, if any, as soon as they arrive.
+ * </p>
+ */
+final class ResponseBodyHandler implements HttpResponse.BodyHandler<Response> {
+    private final @Nullable AdmissionController admission;
+
+    ResponseBodyHandler(@Nullable AdmissionController admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<Response> apply(@NotNull HttpResponse.ResponseInfo responseInfo) {
+        final int statusCode = responseInfo.statusCode();
+        if (this.admission != null) {
+            this.admission.update(statusCode, responseInfo.headers());
+        }
+        if (statusCode != 200) {
+            return failure(statusCode);
+        }
+
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), ResponseBodyHandler::parse);
+    }
+
+    /**
+     * Collects an error body and completes exceptionally with an {@link HttpErrorCode} carrying it.
+     * @param statusCode The HTTP status of the response.
+     * @return A {@link HttpResponse.BodySubscriber} that always fails.
+     */
+    static <T> HttpResponse.BodySubscriber<T> failure(int statusCode) {
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+            throw new CompletionException(new HttpErrorCode(statusCode, "Failed to translate the text. HTTP Error Code: " + statusCode + "\n" + body));
+        });
+    }
+
+    private static Response parse(byte[] body) {
+        try {
+            return ResponseDecoder.decode(body);
+        } catch (IOException ex) {
+            System.err.println("Unable to parse data: " + ex.getMessage() + "\n\nData: " + new String(body, StandardCharsets.UTF_8));
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
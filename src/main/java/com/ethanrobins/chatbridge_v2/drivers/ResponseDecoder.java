@@ -0,0 +1,419 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass decoder for Responses API payloads.
+ * <p>
+ * Walks the tokens of the response bytes once and builds the {@link Response} directly, without an intermediate
+ * {@code String} of the body, reflection, or a {@link com.fasterxml.jackson.databind.JsonNode} tree. The model's
+ * output text is itself JSON; it is decoded straight from the parser's character buffer into {@link Response.Data},
+ * choosing the target shape from the first token of {@code e} instead of buffering the target as a tree first.
+ * </p>
+ * <p>
+ * Embed variants are only checked and sliced out as raw JSON; each is decoded by {@link LazyContent} the first time
+ * it is asked for, so a reply that renders one {@link SafetyLevel} never builds the other.
+ * </p>
+ * <p>
+ * Produces the same objects as the annotated {@link Response} classes. Unknown properties are skipped. Output text
+ * that cannot be decoded leaves {@link Response.Output.Content#getData()} {@code null}, as before.
+ * </p>
+ */
+final class ResponseDecoder {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private ResponseDecoder() {}
+
+    /**
+     * Decodes a complete response body.
+     * @param body The UTF-8 response body.
+     * @return The decoded {@link Response}.
+     * @throws IOException If the body is not a valid response.
+     */
+    static @NotNull Response decode(byte[] body) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(body)) {
+            p.nextToken();
+            return decode(p);
+        }
+    }
+
+    /**
+     * Decodes a response object.
+     * @param p A parser positioned on the response's {@code START_OBJECT}.
+     * @return The decoded {@link Response}. The parser is left on the matching {@code END_OBJECT}.
+     * @throws IOException If the object is not a valid response.
+     */
+    static @NotNull Response decode(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+
+        String id = null;
+        long createdAt = 0;
+        Boolean background = null;
+        Response.OpenaiError error = null;
+        String model = null;
+        List<Response.Output> output = null;
+        Response.Usage usage = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if (t == JsonToken.VALUE_NULL) continue;
+            switch (name) {
+                case "id" -> id = p.getText();
+                case "created_at" -> createdAt = p.getValueAsLong();
+                case "background" -> background = p.getValueAsBoolean();
+                case "error" -> error = decodeError(p);
+                case "model" -> model = p.getText();
+                case "output" -> output = decodeOutputs(p);
+                case "usage" -> usage = decodeUsage(p);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (id == null || output == null || usage == null) {
+            throw new JsonParseException(p, "Response is missing one of 'id', 'output' or 'usage'");
+        }
+        return new Response(id, createdAt, background, error, model, output, usage);
+    }
+
+    private static @NotNull Response.OpenaiError decodeError(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        String code = "";
+        String message = "";
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            p.nextToken();
+            switch (name) {
+                case "code" -> code = p.getValueAsString("");
+                case "message" -> message = p.getValueAsString("");
+                default -> p.skipChildren();
+            }
+        }
+        return new Response.OpenaiError(code, message);
+    }
+
+    private static @NotNull List<Response.Output> decodeOutputs(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_ARRAY);
+        List<Response.Output> outputs = new ArrayList<>(1);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            outputs.add(decodeOutput(p));
+        }
+        return outputs;
+    }
+
+    private static @NotNull Response.Output decodeOutput(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        String id = "";
+        String status = "";
+        List<Response.Output.Content> content = new ArrayList<>(1);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            switch (name) {
+                case "id" -> id = p.getValueAsString("");
+                case "status" -> status = p.getValueAsString("");
+                case "content" -> {
+                    if (t != JsonToken.START_ARRAY) {
+                        p.skipChildren();
+                        break;
+                    }
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        content.add(decodeContent(p));
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+        return new Response.Output(id, status, content);
+    }
+
+    private static @NotNull Response.Output.Content decodeContent(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        Response.Data data = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if (name.equals("text") && t == JsonToken.VALUE_STRING) {
+                // Decode the embedded JSON straight from the parser's buffer, before it is reused
+                data = decodeData(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+            } else {
+                p.skipChildren();
+            }
+        }
+        return new Response.Output.Content(data);
+    }
+
+    /**
+     * Decodes the model's output text.
+     * @return The decoded {@link Response.Data}, or {@code null} if the text is not a valid translation.
+     */
+    static @Nullable Response.Data decodeData(char[] text, int offset, int length) {
+        try (JsonParser p = jsonFactory.createParser(text, offset, length)) {
+            p.nextToken();
+            return decodeData(p, text, offset);
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Unable to parse data: " + ex.getMessage() + "\n\nData: " + new String(text, offset, length));
+            return null;
+        }
+    }
+
+    private static @NotNull Response.Data decodeData(@NotNull JsonParser p, char[] text, int offset) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        Response.Data.Source src = null;
+        Response.Data.Target<?> tgt = null;
+        List<Response.Data.Target<?>> tgts = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if (t == JsonToken.VALUE_NULL) continue;
+            switch (name) {
+                case "src" -> src = decodeSource(p);
+                case "tgt" -> tgt = decodeTarget(p, text, offset);
+                case "tgts" -> {
+                    expect(p, JsonToken.START_ARRAY);
+                    tgts = new ArrayList<>();
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        tgts.add(decodeTarget(p, text, offset));
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (src == null) {
+            throw new JsonParseException(p, "Data is missing 'src'");
+        }
+        return new Response.Data(src, tgt, tgts);
+    }
+
+    private static @NotNull Response.Data.Source decodeSource(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        String tag = null;
+        String lang = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            p.nextToken();
+            switch (name) {
+                case "tag" -> tag = p.getValueAsString();
+                case "lang" -> lang = p.getValueAsString();
+                default -> p.skipChildren();
+            }
+        }
+        if (tag == null || lang == null) {
+            throw new JsonParseException(p, "Both 'tag' and 'lang' must be present on 'src'");
+        }
+        return new Response.Data.Source(tag, lang);
+    }
+
+    /**
+     * Decodes a target. Its shape is chosen from the kind of {@code e} and {@code s}: strings for a
+     * {@link Response.Data.MessageTarget}, objects with {@code embeds} for a {@link Response.Data.EmbedsTarget},
+     * and other objects for a {@link Response.Data.EmbedTarget}.
+     */
+    private static @NotNull Response.Data.Target<?> decodeTarget(@NotNull JsonParser p, char[] text, int offset) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        String tag = null;
+        String lang = null;
+        String lvl = null;
+        Object e = null;
+        Object s = null;
+        Object v = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            p.nextToken();
+            switch (name) {
+                case "tag" -> tag = p.getValueAsString();
+                case "lang" -> lang = p.getValueAsString();
+                case "lvl" -> lvl = p.getValueAsString();
+                case "e" -> e = sliceVariant(p, text, offset);
+                case "s" -> s = sliceVariant(p, text, offset);
+                // Only one variant was generated, so there is nothing to defer
+                case "v" -> v = decodeVariant(p);
+                default -> p.skipChildren();
+            }
+        }
+
+        if (tag == null || lang == null) {
+            throw new JsonParseException(p, "Both 'tag' and 'lang' must be present on 'tgt'");
+        }
+        if (v != null) {
+            SafetyLevel level = lvl != null ? SafetyLevel.fromIdOrNull(lvl) : null;
+            if (level == null) {
+                throw new JsonParseException(p, "'lvl' must be present on a single-variant 'tgt'. Found lvl=" + lvl);
+            }
+            if (v instanceof String vx) return new Response.Data.VariantTarget<>(tag, lang, level, vx);
+            if (v instanceof Response.Data.EmbedContent vx) return new Response.Data.VariantTarget<>(tag, lang, level, vx);
+            throw new JsonParseException(p, "'v' must be a string or an embed object");
+        }
+        if (e instanceof String ex && s instanceof String sx) {
+            return new Response.Data.MessageTarget(tag, lang, ex, sx);
+        }
+        if (e instanceof RawVariant ex && s instanceof RawVariant sx && ex.embeds() == sx.embeds()) {
+            if (ex.embeds()) {
+                return new Response.Data.EmbedsTarget(tag, lang, LazyContent.of(ex.json(), ResponseDecoder::decodeEmbeds), LazyContent.of(sx.json(), ResponseDecoder::decodeEmbeds));
+            }
+            return new Response.Data.EmbedTarget(tag, lang, LazyContent.of(ex.json(), ResponseDecoder::decodeEmbed), LazyContent.of(sx.json(), ResponseDecoder::decodeEmbed));
+        }
+        throw new JsonParseException(p, "'e' and 's' must both be present and of the same kind. Found e=" + kindOf(e) + ", s=" + kindOf(s));
+    }
+
+    /**
+     * Reads one variant of a target without decoding it: a {@code String} as is, or an object as a {@link RawVariant}
+     * holding its raw JSON. The object is still walked once, so malformed JSON is rejected here and not on first use.
+     * @param offset Where the parser's input starts in {@code text}; its locations are relative to it.
+     */
+    private static @Nullable Object sliceVariant(@NotNull JsonParser p, char[] text, int offset) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING) return p.getText();
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        int start = offset + (int) p.currentTokenLocation().getCharOffset();
+        boolean embeds = false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            if (p.currentName().equals("embeds")) embeds = true;
+            p.nextToken();
+            p.skipChildren();
+        }
+        int end = offset + (int) p.currentLocation().getCharOffset();
+        return new RawVariant(new String(text, start, end - start), embeds);
+    }
+
+    private static @NotNull Response.Data.EmbedContent decodeEmbed(@NotNull String json) {
+        return decodeVariant(json) instanceof Response.Data.EmbedContent content ? content : new Response.Data.EmbedContent(null, null, null, null, null, null);
+    }
+
+    private static @NotNull Response.Data.EmbedsContent decodeEmbeds(@NotNull String json) {
+        return decodeVariant(json) instanceof Response.Data.EmbedsContent content ? content : new Response.Data.EmbedsContent(null, null);
+    }
+
+    private static @Nullable Object decodeVariant(@NotNull String json) {
+        try (JsonParser p = jsonFactory.createParser(json)) {
+            p.nextToken();
+            return decodeVariant(p);
+        } catch (IOException ex) {
+            System.err.println("Unable to parse data: " + ex.getMessage() + "\n\nData: " + json);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes one variant: a {@code String}, an {@link Response.Data.EmbedContent} or an {@link Response.Data.EmbedsContent}.
+     */
+    private static @Nullable Object decodeVariant(@NotNull JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING) return p.getText();
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        String msg = null, title = null, author = null, desc = null, footer = null;
+        List<Response.Data.EmbedContent.Field> fields = null;
+        List<Response.Data.EmbedContent> embeds = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            if (v == JsonToken.VALUE_NULL) continue;
+            switch (name) {
+                case "msg" -> msg = p.getValueAsString();
+                case "title" -> title = p.getValueAsString();
+                case "author" -> author = p.getValueAsString();
+                case "desc" -> desc = p.getValueAsString();
+                case "footer" -> footer = p.getValueAsString();
+                case "fields" -> fields = decodeFields(p);
+                case "embeds" -> {
+                    expect(p, JsonToken.START_ARRAY);
+                    embeds = new ArrayList<>();
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (decodeVariant(p) instanceof Response.Data.EmbedContent embed) embeds.add(embed);
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (embeds != null) return new Response.Data.EmbedsContent(msg, embeds);
+        return new Response.Data.EmbedContent(msg, title, author, desc, footer, fields);
+    }
+
+    private static @Nullable List<Response.Data.EmbedContent.Field> decodeFields(@NotNull JsonParser p) throws IOException {
+        // A single object is accepted as a one-element list, like ACCEPT_SINGLE_VALUE_AS_ARRAY
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            return List.of(decodeField(p));
+        }
+        // The model sometimes writes "" for no fields
+        if (p.currentToken() == JsonToken.VALUE_STRING && p.getTextLength() == 0) {
+            return null;
+        }
+        expect(p, JsonToken.START_ARRAY);
+        List<Response.Data.EmbedContent.Field> fields = new ArrayList<>();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (p.currentToken() == JsonToken.START_OBJECT) {
+                fields.add(decodeField(p));
+            } else {
+                p.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    private static @NotNull Response.Data.EmbedContent.Field decodeField(@NotNull JsonParser p) throws IOException {
+        String name = null;
+        String value = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String key = p.currentName();
+            p.nextToken();
+            switch (key) {
+                case "name" -> name = p.getValueAsString();
+                case "value" -> value = p.getValueAsString();
+                default -> p.skipChildren();
+            }
+        }
+        return new Response.Data.EmbedContent.Field(name, value);
+    }
+
+    private static @NotNull Response.Usage decodeUsage(@NotNull JsonParser p) throws IOException {
+        expect(p, JsonToken.START_OBJECT);
+        int input = 0, output = 0, total = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            p.nextToken();
+            switch (name) {
+                case "input_tokens" -> input = p.getValueAsInt();
+                case "output_tokens" -> output = p.getValueAsInt();
+                case "total_tokens" -> total = p.getValueAsInt();
+                default -> p.skipChildren();
+            }
+        }
+        return new Response.Usage(input, output, total);
+    }
+
+    /**
+     * The raw JSON of an object variant, and whether it is the {@link Response.Data.EmbedsContent} shape.
+     */
+    private record RawVariant(@NotNull String json, boolean embeds) {}
+
+    private static void expect(@NotNull JsonParser p, @NotNull JsonToken token) throws JsonParseException {
+        if (p.currentToken() != token) {
+            throw new JsonParseException(p, "Expected " + token + " but found " + p.currentToken());
+        }
+    }
+
+    private static String kindOf(@Nullable Object variant) {
+        if (variant == null) return "null";
+        if (variant instanceof String) return "string";
+        return "object";
+    }
+}
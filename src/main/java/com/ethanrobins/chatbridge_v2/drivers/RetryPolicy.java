@@ -0,0 +1,120 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.exceptions.HttpErrorCode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed translation call is retried, and how long to wait before the next attempt.
+ * <p>
+ * Transient {@link HttpErrorCode}s ({@code 408}, {@code 409}, {@code 429} and {@code 5xx}) and I/O errors such as
+ * connection resets or per-attempt timeouts are retried with full-jitter exponential backoff. Malformed payloads
+ * and client errors are not.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [chatgpt]
+ * maxAttempts = 4
+ * retryBaseDelay = 250    ; milliseconds
+ * retryMaxDelay = 8000    ; milliseconds
+ * attemptTimeout = 60     ; seconds
+ * </pre>
+ */
+@Getter
+public class RetryPolicy {
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(408, 409, 429, 500, 502, 503, 504);
+
+    /**
+     * The default policy: 4 attempts, 250 ms base delay, 8 s maximum delay and a 60 s per-attempt timeout.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofMillis(250), Duration.ofSeconds(8), Duration.ofSeconds(60));
+
+    private final int maxAttempts;
+    private final @NotNull Duration baseDelay;
+    private final @NotNull Duration maxDelay;
+    private final @NotNull Duration attemptTimeout;
+
+    public RetryPolicy(int maxAttempts, @NotNull Duration baseDelay, @NotNull Duration maxDelay, @NotNull Duration attemptTimeout) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.attemptTimeout = attemptTimeout;
+    }
+
+    /**
+     * Builds a {@link RetryPolicy} from the {@code [chatgpt]} section of the given secret configuration, falling back to {@link #DEFAULT}.
+     * @param secret The secret configuration.
+     * @return A new {@link RetryPolicy}.
+     */
+    public static @NotNull RetryPolicy fromSecret(@NotNull Ini secret) {
+        try {
+            return new RetryPolicy(
+                    parse(secret.get("chatgpt", "maxAttempts"), DEFAULT.maxAttempts),
+                    Duration.ofMillis(parse(secret.get("chatgpt", "retryBaseDelay"), DEFAULT.baseDelay.toMillis())),
+                    Duration.ofMillis(parse(secret.get("chatgpt", "retryMaxDelay"), DEFAULT.maxDelay.toMillis())),
+                    Duration.ofSeconds(parse(secret.get("chatgpt", "attemptTimeout"), DEFAULT.attemptTimeout.toSeconds()))
+            );
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid retry configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+            return DEFAULT;
+        }
+    }
+
+    /**
+     * Determines whether a failure is worth another attempt.
+     * @param ex The failure, possibly wrapped in a {@link CompletionException}.
+     * @return {@code true} if the call should be retried.
+     */
+    public boolean isRetryable(@Nullable Throwable ex) {
+        Throwable cause = unwrap(ex);
+        if (cause instanceof HttpErrorCode code) {
+            return RETRYABLE_STATUS_CODES.contains(code.getStatusCode());
+        }
+        if (cause instanceof JsonProcessingException) {
+            return false;
+        }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Computes a full-jitter backoff delay.
+     * @param attempt The attempt that just failed, starting at {@code 1}.
+     * @return A random delay between zero and {@code min(maxDelay, baseDelay * 2^(attempt - 1))}.
+     */
+    public @NotNull Duration backoff(int attempt) {
+        long cap = Math.min(this.maxDelay.toMillis(), this.baseDelay.toMillis() << Math.min(20, Math.max(0, attempt - 1)));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    /**
+     * Unwraps {@link CompletionException}s and {@link UncheckedIOException}s to the underlying failure.
+     * @param ex The failure.
+     * @return The underlying failure.
+     */
+    static @Nullable Throwable unwrap(@Nullable Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static int parse(@Nullable String value, int def) {
+        return (value == null || value.isBlank()) ? def : Integer.parseInt(value.trim());
+    }
+
+    private static long parse(@Nullable String value, long def) {
+        return (value == null || value.isBlank()) ? def : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,178 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * <b>Versioned migrations of the ChatBridge schema.</b>
+ * <p>
+ * Each {@link Migration} brings the schema from the previous version to its own. The current version is kept in
+ * {@code chatbridge_schema_version}, and {@link #migrate()} applies every newer migration in order at startup, under a
+ * MySQL named lock so that only one instance migrates at a time. Migrations are never edited once released; a change
+ * to the schema is a new migration at the end of {@link #MIGRATIONS}.
+ * </p>
+ * <p>
+ * MySQL commits DDL implicitly, so a migration that fails halfway is not rolled back. Its version is not recorded,
+ * and the schema has to be repaired by hand before it is retried.
+ * </p>
+ *
+ * <h2>Schema after the latest migration:</h2>
+ * <pre>
+ * chatbridge_userstore  (id BIGINT UNSIGNED PRIMARY KEY, locale_code TINYINT UNSIGNED, safety_code TINYINT UNSIGNED)
+ * chatbridge_guildstore (id BIGINT UNSIGNED PRIMARY KEY, status BOOLEAN, safety_code TINYINT UNSIGNED)
+ * chatbridge_usage      (day, guild_id, user_id, model, prompt, requests, input_tokens, output_tokens), see {@link MySQL#addUsage(List)}
+ * </pre>
+ * <p>
+ * Every settings lookup is a point lookup on the clustered primary key, and {@code getGuildUsage} reads a prefix of the
+ * usage table's primary key, so no secondary indexes are needed. See {@link SettingsCodes} for the meaning of the codes.
+ * </p>
+ */
+public final class SchemaMigrations {
+    private static final String LOCK_NAME = "chatbridge_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * All migrations, in order. Append only.
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Baseline settings and usage tables", List.of(
+                    "CREATE TABLE IF NOT EXISTS chatbridge_userstore (" +
+                            "id VARCHAR(32) NOT NULL PRIMARY KEY, " +
+                            "locale VARCHAR(16) NULL, " +
+                            "safety VARCHAR(16) NOT NULL DEFAULT 'safe')",
+                    "CREATE TABLE IF NOT EXISTS chatbridge_guildstore (" +
+                            "id VARCHAR(32) NOT NULL PRIMARY KEY, " +
+                            "status BOOLEAN NOT NULL DEFAULT FALSE, " +
+                            "safety VARCHAR(16) NOT NULL DEFAULT 'safe')",
+                    "CREATE TABLE IF NOT EXISTS chatbridge_usage (" +
+                            "day DATE NOT NULL, " +
+                            "guild_id VARCHAR(32) NOT NULL DEFAULT '', " +
+                            "user_id VARCHAR(32) NOT NULL DEFAULT '', " +
+                            "model VARCHAR(128) NOT NULL DEFAULT '', " +
+                            "prompt VARCHAR(32) NOT NULL DEFAULT '', " +
+                            "requests BIGINT NOT NULL DEFAULT 0, " +
+                            "input_tokens BIGINT NOT NULL DEFAULT 0, " +
+                            "output_tokens BIGINT NOT NULL DEFAULT 0, " +
+                            "PRIMARY KEY (day, guild_id, user_id, model, prompt))"
+            )),
+            new Migration(2, "Store locale and safety level as compact codes", List.of(
+                    "ALTER TABLE chatbridge_userstore " +
+                            "ADD COLUMN locale_code TINYINT UNSIGNED NOT NULL DEFAULT 0, " +
+                            "ADD COLUMN safety_code TINYINT UNSIGNED NOT NULL DEFAULT 0",
+                    "UPDATE chatbridge_userstore SET " +
+                            "locale_code = " + SettingsCodes.localeCodeSql("locale") + ", " +
+                            "safety_code = " + SettingsCodes.safetyCodeSql("safety"),
+                    "ALTER TABLE chatbridge_userstore DROP COLUMN locale, DROP COLUMN safety",
+                    "ALTER TABLE chatbridge_guildstore ADD COLUMN safety_code TINYINT UNSIGNED NOT NULL DEFAULT 0",
+                    "UPDATE chatbridge_guildstore SET safety_code = " + SettingsCodes.safetyCodeSql("safety"),
+                    "ALTER TABLE chatbridge_guildstore DROP COLUMN safety"
+            )),
+            new Migration(3, "Use BIGINT snowflake primary keys", List.of(
+                    // Tables created before the baseline may allow a NULL status, which NOT NULL would reject
+                    "UPDATE chatbridge_guildstore SET status = FALSE WHERE status IS NULL",
+                    "ALTER TABLE chatbridge_userstore MODIFY id BIGINT UNSIGNED NOT NULL",
+                    "ALTER TABLE chatbridge_guildstore MODIFY id BIGINT UNSIGNED NOT NULL, MODIFY status BOOLEAN NOT NULL DEFAULT FALSE"
+            ))
+    );
+
+    private SchemaMigrations() {}
+
+    /**
+     * @return The version of the schema the code expects.
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.getLast().version();
+    }
+
+    /**
+     * Applies every migration newer than the database's schema version.
+     * @return The number of migrations applied.
+     * @throws SQLException If the database could not be reached, the lock was not acquired in time, or a migration failed.
+     */
+    public static int migrate() throws SQLException {
+        try (Connection conn = ConnectionPool.get().borrow()) {
+            lock(conn);
+            try {
+                createVersionTable(conn);
+                int current = getVersion(conn);
+                int applied = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version() <= current) continue;
+
+                    System.out.println("\u001B[36mschema\u001B[0m applying migration " + migration.version() + ": " + migration.description());
+                    try (Statement stmt = conn.createStatement()) {
+                        for (String sql : migration.statements()) {
+                            stmt.execute(sql);
+                        }
+                    } catch (SQLException ex) {
+                        throw new SQLException("Schema migration " + migration.version() + " (" + migration.description() + ") failed: " + ex.getMessage(), ex);
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO chatbridge_schema_version (version, description) VALUES (?, ?)")) {
+                        stmt.setInt(1, migration.version());
+                        stmt.setString(2, migration.description());
+                        stmt.executeUpdate();
+                    }
+                    applied++;
+                }
+
+                if (getVersion(conn) > getLatestVersion()) {
+                    System.err.println("The database schema is newer than this version of ChatBridge expects (" + getLatestVersion() + ").");
+                }
+                return applied;
+            } finally {
+                unlock(conn);
+            }
+        }
+    }
+
+    private static void createVersionTable(@NotNull Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS chatbridge_schema_version (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private static int getVersion(@NotNull Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM chatbridge_schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void lock(@NotNull Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another instance to finish migrating the schema");
+                }
+            }
+        }
+    }
+
+    private static void unlock(@NotNull Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        } catch (SQLException ex) {
+            System.err.println("Unable to release the schema migration lock: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * One step of the schema.
+     * @param version The schema version after this migration.
+     * @param description What the migration changes.
+     * @param statements The SQL statements, executed in order.
+     */
+    private record Migration(int version, @NotNull String description, @NotNull List<String> statements) {}
+}
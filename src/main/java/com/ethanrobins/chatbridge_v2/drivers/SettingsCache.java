@@ -0,0 +1,367 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>Read-through cache of user and guild settings.</b>
+ * <p>
+ * A user's locale and safety level, and a guild's safety level, change perhaps once a month but were read from the
+ * database on every translation and every DM. This cache sits in front of a {@link SettingsStore} so the interaction
+ * hot path needs no database round trip once a user or guild has been seen. Settings are written through the cache
+ * as well, so it never serves a value older than its own writes.
+ * </p>
+ *
+ * <h2>Behavior:</h2>
+ * <ul>
+ *     <li>Entries are keyed by snowflake id and kept in least-recently-used order up to {@code maxEntries} per kind.</li>
+ *     <li>Users and guilds that are not in the database are cached too, for the shorter {@code negativeTtl}.</li>
+ *     <li>{@link #updateLocale(String, DiscordLocale)}, {@link #setSafetyLevel(boolean, String, SafetyLevel)},
+ *     {@link #setGuildStatus(String, boolean)} and {@link #reconcileGuilds(Set)} write through to the store.</li>
+ *     <li>Store errors are never cached. {@link #getLocale(String)} throws them, so a failure is not mistaken for an
+ *     unregistered user; other reads get the same defaults {@link MySQL} falls back to.</li>
+ * </ul>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [settings]
+ * maxEntries = 100000
+ * ttl = 3600          ; seconds
+ * negativeTtl = 300   ; seconds
+ * </pre>
+ */
+public class SettingsCache {
+    private static final int DEFAULT_MAX_ENTRIES = 100_000;
+    private static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    private static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes(5);
+
+    private static SettingsCache instance = null;
+
+    /**
+     * The {@link SettingsStore} behind this cache.
+     */
+    @Getter
+    private final @NotNull SettingsStore store;
+
+    /**
+     * The maximum number of users, and separately of guilds, kept in the cache.
+     */
+    @Getter
+    private final int maxEntries;
+    /**
+     * How long the settings of a known user or guild are kept.
+     */
+    @Getter
+    private final @NotNull Duration ttl;
+    /**
+     * How long an unknown user or guild is remembered as unknown.
+     */
+    @Getter
+    private final @NotNull Duration negativeTtl;
+
+    private final Map<String, Entry<UserSettings>> users;
+    private final Map<String, Entry<GuildSettings>> guilds;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new, empty {@link SettingsCache}.
+     * @param store The {@link SettingsStore} behind the cache.
+     * @param maxEntries The maximum number of users, and separately of guilds, to keep.
+     * @param ttl How long the settings of a known user or guild are kept.
+     * @param negativeTtl How long an unknown user or guild is remembered as unknown.
+     */
+    public SettingsCache(@NotNull SettingsStore store, int maxEntries, @NotNull Duration ttl, @NotNull Duration negativeTtl) {
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.users = lruMap(maxEntries);
+        this.guilds = lruMap(maxEntries);
+    }
+
+    /**
+     * Builds a {@link SettingsCache} from the optional {@code [settings]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @param store The {@link SettingsStore} behind the cache.
+     * @return A new {@link SettingsCache}.
+     */
+    public static @NotNull SettingsCache fromSecret(@NotNull Ini secret, @NotNull SettingsStore store) {
+        try {
+            String maxEntriesStr = secret.get("settings", "maxEntries");
+            String ttlStr = secret.get("settings", "ttl");
+            String negativeTtlStr = secret.get("settings", "negativeTtl");
+            return new SettingsCache(store,
+                    maxEntriesStr != null && !maxEntriesStr.isBlank() ? Integer.parseInt(maxEntriesStr.trim()) : DEFAULT_MAX_ENTRIES,
+                    ttlStr != null && !ttlStr.isBlank() ? Duration.ofSeconds(Long.parseLong(ttlStr.trim())) : DEFAULT_TTL,
+                    negativeTtlStr != null && !negativeTtlStr.isBlank() ? Duration.ofSeconds(Long.parseLong(negativeTtlStr.trim())) : DEFAULT_NEGATIVE_TTL
+            );
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [settings] configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+            return new SettingsCache(store, DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+        }
+    }
+
+    /**
+     * Retrieves the shared {@link SettingsCache}, creating it and its {@link SettingsStore} from {@link ChatBridge#getSecret()}
+     * if it has not been initialized yet.
+     * @return The shared {@link SettingsCache}.
+     */
+    public static synchronized @NotNull SettingsCache get() {
+        if (instance == null) {
+            instance = ChatBridge.getSecret() != null
+                    ? fromSecret(ChatBridge.getSecret(), SettingsStore.fromSecret(ChatBridge.getSecret()))
+                    : new SettingsCache(ChatBridge.isDev() ? new InMemorySettingsStore() : new JdbcSettingsStore(), DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link SettingsCache}.
+     * @param cache The new shared cache, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable SettingsCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * @param userId The user id.
+     * @return The user's locale, or {@code null} if the user is not registered or has no valid locale.
+     * @throws SQLException If the user's settings could not be loaded.
+     */
+    public @Nullable DiscordLocale getLocale(@NotNull String userId) throws SQLException {
+        UserSettings settings = loadOrThrow(this.users, userId, this.store::getUser);
+        return settings != null ? settings.locale() : null;
+    }
+
+    /**
+     * @param isUser {@code true} for a user's safety level, {@code false} for a guild's.
+     * @param id The user or guild id.
+     * @return The safety level, or {@link SafetyLevel#SAFE} if the user or guild is unknown.
+     */
+    public @NotNull SafetyLevel getSafetyLevel(boolean isUser, @NotNull String id) {
+        if (isUser) {
+            UserSettings settings = getUser(id);
+            return settings != null ? settings.safetyLevel() : SafetyLevel.SAFE;
+        }
+
+        GuildSettings settings = load(this.guilds, id, this.store::getGuild);
+        return settings != null ? settings.safetyLevel() : SafetyLevel.SAFE;
+    }
+
+    /**
+     * Stores a user's locale.
+     * <p>
+     * The stored locale is read through the cache, so an unchanged locale needs no database round trip. A changed
+     * locale of a known user is updated in the cache at once and written later by {@link LocaleWriteBehind}. Only a new
+     * user is written synchronously, so the caller learns about the first interaction.
+     * </p>
+     * @param userId The user id.
+     * @param locale The user's locale.
+     * @return The {@link MySQL.Status} of the write. {@link MySQL.Status#isInserted()} is {@code true} only for a new user.
+     */
+    public @NotNull MySQL.Status updateLocale(@NotNull String userId, @NotNull DiscordLocale locale) {
+        UserSettings cached = getUser(userId);
+        if (cached != null) {
+            if (cached.locale() == locale) {
+                return new MySQL.Status().setStatus(MySQL.State.UNCHANGED);
+            }
+            onLocaleUpdated(userId, locale);
+            LocaleWriteBehind.get().enqueue(userId, locale);
+            return new MySQL.Status().setStatus(MySQL.State.UPDATED);
+        }
+
+        MySQL.Status status = this.store.updateLocale(userId, locale);
+        if (status.isInserted()) {
+            put(this.users, userId, new UserSettings(locale, SafetyLevel.SAFE), this.ttl);
+        } else if (!status.isFailed()) {
+            onLocaleUpdated(userId, locale);
+        }
+        return status;
+    }
+
+    /**
+     * Updates the safety level of a registered user or guild.
+     * @param isUser {@code true} for a user, {@code false} for a guild.
+     * @param id The user or guild id.
+     * @param safetyLevel The new safety level.
+     * @return The {@link MySQL.Status} of the write, see {@link SettingsStore#setSafetyLevel(boolean, String, SafetyLevel)}.
+     */
+    public @NotNull MySQL.Status setSafetyLevel(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel) {
+        MySQL.Status status = this.store.setSafetyLevel(isUser, id, safetyLevel);
+        if (!status.isFailed()) onSafetyLevelUpdated(isUser, id, safetyLevel);
+        return status;
+    }
+
+    /**
+     * Inserts or updates a guild's status.
+     * @param guildId The guild id.
+     * @param guildStatus Whether the bot is active in the guild.
+     * @return The {@link MySQL.Status} of the write, see {@link SettingsStore#setGuildStatus(String, boolean)}.
+     */
+    public @NotNull MySQL.Status setGuildStatus(@NotNull String guildId, boolean guildStatus) {
+        MySQL.Status status = this.store.setGuildStatus(guildId, guildStatus);
+        if (!status.isFailed()) invalidateGuild(guildId);
+        return status;
+    }
+
+    /**
+     * Marks exactly the given guilds as active, writing only the guilds whose status changes.
+     * @param readyGuilds The ids of the guilds the bot is currently in.
+     * @return The status written for each changed guild.
+     * @throws SQLException If the store could not be read or written.
+     */
+    public @NotNull Map<String, Boolean> reconcileGuilds(@NotNull Set<String> readyGuilds) throws SQLException {
+        Map<String, Boolean> changes = this.store.reconcileGuilds(readyGuilds);
+        for (String guildId : changes.keySet()) {
+            invalidateGuild(guildId);
+        }
+        return changes;
+    }
+
+    /**
+     * Updates the cache after a user's locale was written.
+     */
+    private void onLocaleUpdated(@NotNull String userId, @NotNull DiscordLocale locale) {
+        UserSettings cached = peek(this.users, userId);
+        if (cached != null) {
+            put(this.users, userId, cached.withLocale(locale), this.ttl);
+        } else {
+            // New or unknown users get their other columns from the database on the next read
+            invalidateUser(userId);
+        }
+    }
+
+    /**
+     * Updates the cache after a user's or guild's safety level was written.
+     */
+    private void onSafetyLevelUpdated(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel) {
+        if (isUser) {
+            UserSettings cached = peek(this.users, id);
+            if (cached != null) {
+                put(this.users, id, cached.withSafetyLevel(safetyLevel), this.ttl);
+            } else {
+                invalidateUser(id);
+            }
+        } else {
+            GuildSettings cached = peek(this.guilds, id);
+            if (cached != null) {
+                put(this.guilds, id, cached.withSafetyLevel(safetyLevel), this.ttl);
+            } else {
+                invalidateGuild(id);
+            }
+        }
+    }
+
+    /**
+     * Forgets a user, so the next read goes to the database.
+     * @param userId The user id.
+     */
+    public void invalidateUser(@NotNull String userId) {
+        synchronized (this.users) {
+            this.users.remove(userId);
+        }
+    }
+
+    /**
+     * Forgets a guild, so the next read goes to the database.
+     * @param guildId The guild id.
+     */
+    public void invalidateGuild(@NotNull String guildId) {
+        synchronized (this.guilds) {
+            this.guilds.remove(guildId);
+        }
+    }
+
+    /**
+     * @return The number of reads served without the database.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of reads that went to the database.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    private @Nullable UserSettings getUser(@NotNull String userId) {
+        return load(this.users, userId, this.store::getUser);
+    }
+
+    /**
+     * Reads through the cache like {@link #loadOrThrow(Map, String, Loader)}, but a failed load is logged and
+     * returns {@code null}, the same as an unknown id.
+     */
+    private <T> @Nullable T load(@NotNull Map<String, Entry<T>> map, @NotNull String id, @NotNull Loader<T> loader) {
+        try {
+            return loadOrThrow(map, id, loader);
+        } catch (SQLException ex) {
+            System.err.println("Unable to load settings for " + id + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads through the cache. A {@code null} value from the loader means the id is unknown and is cached as such;
+     * a failed load is not cached and is thrown.
+     */
+    private <T> @Nullable T loadOrThrow(@NotNull Map<String, Entry<T>> map, @NotNull String id, @NotNull Loader<T> loader) throws SQLException {
+        long now = System.nanoTime();
+        synchronized (map) {
+            Entry<T> entry = map.get(id);
+            if (entry != null && entry.expiresAt - now > 0) {
+                this.hits.incrementAndGet();
+                return entry.value;
+            }
+        }
+
+        this.misses.incrementAndGet();
+        T value = loader.load(id);
+        put(map, id, value, value != null ? this.ttl : this.negativeTtl);
+        return value;
+    }
+
+    private static <T> @Nullable T peek(@NotNull Map<String, Entry<T>> map, @NotNull String id) {
+        synchronized (map) {
+            Entry<T> entry = map.get(id);
+            return entry != null && entry.expiresAt - System.nanoTime() > 0 ? entry.value : null;
+        }
+    }
+
+    private static <T> void put(@NotNull Map<String, Entry<T>> map, @NotNull String id, @Nullable T value, @NotNull Duration ttl) {
+        synchronized (map) {
+            map.put(id, new Entry<>(value, System.nanoTime() + ttl.toNanos()));
+        }
+    }
+
+    private static <T> @NotNull Map<String, Entry<T>> lruMap(int maxEntries) {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        @Nullable T load(@NotNull String id) throws SQLException;
+    }
+
+    private record Entry<T>(@Nullable T value, long expiresAt) {}
+}
@@ -0,0 +1,74 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The compact codes stored in {@code chatbridge_userstore} and {@code chatbridge_guildstore} in place of locale and
+ * safety level strings.
+ * <p>
+ * A code is the position in the lists below, so these lists are <b>append-only</b>: reordering or removing an entry
+ * changes the meaning of rows that are already stored. They are deliberately independent of the declaration order of
+ * {@link DiscordLocale} and {@link SafetyLevel}.
+ * </p>
+ */
+final class SettingsCodes {
+    /**
+     * Locale code {@code 0} means no valid locale; code {@code n} is {@code LOCALES.get(n - 1)}.
+     */
+    private static final List<String> LOCALES = List.of(
+            "id", "da", "de", "en-GB", "en-US", "es-ES", "es-419", "fr", "hr", "it", "lt", "hu", "nl", "no", "pl", "pt-BR",
+            "ro", "fi", "sv-SE", "vi", "tr", "cs", "el", "bg", "ru", "uk", "hi", "th", "zh-CN", "ja", "zh-TW", "ko"
+    );
+    /**
+     * Safety code {@code n} is {@code SAFETY_LEVELS.get(n)}; unknown codes read as {@link SafetyLevel#SAFE}.
+     */
+    private static final List<String> SAFETY_LEVELS = List.of("safe", "explicit");
+
+    private SettingsCodes() {}
+
+    static int localeCode(@Nullable DiscordLocale locale) {
+        return locale != null ? LOCALES.indexOf(locale.getLocale()) + 1 : 0;
+    }
+
+    static @Nullable DiscordLocale locale(int code) {
+        if (code <= 0 || code > LOCALES.size()) return null;
+        DiscordLocale locale = DiscordLocale.from(LOCALES.get(code - 1));
+        return locale != DiscordLocale.UNKNOWN ? locale : null;
+    }
+
+    static int safetyCode(@NotNull SafetyLevel safetyLevel) {
+        return Math.max(0, SAFETY_LEVELS.indexOf(safetyLevel.getId()));
+    }
+
+    static @NotNull SafetyLevel safetyLevel(int code) {
+        return code > 0 && code < SAFETY_LEVELS.size() ? SafetyLevel.fromId(SAFETY_LEVELS.get(code)) : SafetyLevel.SAFE;
+    }
+
+    /**
+     * @param column The column holding a locale string.
+     * @return A SQL expression mapping the column to its locale code, for migrating existing rows.
+     */
+    static @NotNull String localeCodeSql(@NotNull String column) {
+        return caseSql(column, LOCALES, 1);
+    }
+
+    /**
+     * @param column The column holding a safety level id.
+     * @return A SQL expression mapping the column to its safety code, for migrating existing rows.
+     */
+    static @NotNull String safetyCodeSql(@NotNull String column) {
+        return caseSql(column, SAFETY_LEVELS, 0);
+    }
+
+    private static @NotNull String caseSql(@NotNull String column, @NotNull List<String> values, int offset) {
+        StringBuilder sql = new StringBuilder("CASE ").append(column);
+        for (int i = 0; i < values.size(); i++) {
+            sql.append(" WHEN '").append(values.get(i)).append("' THEN ").append(i + offset);
+        }
+        return sql.append(" ELSE 0 END").toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <b>Where user and guild settings are stored.</b>
+ * <p>
+ * {@link SettingsCache} reads and writes settings through a {@link SettingsStore}; code outside the drivers package
+ * should use the cache rather than a store directly. Reads throw {@link SQLException} so the cache can tell an unknown
+ * id from a failure; writes report their outcome through a {@link MySQL.Status}, like {@link MySQL} does.
+ * </p>
+ *
+ * <h2>Implementations:</h2>
+ * <ul>
+ *     <li>{@link JdbcSettingsStore}: the MySQL tables, through the shared {@link ConnectionPool} and the read replicas of
+ *     the {@link ReplicaRouter}.</li>
+ *     <li>{@link InMemorySettingsStore}: concurrent maps, for dev mode and load tests without a database.</li>
+ * </ul>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [settings]
+ * store = mysql        ; mysql or memory. Always memory in dev mode.
+ * memoryLatency = 0    ; milliseconds added to every call of the memory store
+ * </pre>
+ */
+public interface SettingsStore {
+    /**
+     * @param userId The user id.
+     * @return The user's settings, or {@code null} if the user is not registered.
+     * @throws SQLException If the store could not be read.
+     */
+    @Nullable UserSettings getUser(@NotNull String userId) throws SQLException;
+
+    /**
+     * @param guildId The guild id.
+     * @return The guild's settings, or {@code null} if the guild is not registered.
+     * @throws SQLException If the store could not be read.
+     */
+    @Nullable GuildSettings getGuild(@NotNull String guildId) throws SQLException;
+
+    /**
+     * Inserts or updates a user's locale. A new user starts out {@link SafetyLevel#SAFE}.
+     * @param userId The user id.
+     * @param locale The user's locale.
+     * @return The {@link MySQL.Status}: {@link MySQL.State#INSERTED}, {@link MySQL.State#UPDATED} or {@link MySQL.State#UNCHANGED}.
+     */
+    @NotNull MySQL.Status updateLocale(@NotNull String userId, @NotNull DiscordLocale locale);
+
+    /**
+     * Inserts or updates the locales of several users at once.
+     * @param locales The locale of each user id.
+     * @return The {@link MySQL.Status} of the write.
+     */
+    @NotNull MySQL.Status updateLocales(@NotNull Map<String, DiscordLocale> locales);
+
+    /**
+     * Updates the safety level of a registered user or guild.
+     * @param isUser {@code true} for a user, {@code false} for a guild.
+     * @param id The user or guild id.
+     * @param safetyLevel The new safety level.
+     * @return The {@link MySQL.Status}: {@link MySQL.State#UPDATED}, {@link MySQL.State#UNCHANGED}, or
+     *         {@link MySQL.State#FAILED} if the user or guild is not registered.
+     */
+    @NotNull MySQL.Status setSafetyLevel(boolean isUser, @NotNull String id, @NotNull SafetyLevel safetyLevel);
+
+    /**
+     * Inserts or updates a guild's status.
+     * @param guildId The guild id.
+     * @param status Whether the bot is active in the guild.
+     * @return The {@link MySQL.Status}: {@link MySQL.State#INSERTED}, {@link MySQL.State#UPDATED} or {@link MySQL.State#UNCHANGED}.
+     */
+    @NotNull MySQL.Status setGuildStatus(@NotNull String guildId, boolean status);
+
+    /**
+     * @return Whether the bot is active in each registered guild, keyed by guild id.
+     * @throws SQLException If the store could not be read.
+     */
+    @NotNull Map<String, Boolean> getGuildStatuses() throws SQLException;
+
+    /**
+     * Inserts or updates the status of several guilds at once, all or nothing.
+     * @param guildStatuses Whether the bot is active in each guild, keyed by guild id.
+     * @return The {@link MySQL.Status} of the write.
+     */
+    @NotNull MySQL.Status setGuildStatuses(@NotNull Map<String, Boolean> guildStatuses);
+
+    /**
+     * Marks exactly the given guilds as active: registered guilds that are not ready become inactive, and ready
+     * guilds that are not registered are added. Only guilds whose status changes are written.
+     * @param readyGuilds The ids of the guilds the bot is currently in.
+     * @return The status written for each changed guild.
+     * @throws SQLException If the store could not be read or written.
+     */
+    default @NotNull Map<String, Boolean> reconcileGuilds(@NotNull Set<String> readyGuilds) throws SQLException {
+        Map<String, Boolean> changes = diffGuilds(getGuildStatuses(), readyGuilds);
+        MySQL.Status status = setGuildStatuses(changes);
+        if (status.isFailed()) throw new SQLException("Unable to reconcile " + changes.size() + " guild statuses", status.getException());
+        return changes;
+    }
+
+    /**
+     * Computes the guild statuses that {@link #reconcileGuilds(Set)} has to write.
+     * @param registeredGuilds The stored status of each registered guild.
+     * @param readyGuilds The ids of the guilds the bot is currently in.
+     * @return The new status of each guild whose status changes.
+     */
+    static @NotNull Map<String, Boolean> diffGuilds(@NotNull Map<String, Boolean> registeredGuilds, @NotNull Set<String> readyGuilds) {
+        Map<String, Boolean> changes = new HashMap<>();
+        for (Map.Entry<String, Boolean> registered : registeredGuilds.entrySet()) {
+            boolean isReady = readyGuilds.contains(registered.getKey());
+            if (registered.getValue() != isReady) {
+                changes.put(registered.getKey(), isReady);
+            }
+        }
+        for (String guildId : readyGuilds) {
+            if (!registeredGuilds.containsKey(guildId)) {
+                changes.put(guildId, true);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Builds the {@link SettingsStore} selected by the {@code [settings] store} option of the given secret configuration.
+     * In dev mode the database is disabled, so the in-memory store is always used.
+     * @param secret The secret configuration.
+     * @return A new {@link SettingsStore}.
+     */
+    static @NotNull SettingsStore fromSecret(@NotNull Ini secret) {
+        String store = secret.get("settings", "store");
+        boolean memory = store != null && store.trim().equalsIgnoreCase("memory");
+        if (!memory && store != null && !store.isBlank() && !store.trim().equalsIgnoreCase("mysql")) {
+            System.err.println("Unknown [settings] store \"" + store.trim() + "\" in secret.ini. Using mysql.");
+        }
+
+        if (memory || ChatBridge.isDev()) {
+            return InMemorySettingsStore.fromSecret(secret);
+        }
+        return new JdbcSettingsStore();
+    }
+}
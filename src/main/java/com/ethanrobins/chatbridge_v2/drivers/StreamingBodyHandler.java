@@ -0,0 +1,137 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking {@link HttpResponse.BodyHandler} for a Responses API call made with {@code "stream": true}.
+ * <p>
+ * The server-sent events are parsed line by line as they arrive. Every {@code response.output_text.delta} is
+ * appended to the output text generated so far, which is handed to the listener. The body completes with the
+ * {@link Response} carried by the final {@code response.completed} event, so callers get exactly what a
+ * non-streaming call would have returned.
+ * </p>
+ * <p>
+ * A stream that fails or ends before {@code response.completed} completes exceptionally with an {@link IOException},
+ * which the {@link RetryPolicy} treats as transient.
+ * </p>
+ *
+ * @see ResponseBodyHandler
+ */
+final class StreamingBodyHandler implements HttpResponse.BodyHandler<Response> {
+    private static final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final @Nullable AdmissionController admission;
+    private final @NotNull Consumer<String> onText;
+
+    /**
+     * @param admission The {@link AdmissionController} to update from the response headers, if any.
+     * @param onText Receives the complete output text generated so far after every delta. Called on the client's executor.
+     */
+    StreamingBodyHandler(@Nullable AdmissionController admission, @NotNull Consumer<String> onText) {
+        this.admission = admission;
+        this.onText = onText;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<Response> apply(@NotNull HttpResponse.ResponseInfo responseInfo) {
+        final int statusCode = responseInfo.statusCode();
+        if (this.admission != null) {
+            this.admission.update(statusCode, responseInfo.headers());
+        }
+        if (statusCode != 200) {
+            return ResponseBodyHandler.failure(statusCode);
+        }
+
+        return HttpResponse.BodySubscribers.fromLineSubscriber(new EventSubscriber(this.onText), EventSubscriber::finish, StandardCharsets.UTF_8, null);
+    }
+
+    /**
+     * Assembles server-sent events from lines and dispatches them once a blank line ends each event.
+     */
+    private static final class EventSubscriber implements Flow.Subscriber<String> {
+        private final @NotNull Consumer<String> onText;
+        private final StringBuilder data = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private @Nullable Response response = null;
+        private @Nullable String error = null;
+
+        private EventSubscriber(@NotNull Consumer<String> onText) {
+            this.onText = onText;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("data:")) {
+                if (!this.data.isEmpty()) this.data.append('\n');
+                this.data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+            // "event:", "id:", "retry:" and comments are not needed; the type is repeated in the data
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Surfaced by the body future
+        }
+
+        @Override
+        public void onComplete() {
+            dispatch();
+        }
+
+        private void dispatch() {
+            if (this.data.isEmpty()) return;
+            String payload = this.data.toString();
+            this.data.setLength(0);
+            if (payload.equals("[DONE]")) return;
+
+            try {
+                JsonNode event = objectMapper.readTree(payload);
+                switch (event.path("type").asText()) {
+                    case "response.output_text.delta" -> {
+                        this.text.append(event.path("delta").asText());
+                        this.onText.accept(this.text.toString());
+                    }
+                    case "response.completed" -> {
+                        try (JsonParser p = event.path("response").traverse()) {
+                            p.nextToken();
+                            this.response = ResponseDecoder.decode(p);
+                        }
+                    }
+                    case "response.failed", "response.incomplete", "error" -> this.error = payload;
+                    default -> {}
+                }
+            } catch (IOException ex) {
+                System.err.println("Unable to parse stream event: " + ex.getMessage() + "\n\nData: " + payload);
+            } catch (RuntimeException ex) {
+                // A misbehaving listener must not break the stream
+                ex.printStackTrace();
+            }
+        }
+
+        private Response finish() {
+            if (this.response != null) return this.response;
+            throw new UncheckedIOException(new IOException(this.error != null
+                    ? "Translation stream failed: " + this.error
+                    : "Translation stream ended before the response was completed"));
+        }
+    }
+}
@@ -10,7 +10,15 @@ import lombok.Getter;
 @Getter
 public enum TranslateType {
     MESSAGE_V1("CB_MESSAGE v1"),
-    EMBED_V1("CB_EMBED v1");
+    EMBED_V1("CB_EMBED v1"),
+    /**
+     * Like {@link #MESSAGE_V1}, but only the requested {@link SafetyLevel} is generated.
+     */
+    MESSAGE_SINGLE_V1("CB_MESSAGE_SINGLE v1"),
+    /**
+     * Like {@link #EMBED_V1}, but only the requested {@link SafetyLevel} is generated.
+     */
+    EMBED_SINGLE_V1("CB_EMBED_SINGLE v1");
 
     private final String systemPrompt;
 
@@ -0,0 +1,339 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * <b>Bounded in-memory cache of parsed translations.</b>
+ * <p>
+ * Sits in front of {@link Request#queue()} and stores the parsed {@link Response.Data} (both the explicit and the
+ * safe variant) under a {@link TranslationKey}, so a popular message is only sent to the model once per target
+ * locale regardless of the {@link SafetyLevel} each caller renders.
+ * </p>
+ * <p>
+ * Embed variants are held as raw JSON. Every {@link #get(TranslationKey)} hands out its own {@link LazyContent}
+ * over that JSON, so what a reply decodes is never kept alive by the cache and the stored size stays what was charged.
+ * </p>
+ *
+ * <h2>Eviction:</h2>
+ * <ul>
+ *     <li>Entries are kept in least-recently-used order and evicted once the estimated size exceeds the byte budget.</li>
+ *     <li>Entries older than the time-to-live are dropped on access and whenever the cache is written to.</li>
+ * </ul>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [cache]
+ * maxBytes = 33554432   ; 32 MiB
+ * ttl = 21600           ; seconds
+ * </pre>
+ *
+ * @see TranslationKey
+ */
+public class TranslationCache {
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final Duration DEFAULT_TTL = Duration.ofHours(6);
+    /**
+     * Rough per-entry overhead of the map node, key and {@link Entry} wrapper.
+     */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private static TranslationCache instance = null;
+
+    /**
+     * The maximum estimated size of all cached entries, in bytes.
+     */
+    @Getter
+    private final long maxBytes;
+    /**
+     * How long an entry stays valid after it was stored.
+     */
+    @Getter
+    private final @NotNull Duration ttl;
+
+    private final LinkedHashMap<TranslationKey, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new, empty {@link TranslationCache}.
+     * @param maxBytes The byte budget for all entries. A value of {@code 0} or less disables caching.
+     * @param ttl How long an entry stays valid after it was stored.
+     */
+    public TranslationCache(long maxBytes, @NotNull Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Builds a {@link TranslationCache} from the optional {@code [cache]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new {@link TranslationCache}.
+     */
+    public static @NotNull TranslationCache fromSecret(@NotNull Ini secret) {
+        long maxBytes = DEFAULT_MAX_BYTES;
+        Duration ttl = DEFAULT_TTL;
+
+        String maxBytesStr = secret.get("cache", "maxBytes");
+        String ttlStr = secret.get("cache", "ttl");
+        try {
+            if (maxBytesStr != null && !maxBytesStr.isBlank()) maxBytes = Long.parseLong(maxBytesStr.trim());
+            if (ttlStr != null && !ttlStr.isBlank()) ttl = Duration.ofSeconds(Long.parseLong(ttlStr.trim()));
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [cache] configuration in secret.ini: " + ex.getMessage() + ". Using defaults.");
+            maxBytes = DEFAULT_MAX_BYTES;
+            ttl = DEFAULT_TTL;
+        }
+
+        return new TranslationCache(maxBytes, ttl);
+    }
+
+    /**
+     * Creates the shared instance from the secret configuration. Called once by {@link ChatBridge#main(String[])}.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        instance = fromSecret(secret);
+    }
+
+    /**
+     * Retrieves the shared {@link TranslationCache}, creating it from {@link ChatBridge#getSecret()} if it has not been initialized yet.
+     * @return The shared {@link TranslationCache}.
+     */
+    public static synchronized @NotNull TranslationCache get() {
+        if (instance == null) {
+            instance = ChatBridge.getSecret() != null ? fromSecret(ChatBridge.getSecret()) : new TranslationCache(DEFAULT_MAX_BYTES, DEFAULT_TTL);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link TranslationCache}.
+     * @param cache The new shared cache, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable TranslationCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * Looks up a translation.
+     * @param key The key to look up.
+     * @return The cached {@link Response.Data}, or {@code null} if it is absent or expired.
+     */
+    public @Nullable Response.Data get(@NotNull TranslationKey key) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                this.entries.remove(key);
+                this.bytes -= entry.size;
+                this.evictions.incrementAndGet();
+                entry = null;
+            }
+
+            if (entry == null) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+
+            this.hits.incrementAndGet();
+            return detached(entry.data);
+        }
+    }
+
+    /**
+     * Checks whether a translation is cached, without counting a hit or a miss.
+     * @param key The key to look up.
+     * @return {@code true} if a translation that has not expired is stored under {@code key}.
+     */
+    public boolean contains(@NotNull TranslationKey key) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            return entry != null && !entry.isExpired(System.nanoTime());
+        }
+    }
+
+    /**
+     * Stores a translation, evicting expired and least-recently-used entries as needed to stay within {@link #getMaxBytes()}.
+     * @param key The key to store the translation under.
+     * @param data The parsed translation.
+     */
+    public void put(@NotNull TranslationKey key, @NotNull Response.Data data) {
+        data = detached(data);
+        long size = ENTRY_OVERHEAD + sizeOf(key) + sizeOf(data);
+        if (size > this.maxBytes) return;
+
+        long now = System.nanoTime();
+        synchronized (this.entries) {
+            Entry previous = this.entries.put(key, new Entry(data, size, now + this.ttl.toNanos()));
+            if (previous != null) {
+                this.bytes -= previous.size;
+            }
+            this.bytes += size;
+
+            Iterator<Entry> it = this.entries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.isExpired(now) || (this.bytes > this.maxBytes && e.data != data)) {
+                    it.remove();
+                    this.bytes -= e.size;
+                    this.evictions.incrementAndGet();
+                } else if (this.bytes <= this.maxBytes) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every entry. Counters are kept.
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * @return The number of entries currently stored.
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * @return The estimated size of all entries currently stored, in bytes.
+     */
+    public long getBytes() {
+        synchronized (this.entries) {
+            return this.bytes;
+        }
+    }
+
+    /**
+     * @return The number of lookups that returned a cached translation.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of lookups that found nothing usable.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return The number of entries removed because they expired or the byte budget was exceeded.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TranslationCache{entries=" + size() + ", bytes=" + getBytes() + "/" + this.maxBytes + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "}";
+    }
+
+    private static long sizeOf(@NotNull TranslationKey key) {
+        return sizeOf(key.promptId()) + sizeOf(key.version()) + sizeOf(key.target()) + sizeOf(key.contentHash());
+    }
+
+    static long sizeOf(@NotNull Response.Data data) {
+        long size = sizeOf(data.getSource().getTag()) + sizeOf(data.getSource().getLang());
+
+        for (Response.Data.Target<?> target : data.getTargets()) {
+            size += sizeOf(target.getTag()) + sizeOf(target.getLang());
+            if (target instanceof Response.Data.MessageTarget t) {
+                size += sizeOf(t.getExplicit()) + sizeOf(t.getSafe());
+            } else if (target instanceof Response.Data.EmbedTarget t) {
+                size += sizeOf(t.getExplicitContent(), TranslationCache::sizeOf) + sizeOf(t.getSafeContent(), TranslationCache::sizeOf);
+            } else if (target instanceof Response.Data.EmbedsTarget t) {
+                size += sizeOf(t.getExplicitContent(), TranslationCache::sizeOf) + sizeOf(t.getSafeContent(), TranslationCache::sizeOf);
+            } else if (target instanceof Response.Data.VariantTarget<?> t) {
+                size += t.getContent() instanceof Response.Data.EmbedContent c ? sizeOf(c) : sizeOf(String.valueOf(t.getContent()));
+            }
+        }
+        return size;
+    }
+
+    private static <T> long sizeOf(@NotNull LazyContent<T> content, @NotNull ToLongFunction<T> decodedSize) {
+        String json = content.getJson();
+        if (json != null) return sizeOf(json);
+        return decodedSize.applyAsLong(content.get());
+    }
+
+    /**
+     * @return {@code data} with every embed variant replaced by {@link LazyContent#detached()}, or {@code data} itself
+     * if it has none.
+     */
+    static @NotNull Response.Data detached(@NotNull Response.Data data) {
+        List<Response.Data.Target<?>> targets = null;
+        for (int i = 0; i < data.getTargets().size(); i++) {
+            Response.Data.Target<?> target = data.getTargets().get(i);
+            Response.Data.Target<?> copy = target;
+            if (target instanceof Response.Data.EmbedTarget t) {
+                copy = new Response.Data.EmbedTarget(t.getTag(), t.getLang(), t.getExplicitContent().detached(), t.getSafeContent().detached());
+            } else if (target instanceof Response.Data.EmbedsTarget t) {
+                copy = new Response.Data.EmbedsTarget(t.getTag(), t.getLang(), t.getExplicitContent().detached(), t.getSafeContent().detached());
+            }
+
+            if (copy != target && targets == null) {
+                targets = new ArrayList<>(data.getTargets().subList(0, i));
+            }
+            if (targets != null) targets.add(copy);
+        }
+        return targets != null ? new Response.Data(data.getSource(), targets) : data;
+    }
+
+    private static long sizeOf(@Nullable Response.Data.EmbedsContent content) {
+        if (content == null) return 0;
+
+        long size = sizeOf(content.getMessage());
+        for (Response.Data.EmbedContent embed : content.getEmbeds()) {
+            size += sizeOf(embed);
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable Response.Data.EmbedContent content) {
+        if (content == null) return 0;
+
+        long size = sizeOf(content.getMessage()) + sizeOf(content.getTitle()) + sizeOf(content.getAuthor()) + sizeOf(content.getDescription()) + sizeOf(content.getFooter());
+        if (content.getFields() != null) {
+            for (Response.Data.EmbedContent.Field f : content.getFields()) {
+                size += sizeOf(f.getName()) + sizeOf(f.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable String value) {
+        // String header + backing array; assume UTF-16 as the worst case
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private record Entry(@NotNull Response.Data data, long size, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - this.expiresAt >= 0;
+        }
+    }
+}
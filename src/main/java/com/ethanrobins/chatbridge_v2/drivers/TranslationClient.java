@@ -0,0 +1,470 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <b>Long-lived transport for the OpenAI Responses endpoint used by {@link Request#queue()}.</b>
+ * <p>
+ * A single {@link TranslationClient} owns one tuned {@link HttpClient} so that every translation reuses the same
+ * HTTP/2 connection (and TLS session) instead of paying a fresh handshake per call. The client runs on its own
+ * executor and applies both a connect timeout and a per-request timeout.
+ * </p>
+ * <p>
+ * Every translation passes through the client's {@link AdmissionController}, which learns the remaining request and
+ * token budget from the rate-limit headers and holds submissions that would otherwise be rejected with a {@code 429}.
+ * Transient failures are retried according to the client's {@link RetryPolicy}, within the caller's deadline, and
+ * slow calls may be hedged according to its {@link HedgePolicy}.
+ * </p>
+ * <p>
+ * When {@code stream} is enabled, callers that can show partial output may use
+ * {@link #streamTranslation(byte[], int, Instant, Consumer)} to receive the output text as it is generated. Streamed
+ * calls are retried like any other call but are never hedged.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [chatgpt]
+ * url = https://api.openai.com/v1/responses
+ * key = sk-...
+ * ; optional
+ * connectTimeout = 10      ; seconds
+ * requestTimeout = 120     ; seconds
+ * threads = 4
+ * stream = false
+ * </pre>
+ *
+ * <p>
+ * The shared instance is created once at startup through {@link #init(Ini)}. Tests may replace it with
+ * {@link #set(TranslationClient)} or pass their own instance to {@link Request#queue(TranslationClient)}.
+ * </p>
+ *
+ * @see Request
+ */
+public class TranslationClient implements AutoCloseable {
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(120);
+    private static final int DEFAULT_THREADS = 4;
+
+    private static TranslationClient instance = null;
+
+    /**
+     * The endpoint all translation requests are sent to.
+     */
+    @Getter
+    private final @NotNull URI uri;
+    private final @NotNull String key;
+    /**
+     * The timeout applied to each individual {@link HttpRequest}.
+     */
+    @Getter
+    private final @NotNull Duration requestTimeout;
+    /**
+     * The underlying {@link HttpClient} shared by every request.
+     */
+    @Getter
+    private final @NotNull HttpClient httpClient;
+    private final @NotNull ExecutorService executor;
+    /**
+     * The {@link AdmissionController} guarding this client's rate limits.
+     */
+    @Getter
+    private final @NotNull AdmissionController admission = new AdmissionController();
+    private final @NotNull ResponseBodyHandler responseHandler = new ResponseBodyHandler(this.admission);
+    /**
+     * The {@link RetryPolicy} applied to translation calls.
+     */
+    @Getter
+    private final @NotNull RetryPolicy retryPolicy;
+    /**
+     * The {@link HedgePolicy} applied to translation calls.
+     */
+    @Getter
+    private final @NotNull HedgePolicy hedgePolicy;
+    /**
+     * Whether callers should stream translations that can be shown progressively.
+     */
+    @Getter
+    private final boolean streaming;
+
+    /**
+     * Creates a new {@link TranslationClient} with its own {@link HttpClient} and executor.
+     * @param uri The Responses endpoint.
+     * @param key The API key sent as a bearer token.
+     * @param connectTimeout The maximum time allowed to establish a connection.
+     * @param requestTimeout The maximum time allowed for a single request to complete.
+     * @param threads The number of threads backing the client's executor.
+     * @param retryPolicy The {@link RetryPolicy} applied to translation calls.
+     * @param hedgePolicy The {@link HedgePolicy} applied to translation calls.
+     * @param streaming Whether callers should stream translations that can be shown progressively.
+     */
+    public TranslationClient(@NotNull URI uri, @NotNull String key, @NotNull Duration connectTimeout, @NotNull Duration requestTimeout, int threads, @NotNull RetryPolicy retryPolicy, @NotNull HedgePolicy hedgePolicy, boolean streaming) {
+        this.uri = uri;
+        this.key = key;
+        this.requestTimeout = requestTimeout;
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.streaming = streaming;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new NamedThreadFactory("ChatBridge-Translate"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(this.executor)
+                .build();
+    }
+    public TranslationClient(@NotNull URI uri, @NotNull String key, @NotNull Duration connectTimeout, @NotNull Duration requestTimeout, int threads) {
+        this(uri, key, connectTimeout, requestTimeout, threads, RetryPolicy.DEFAULT, HedgePolicy.DISABLED, false);
+    }
+
+    /**
+     * Builds a {@link TranslationClient} from the {@code [chatgpt]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new {@link TranslationClient}.
+     * @throws IllegalStateException If the {@code url} or {@code key} option is missing.
+     */
+    public static @NotNull TranslationClient fromSecret(@NotNull Ini secret) {
+        return fromSecret(secret, null);
+    }
+
+    /**
+     * Builds a {@link TranslationClient} from the {@code [chatgpt]} section of the given secret configuration, sending
+     * requests to another endpoint such as a local stand-in of the Responses API.
+     * @param secret The secret configuration.
+     * @param uri The endpoint to use instead of {@code [chatgpt] url}, or {@code null} to use it. The {@code key}
+     *            option is optional when this is set.
+     * @return A new {@link TranslationClient}.
+     * @throws IllegalStateException If the {@code url} or {@code key} option is missing.
+     */
+    public static @NotNull TranslationClient fromSecret(@NotNull Ini secret, @Nullable URI uri) {
+        String url = secret.get("chatgpt", "url");
+        String key = secret.get("chatgpt", "key");
+        if (uri != null) {
+            if (key == null) key = "mock";
+        } else if (url == null || key == null) {
+            throw new IllegalStateException("Both [chatgpt] url and key must be set in secret.ini");
+        }
+
+        return new TranslationClient(
+                uri != null ? uri : URI.create(url),
+                key,
+                secondsOrDefault(secret.get("chatgpt", "connectTimeout"), DEFAULT_CONNECT_TIMEOUT),
+                secondsOrDefault(secret.get("chatgpt", "requestTimeout"), DEFAULT_REQUEST_TIMEOUT),
+                intOrDefault(secret.get("chatgpt", "threads"), DEFAULT_THREADS),
+                RetryPolicy.fromSecret(secret),
+                HedgePolicy.fromSecret(secret),
+                "true".equalsIgnoreCase(secret.get("chatgpt", "stream"))
+        );
+    }
+
+    /**
+     * Creates the shared instance from the secret configuration, unless one was already installed with
+     * {@link #set(TranslationClient)}. Called once by {@link ChatBridge#main(String[])}.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        if (instance == null) {
+            set(fromSecret(secret));
+        }
+    }
+
+    /**
+     * Retrieves the shared {@link TranslationClient}, creating it from {@link ChatBridge#getSecret()} if it has not been initialized yet.
+     * @return The shared {@link TranslationClient}.
+     */
+    public static synchronized @NotNull TranslationClient get() {
+        if (instance == null) {
+            instance = fromSecret(ChatBridge.getSecret());
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link TranslationClient}. The previous instance, if any, is closed.
+     * @param client The new shared client, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable TranslationClient client) {
+        if (instance != null && instance != client) {
+            instance.close();
+        }
+        instance = client;
+    }
+
+    /**
+     * Creates a request builder pre-configured with the endpoint, authorization, content type and request timeout.
+     * @return A new {@link HttpRequest.Builder}.
+     */
+    public @NotNull HttpRequest.Builder newRequest() {
+        return HttpRequest.newBuilder()
+                .uri(this.uri)
+                .timeout(this.requestTimeout)
+                .header("Authorization", "Bearer " + this.key)
+                .header("Content-Type", "application/json");
+    }
+
+    /**
+     * Sends the given request over the shared connection without blocking the calling thread.
+     * @param request The request to send.
+     * @param handler The body handler for the response.
+     * @return A {@link CompletableFuture} completed with the {@link HttpResponse}.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(@NotNull HttpRequest request, @NotNull HttpResponse.BodyHandler<T> handler) {
+        return this.httpClient.sendAsync(request, handler);
+    }
+
+    /**
+     * Sends a translation payload, retrying transient failures with backoff.
+     * <p>
+     * Each attempt waits for the {@link AdmissionController}, is bounded by {@link RetryPolicy#getAttemptTimeout()}
+     * (and never by more than the time left until {@code deadline}), and is abandoned and retried if it runs over.
+     * No attempt is started, and no backoff is slept, past the deadline.
+     * </p>
+     * @param payload The serialized {@link Request}.
+     * @param estimatedTokens The estimated input plus output tokens of the request.
+     * @param deadline The time by which a result is no longer useful, or {@code null} to only bound by attempts.
+     * @return A {@link CompletableFuture} completed with the parsed {@link Response}.
+     */
+    public @NotNull CompletableFuture<Response> sendTranslation(byte[] payload, int estimatedTokens, @Nullable Instant deadline) {
+        return sendTranslation(payload, estimatedTokens, deadline, null);
+    }
+
+    /**
+     * Like {@link #sendTranslation(byte[], int, Instant)}, but also reports the responses of hedged attempts that lost.
+     * Their tokens are spent even though their output is not used.
+     * @param payload The serialized {@link Request}.
+     * @param estimatedTokens The estimated input plus output tokens of the request.
+     * @param deadline The time by which a result is no longer useful, or {@code null} to only bound by attempts.
+     * @param onDiscarded Receives every completed response that was not used, or {@code null}. Called on the client's executor.
+     * @return A {@link CompletableFuture} completed with the parsed {@link Response}.
+     */
+    public @NotNull CompletableFuture<Response> sendTranslation(byte[] payload, int estimatedTokens, @Nullable Instant deadline, @Nullable Consumer<Response> onDiscarded) {
+        return send(payload, estimatedTokens, deadline, null, onDiscarded);
+    }
+
+    /**
+     * Sends a translation payload made with {@code "stream": true}, reporting the output text as it is generated.
+     * <p>
+     * Retries and deadlines work as in {@link #sendTranslation(byte[], int, Instant)}. A retried attempt starts its
+     * output text over, so {@code onText} always receives the text of the current attempt.
+     * </p>
+     * @param payload The serialized {@link Request}, with streaming enabled.
+     * @param estimatedTokens The estimated input plus output tokens of the request.
+     * @param deadline The time by which a result is no longer useful, or {@code null} to only bound by attempts.
+     * @param onText Receives the complete output text generated so far after every delta. Called on the client's executor.
+     * @return A {@link CompletableFuture} completed with the parsed {@link Response}.
+     */
+    public @NotNull CompletableFuture<Response> streamTranslation(byte[] payload, int estimatedTokens, @Nullable Instant deadline, @NotNull Consumer<String> onText) {
+        return send(payload, estimatedTokens, deadline, onText, null);
+    }
+
+    private CompletableFuture<Response> send(byte[] payload, int estimatedTokens, @Nullable Instant deadline, @Nullable Consumer<String> onText, @Nullable Consumer<Response> onDiscarded) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((r, ex) -> {
+            CompletableFuture<?> attempt = current.get();
+            if (result.isCancelled() && attempt != null) attempt.cancel(true);
+        });
+        attempt(payload, estimatedTokens, deadline, onText, onDiscarded, 1, result, current);
+        return result;
+    }
+
+    private void attempt(byte[] payload, int estimatedTokens, @Nullable Instant deadline, @Nullable Consumer<String> onText, @Nullable Consumer<Response> onDiscarded, int attempt, @NotNull CompletableFuture<Response> result, @NotNull AtomicReference<CompletableFuture<?>> current) {
+        if (result.isDone()) return;
+
+        Duration timeout = this.retryPolicy.getAttemptTimeout().compareTo(this.requestTimeout) < 0 ? this.retryPolicy.getAttemptTimeout() : this.requestTimeout;
+        if (deadline != null) {
+            Duration remaining = Duration.between(Instant.now(), deadline);
+            if (remaining.isNegative() || remaining.isZero()) {
+                result.completeExceptionally(new HttpTimeoutException("Translation deadline exceeded after " + (attempt - 1) + " attempt(s)"));
+                return;
+            }
+            if (remaining.compareTo(timeout) < 0) timeout = remaining;
+        }
+
+        HttpRequest.Builder builder = newRequest()
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload));
+
+        CompletableFuture<Response> call;
+        if (onText != null) {
+            // Two streams would interleave their partial output, so streamed calls are never hedged
+            call = sendOnce(builder.header("Accept", "text/event-stream").build(), estimatedTokens, deadline, new StreamingBodyHandler(this.admission, onText));
+        } else {
+            call = sendHedged(builder.build(), estimatedTokens, deadline, onDiscarded);
+        }
+        current.set(call);
+        if (result.isDone()) call.cancel(true);
+
+        call.whenComplete((response, ex) -> {
+            if (ex == null) {
+                result.complete(response);
+                return;
+            }
+
+            Throwable cause = RetryPolicy.unwrap(ex);
+            if (result.isDone() || attempt >= this.retryPolicy.getMaxAttempts() || !this.retryPolicy.isRetryable(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            Duration delay = this.retryPolicy.backoff(attempt);
+            if (deadline != null && Instant.now().plus(delay).isAfter(deadline)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            System.err.println("Translation attempt " + attempt + "/" + this.retryPolicy.getMaxAttempts() + " failed (" + cause + "). Retrying in " + delay.toMillis() + "ms.");
+            CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, this.executor)
+                    .execute(() -> attempt(payload, estimatedTokens, deadline, onText, onDiscarded, attempt + 1, result, current));
+        });
+    }
+
+    /**
+     * Sends one attempt, hedging it with a second identical call if the {@link HedgePolicy} says it is running slow.
+     * The first successful response wins and the other call is cancelled. A losing call that completes anyway is
+     * passed to {@code onDiscarded}.
+     */
+    private CompletableFuture<Response> sendHedged(@NotNull HttpRequest request, int estimatedTokens, @Nullable Instant deadline, @Nullable Consumer<Response> onDiscarded) {
+        final long hedgeAfter = this.hedgePolicy.onCall();
+        final CompletableFuture<Response> primary = sendOnce(request, estimatedTokens, deadline, this.responseHandler);
+        if (hedgeAfter < 0) return primary;
+
+        final CompletableFuture<Response> winner = new CompletableFuture<>();
+        final AtomicReference<CompletableFuture<Response>> secondary = new AtomicReference<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        BiConsumer<Boolean, CompletableFuture<Response>> onDone = (isHedge, attempt) -> attempt.whenComplete((response, ex) -> {
+            boolean hedged = secondary.get() != null;
+            if (ex == null) {
+                boolean won = winner.complete(response);
+                if (hedged) this.hedgePolicy.recordResult(isHedge, response, won);
+                if (!won && onDiscarded != null) onDiscarded.accept(response);
+            } else if (attempt.isCancelled()) {
+                this.hedgePolicy.recordCancelled();
+            } else if (pending.decrementAndGet() == 0) {
+                winner.completeExceptionally(RetryPolicy.unwrap(ex));
+            }
+        });
+
+        onDone.accept(false, primary);
+        CompletableFuture.delayedExecutor(hedgeAfter, TimeUnit.MILLISECONDS, this.executor).execute(() -> {
+            if (winner.isDone() || !this.hedgePolicy.tryHedge()) return;
+
+            pending.incrementAndGet();
+            CompletableFuture<Response> hedge = sendOnce(request, estimatedTokens, deadline, this.responseHandler);
+            secondary.set(hedge);
+            onDone.accept(true, hedge);
+            if (winner.isDone()) hedge.cancel(true);
+        });
+
+        winner.whenComplete((response, ex) -> {
+            if (!primary.isDone()) primary.cancel(true);
+            CompletableFuture<Response> hedge = secondary.get();
+            if (hedge != null && !hedge.isDone()) hedge.cancel(true);
+        });
+        return winner;
+    }
+
+    /**
+     * Sends a single call once the {@link AdmissionController} admits it. Cancelling the returned future cancels the call.
+     */
+    private CompletableFuture<Response> sendOnce(@NotNull HttpRequest request, int estimatedTokens, @Nullable Instant deadline, @NotNull HttpResponse.BodyHandler<Response> handler) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        final AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+
+        CompletableFuture<AdmissionController.Ticket> admitted = this.admission.acquire(estimatedTokens);
+        if (deadline != null) {
+            admitted.orTimeout(Math.max(1, Duration.between(Instant.now(), deadline).toMillis()), TimeUnit.MILLISECONDS);
+        }
+        current.set(admitted);
+
+        admitted.thenCompose(ticket -> {
+            final long start = System.nanoTime();
+            CompletableFuture<HttpResponse<Response>> call = this.httpClient.sendAsync(request, handler);
+            current.set(call);
+            if (result.isDone()) call.cancel(true);
+            return call.whenComplete((httpResponse, ex) -> {
+                ticket.release(httpResponse != null ? httpResponse.body().getUsage().getTotal() : -1);
+                // A streamed call's duration says nothing about when a buffered one should be hedged
+                if (httpResponse != null && handler == this.responseHandler) this.hedgePolicy.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            });
+        }).whenComplete((httpResponse, ex) -> {
+            if (ex == null) {
+                result.complete(httpResponse.body());
+            } else {
+                result.completeExceptionally(RetryPolicy.unwrap(ex));
+            }
+        });
+
+        result.whenComplete((r, ex) -> {
+            CompletableFuture<?> inner = current.get();
+            if (result.isCancelled() && inner != null) inner.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * Shuts down this client's executor and admission control. In-flight requests are allowed to finish.
+     */
+    @Override
+    public void close() {
+        this.admission.shutdown();
+        this.executor.shutdown();
+    }
+
+    private static Duration secondsOrDefault(@Nullable String value, @NotNull Duration def) {
+        if (value == null || value.isBlank()) return def;
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid duration in secret.ini: " + value + ". Using " + def.toSeconds() + "s.");
+            return def;
+        }
+    }
+
+    private static int intOrDefault(@Nullable String value, int def) {
+        if (value == null || value.isBlank()) return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid number in secret.ini: " + value + ". Using " + def + ".");
+            return def;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        private NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread t = new Thread(r, this.prefix + "-" + this.count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifies a translation independently of who asked for it.
+ * <p>
+ * Two {@link Request.Prompt}s that use the same prompt id and version, target the same locale and carry the same
+ * (Unicode-normalized) content produce equal keys, no matter which {@link SafetyLevel} the caller will render.
+ * The content itself is reduced to a SHA-256 hash so keys stay small regardless of message length.
+ * </p>
+ *
+ * @param promptId The OpenAI prompt id.
+ * @param version The prompt version, or an empty string if unspecified.
+ * @param target The target locale.
+ * @param contentHash The hex SHA-256 of every other prompt variable.
+ */
+public record TranslationKey(@NotNull String promptId, @NotNull String version, @NotNull String target, @NotNull String contentHash) {
+    /**
+     * Builds the key for the given prompt.
+     * @param prompt The prompt to identify.
+     * @return The {@link TranslationKey} for {@code prompt}.
+     */
+    public static @NotNull TranslationKey of(@NotNull Request.Prompt prompt) {
+        String target = prompt.getVariables().get("tgt");
+        return of(prompt, target != null ? target : "");
+    }
+
+    /**
+     * Builds the key for the given prompt as if it targeted {@code target}.
+     * @param prompt The prompt to identify.
+     * @param target The target locale to use in place of the prompt's {@code tgt} variable.
+     * @return The {@link TranslationKey} for {@code prompt} and {@code target}.
+     */
+    public static @NotNull TranslationKey of(@NotNull Request.Prompt prompt, @NotNull String target) {
+        return of(prompt.getId(), prompt.getVersion(), prompt.getVariables(), target);
+    }
+
+    /**
+     * Builds the key a single-target prompt would have for one locale of {@code prompt}.
+     * <br>For a {@link PromptType#MESSAGES} prompt this is the key of the equivalent {@link PromptType#MESSAGE}
+     * prompt, so each target of a fan-out can be cached for, and served to, ordinary message translations.
+     * @param prompt The prompt to identify.
+     * @param target One of the prompt's target locales.
+     * @return The {@link TranslationKey} for {@code target}.
+     */
+    public static @NotNull TranslationKey forTarget(@NotNull Request.Prompt prompt, @NotNull String target) {
+        if (!prompt.isMultiTarget()) return of(prompt, target);
+        return of(PromptType.MESSAGE.getId(), PromptType.MESSAGE.getVersion(), prompt.getVariables(), target);
+    }
+
+    private static @NotNull TranslationKey of(@NotNull String promptId, @Nullable String version, @NotNull Map<String, String> variables, @NotNull String target) {
+        Map<String, String> content = new TreeMap<>(variables);
+        content.remove("tgt");
+        content.remove("tgts");
+
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, String> entry : content.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        return new TranslationKey(
+                promptId,
+                version != null ? version : "",
+                normalize(target),
+                HexFormat.of().formatHex(digest.digest())
+        );
+    }
+
+    private static @NotNull String normalize(@Nullable String value) {
+        if (value == null) return "";
+        return Normalizer.normalize(value.strip(), Normalizer.Form.NFC);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import com.ethanrobins.chatbridge_v2.exceptions.BudgetExceededException;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>Token usage accounting and per-guild budgets.</b>
+ * <p>
+ * Every {@link Response.Usage} returned by the API is added to in-memory counters keyed by day, guild, user, model
+ * and {@link PromptType}. The counters are {@link LongAdder}s, so recording never blocks a translation; a background
+ * task periodically adds the deltas to the {@code chatbridge_usage} table in one batch.
+ * </p>
+ *
+ * <h2>Budgets:</h2>
+ * <ul>
+ *     <li><b>Daily:</b> a guild that has used its daily tokens is refused with a {@link BudgetExceededException}
+ *     until the next day (UTC).</li>
+ *     <li><b>Per minute:</b> a guild that exceeds its burst limit has its requests delayed into the next minute,
+ *     or refused if that would pass the request's deadline.</li>
+ * </ul>
+ * <p>
+ * A request reserves its {@linkplain Request#estimateTokens() estimated} tokens before it is sent, so concurrent
+ * requests cannot overshoot a budget, and the reservation is replaced with the actual usage once it completes.
+ * Translations served from the cache, or coalesced with an identical call of the same guild, are free. Calls are
+ * never shared across guilds, so a guild is never refused because of, or served at the expense of, another's budget.
+ * </p>
+ * <p>
+ * What a guild spent earlier in the day, for example before a restart, is loaded from the database on the flush thread
+ * the first time the guild is seen that day. Until it arrives the guild's budget counts from {@code 0}; reserving and
+ * settling never wait for the database.
+ * </p>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [usage]
+ * flushInterval = 60          ; seconds
+ * guildDailyTokens = 0        ; 0 = unlimited
+ * guildTokensPerMinute = 0    ; 0 = unlimited
+ *
+ * [budgets]
+ * 123456789012345678 = 500000 ; daily tokens for one guild, overrides guildDailyTokens
+ * </pre>
+ */
+public class UsageLedger {
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(60);
+
+    private static UsageLedger instance = null;
+
+    /**
+     * How often pending usage is written to the database.
+     */
+    @Getter
+    private final @NotNull Duration flushInterval;
+    /**
+     * The default daily token budget of a guild, or {@code 0} for unlimited.
+     */
+    @Getter
+    private final long guildDailyTokens;
+    /**
+     * The per-minute token limit of a guild, or {@code 0} for unlimited.
+     */
+    @Getter
+    private final long guildTokensPerMinute;
+    private final @NotNull Map<String, Long> guildBudgets;
+
+    private final ConcurrentHashMap<Key, Counter> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, GuildSpend> spend = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService flusher = null;
+
+    /**
+     * @param flushInterval How often pending usage is written to the database.
+     * @param guildDailyTokens The default daily token budget of a guild, or {@code 0} for unlimited.
+     * @param guildTokensPerMinute The per-minute token limit of a guild, or {@code 0} for unlimited.
+     * @param guildBudgets Daily token budgets of individual guilds, by guild id.
+     */
+    public UsageLedger(@NotNull Duration flushInterval, long guildDailyTokens, long guildTokensPerMinute, @NotNull Map<String, Long> guildBudgets) {
+        this.flushInterval = flushInterval;
+        this.guildDailyTokens = guildDailyTokens;
+        this.guildTokensPerMinute = guildTokensPerMinute;
+        this.guildBudgets = Map.copyOf(guildBudgets);
+    }
+
+    /**
+     * Builds a {@link UsageLedger} from the optional {@code [usage]} and {@code [budgets]} sections of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new {@link UsageLedger}.
+     */
+    public static @NotNull UsageLedger fromSecret(@NotNull Ini secret) {
+        Duration flushInterval = DEFAULT_FLUSH_INTERVAL;
+        long daily = 0;
+        long perMinute = 0;
+        Map<String, Long> budgets = new HashMap<>();
+
+        try {
+            String flushStr = secret.get("usage", "flushInterval");
+            String dailyStr = secret.get("usage", "guildDailyTokens");
+            String perMinuteStr = secret.get("usage", "guildTokensPerMinute");
+            if (flushStr != null && !flushStr.isBlank()) flushInterval = Duration.ofSeconds(Math.max(1, Long.parseLong(flushStr.trim())));
+            if (dailyStr != null && !dailyStr.isBlank()) daily = Long.parseLong(dailyStr.trim());
+            if (perMinuteStr != null && !perMinuteStr.isBlank()) perMinute = Long.parseLong(perMinuteStr.trim());
+
+            Ini.Section section = secret.get("budgets");
+            if (section != null) {
+                for (Map.Entry<String, String> budget : section.entrySet()) {
+                    budgets.put(budget.getKey().trim(), Long.parseLong(budget.getValue().trim()));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid [usage] or [budgets] configuration in secret.ini: " + ex.getMessage() + ". Budgets are disabled.");
+            return new UsageLedger(DEFAULT_FLUSH_INTERVAL, 0, 0, Map.of());
+        }
+
+        return new UsageLedger(flushInterval, daily, perMinute, budgets);
+    }
+
+    /**
+     * Creates the shared instance from the secret configuration and starts flushing it. Called once by {@link ChatBridge#main(String[])}.
+     * @param secret The secret configuration.
+     */
+    public static synchronized void init(@NotNull Ini secret) {
+        if (instance != null) instance.shutdown();
+        instance = fromSecret(secret);
+        instance.start();
+    }
+
+    /**
+     * Retrieves the shared {@link UsageLedger}, creating it from {@link ChatBridge#getSecret()} if it has not been initialized yet.
+     * <br>An instance created this way is not flushed until {@link #start()} is called.
+     * @return The shared {@link UsageLedger}.
+     */
+    public static synchronized @NotNull UsageLedger get() {
+        if (instance == null) {
+            instance = ChatBridge.getSecret() != null ? fromSecret(ChatBridge.getSecret()) : new UsageLedger(DEFAULT_FLUSH_INTERVAL, 0, 0, Map.of());
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared {@link UsageLedger}.
+     * @param ledger The new shared ledger, or {@code null} to reset it.
+     */
+    public static synchronized void set(@Nullable UsageLedger ledger) {
+        instance = ledger;
+    }
+
+    /**
+     * Starts writing pending usage to the database every {@link #getFlushInterval()}, and once more on shutdown. Guild
+     * spend is only loaded from the database while the ledger is started.
+     */
+    public synchronized void start() {
+        if (this.flusher != null) return;
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "usage-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = this.flushInterval.toMillis();
+        flusher.execute(this::seed);
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        this.flusher = flusher;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "usage-flush-shutdown"));
+    }
+
+    /**
+     * Stops the periodic flush. Pending usage is flushed one last time.
+     */
+    public synchronized void shutdown() {
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+            this.flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * @param guildId The guild id.
+     * @return The daily token budget of the guild, or {@code 0} for unlimited.
+     */
+    public long getDailyBudget(@NotNull String guildId) {
+        return this.guildBudgets.getOrDefault(guildId, this.guildDailyTokens);
+    }
+
+    /**
+     * @param guildId The guild id.
+     * @return The tokens the guild has used or reserved today.
+     */
+    public long getSpentToday(@NotNull String guildId) {
+        return spendOf(guildId).tokens.sum();
+    }
+
+    /**
+     * Reserves tokens for a request from the guild's budgets.
+     * <br>Requests outside a guild are not limited. Every successful reservation must be settled with
+     * {@link #settle(String, String, int, PromptType, Response)}.
+     * @param guildId The guild the request is made in, if any.
+     * @param tokens The estimated tokens of the request.
+     * @param deadline The request's deadline, if any. A request is refused rather than delayed past it.
+     * @return How long to wait before sending the request, in milliseconds.
+     * @throws BudgetExceededException If the request must not be sent.
+     */
+    public long reserve(@Nullable String guildId, int tokens, @Nullable Instant deadline) throws BudgetExceededException {
+        if (guildId == null) return 0;
+
+        GuildSpend s = spendOf(guildId);
+        long budget = getDailyBudget(guildId);
+        if (!s.reserve(tokens, budget)) {
+            throw new BudgetExceededException(guildId, "Guild " + guildId + " has used its daily budget of " + budget + " tokens");
+        }
+
+        long delay = this.guildTokensPerMinute > 0 ? s.admit(tokens, this.guildTokensPerMinute) : 0;
+        if (delay > 0 && deadline != null && Instant.now().plusMillis(delay).isAfter(deadline)) {
+            s.release(tokens);
+            s.tokens.add(-tokens);
+            throw new BudgetExceededException(guildId, "Guild " + guildId + " is over its limit of " + this.guildTokensPerMinute + " tokens per minute");
+        }
+
+        if (delay > 0 && ChatBridge.isDebug()) {
+            System.out.println("\u001B[35musage\u001B[0m delaying a request in guild " + guildId + " by " + delay + "ms");
+        }
+        return delay;
+    }
+
+    /**
+     * Replaces a reservation with the actual usage of the request, and records that usage. Usage above the reservation
+     * also counts towards the guild's current minute.
+     * @param guildId The guild the request was made in, if any.
+     * @param userId The user who made the request, if known.
+     * @param reserved The tokens passed to {@link #reserve(String, int, Instant)}, or {@code 0} for the usage of an
+     *                 extra call that reserved nothing, such as the losing attempt of a hedged call.
+     * @param type The prompt that was used, if known.
+     * @param response The response, or {@code null} if the request failed and only the reservation should be released.
+     */
+    public void settle(@Nullable String guildId, @Nullable String userId, int reserved, @Nullable PromptType type, @Nullable Response response) {
+        long actual = response != null ? response.getUsage().getTotal() : 0;
+        if (guildId != null) {
+            GuildSpend s = spendOf(guildId);
+            s.tokens.add(actual - reserved);
+            if (actual > reserved) {
+                s.charge(actual - reserved);
+            } else {
+                s.release(reserved - actual);
+            }
+        }
+        if (response != null) {
+            record(guildId, userId, response.getModel() != null ? response.getModel().getId() : "", type, response.getUsage());
+        }
+    }
+
+    /**
+     * Adds usage to the pending counters.
+     * @param guildId The guild the request was made in, if any.
+     * @param userId The user who made the request, if known.
+     * @param model The model id.
+     * @param type The prompt that was used, if known.
+     * @param usage The usage reported by the API.
+     */
+    public void record(@Nullable String guildId, @Nullable String userId, @NotNull String model, @Nullable PromptType type, @NotNull Response.Usage usage) {
+        Key key = new Key(today(), guildId != null ? guildId : "", userId != null ? userId : "", model, type != null ? type.getKey() : "");
+        Counter c = this.pending.computeIfAbsent(key, k -> new Counter());
+        c.requests.increment();
+        c.input.add(usage.getInput());
+        c.output.add(usage.getOutput());
+    }
+
+    /**
+     * Writes all pending usage to the database in one batch. Usage that could not be written is kept for the next flush.
+     */
+    public void flush() {
+        // Before writing, so the usage written below is not also counted in a guild's loaded spend
+        seed();
+
+        List<Delta> deltas = new ArrayList<>();
+        LocalDate yesterday = today().minusDays(1);
+        for (Map.Entry<Key, Counter> entry : this.pending.entrySet()) {
+            Counter c = entry.getValue();
+            Delta d = new Delta(entry.getKey(), c.requests.sumThenReset(), c.input.sumThenReset(), c.output.sumThenReset());
+            if (d.requests() != 0 || d.input() != 0 || d.output() != 0) deltas.add(d);
+            // Only the current day is still written to
+            if (entry.getKey().day().isBefore(yesterday)) this.pending.remove(entry.getKey(), c);
+        }
+        this.spend.values().removeIf(s -> s.day.isBefore(today()));
+        if (deltas.isEmpty() || ChatBridge.isDev()) return;
+
+        MySQL sql = null;
+        try {
+            sql = new MySQL();
+            MySQL.Status status = sql.addUsage(deltas);
+            if (status.isFailed()) throw new SQLException(status.getException());
+            if (ChatBridge.isDebug()) {
+                System.out.println("\u001B[35musage\u001B[0m flushed " + deltas.size() + " usage rows");
+            }
+        } catch (SQLException ex) {
+            System.err.println("Unable to flush token usage, retrying on the next flush: " + ex.getMessage());
+            for (Delta d : deltas) {
+                Counter c = this.pending.computeIfAbsent(d.key(), k -> new Counter());
+                c.requests.add(d.requests());
+                c.input.add(d.input());
+                c.output.add(d.output());
+            }
+        } finally {
+            if (sql != null) sql.close();
+        }
+    }
+
+    private @NotNull GuildSpend spendOf(@NotNull String guildId) {
+        LocalDate today = today();
+        GuildSpend s = this.spend.get(guildId);
+        if (s != null && s.day.equals(today)) return s;
+
+        GuildSpend created = new GuildSpend(today);
+        GuildSpend current = this.spend.compute(guildId, (k, old) -> old != null && old.day.equals(today) ? old : created);
+        if (current == created) {
+            ScheduledExecutorService flusher = this.flusher;
+            try {
+                if (flusher != null) flusher.execute(this::seed);
+            } catch (RejectedExecutionException ignored) {
+                // Shutting down
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Adds what each newly seen guild spent earlier in the day to its spend. Runs on the flush thread.
+     */
+    private void seed() {
+        for (Map.Entry<String, GuildSpend> entry : this.spend.entrySet()) {
+            GuildSpend s = entry.getValue();
+            if (!s.seeded) s.seed(loadSpent(entry.getKey(), s.day));
+        }
+    }
+
+    private static long loadSpent(@NotNull String guildId, @NotNull LocalDate day) {
+        if (ChatBridge.isDev()) return 0;
+        MySQL sql = null;
+        try {
+            sql = new MySQL();
+            return sql.getGuildUsage(guildId, day);
+        } catch (SQLException ex) {
+            System.err.println("Unable to load today's token usage of guild " + guildId + ": " + ex.getMessage());
+            return 0;
+        } finally {
+            if (sql != null) sql.close();
+        }
+    }
+
+    private static @NotNull LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    /**
+     * Identifies one row of {@code chatbridge_usage}. Absent guild, user or prompt ids are empty strings.
+     */
+    public record Key(@NotNull LocalDate day, @NotNull String guildId, @NotNull String userId, @NotNull String model, @NotNull String prompt) {}
+
+    /**
+     * Usage to add to one row of {@code chatbridge_usage}.
+     */
+    public record Delta(@NotNull Key key, long requests, long input, long output) {}
+
+    private static final class Counter {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder input = new LongAdder();
+        private final LongAdder output = new LongAdder();
+    }
+
+    /**
+     * What one guild has spent today, plus a fixed one-minute window for the burst limit.
+     */
+    private static final class GuildSpend {
+        private final @NotNull LocalDate day;
+        private final LongAdder tokens = new LongAdder();
+        private volatile boolean seeded = false;
+        private long windowStart = 0;
+        private long windowTokens = 0;
+
+        private GuildSpend(@NotNull LocalDate day) {
+            this.day = day;
+        }
+
+        /**
+         * Adds what the guild spent earlier in the day, once.
+         */
+        private synchronized void seed(long spent) {
+            if (this.seeded) return;
+            this.seeded = true;
+            this.tokens.add(spent);
+        }
+
+        /**
+         * Adds tokens to today's spend, unless that would go over the daily budget.
+         * <br>Checked and added under the same lock, so concurrent requests cannot all pass the check together.
+         * @param budget The daily budget, or {@code 0} for unlimited.
+         * @return {@code false} if the tokens would exceed {@code budget} and nothing was added.
+         */
+        private synchronized boolean reserve(int tokens, long budget) {
+            if (budget > 0 && this.tokens.sum() + tokens > budget) return false;
+            this.tokens.add(tokens);
+            return true;
+        }
+
+        /**
+         * Places a request into the first minute, starting with the current one, that has room for it.
+         * <br>A request larger than the whole limit still gets a minute to itself.
+         * @return How long to wait until that minute, in milliseconds.
+         */
+        private synchronized long admit(int tokens, long limit) {
+            long now = System.currentTimeMillis();
+            long minute = now - now % 60_000;
+            if (minute > this.windowStart) {
+                this.windowStart = minute;
+                this.windowTokens = 0;
+            }
+            if (this.windowTokens > 0 && this.windowTokens + tokens > limit) {
+                this.windowStart += 60_000;
+                this.windowTokens = 0;
+            }
+            this.windowTokens += tokens;
+            return Math.max(0, this.windowStart - now);
+        }
+
+        /**
+         * Adds tokens to the latest window, when a request used more than it reserved.
+         */
+        private synchronized void charge(long tokens) {
+            long now = System.currentTimeMillis();
+            long minute = now - now % 60_000;
+            if (minute > this.windowStart) {
+                this.windowStart = minute;
+                this.windowTokens = 0;
+            }
+            this.windowTokens += tokens;
+        }
+
+        /**
+         * Gives tokens back to the latest window, when a request was refused or used less than it reserved.
+         */
+        private synchronized void release(long tokens) {
+            if (tokens > 0) this.windowTokens = Math.max(0, this.windowTokens - tokens);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The stored settings of a registered user, as read from {@code chatbridge_userstore}.
+ *
+ * @param locale The user's locale, or {@code null} if the stored value is not a valid {@link DiscordLocale}.
+ * @param safetyLevel The user's safety level.
+ */
+public record UserSettings(@Nullable DiscordLocale locale, @NotNull SafetyLevel safetyLevel) {
+    /**
+     * @param locale The new locale.
+     * @return A copy of these settings with the given locale.
+     */
+    public @NotNull UserSettings withLocale(@Nullable DiscordLocale locale) {
+        return new UserSettings(locale, this.safetyLevel);
+    }
+
+    /**
+     * @param safetyLevel The new safety level.
+     * @return A copy of these settings with the given safety level.
+     */
+    public @NotNull UserSettings withSafetyLevel(@NotNull SafetyLevel safetyLevel) {
+        return new UserSettings(this.locale, safetyLevel);
+    }
+}
@@ -2,6 +2,7 @@ package com.ethanrobins.chatbridge_v2.events;
 
 import com.ethanrobins.chatbridge_v2.ChatBridge;
 import com.ethanrobins.chatbridge_v2.drivers.MySQL;
+import com.ethanrobins.chatbridge_v2.drivers.SettingsCache;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
@@ -21,27 +22,21 @@ public class GuildEvents extends ListenerAdapter {
         super.onGuildJoin(e);
 
         CompletableFuture.runAsync(() -> {
-            MySQL mysql = null;
             try {
-                mysql = new MySQL();
-                MySQL.Status status = mysql.setGuildStatus(e.getGuild().getId(), true);
+                MySQL.Status status = SettingsCache.get().setGuildStatus(e.getGuild().getId(), true);
 
                 if (ChatBridge.isDebug()) {
                     System.out.println("onGuildJoin: " + Arrays.toString(status.get()));
                 }
 
-                if (status.isUpdated() || status.isInserted()) {
+                if (!status.isFailed()) {
                     System.out.println("ChatBridge has been " + (status.isInserted() ? "invited" : "reinvited") + " to " + e.getGuild().getName() + " [" + e.getGuild().getId() + "]");
                 } else {
                     System.out.println("ChatBridge has been invited to " + e.getGuild().getName() + " [" + e.getGuild().getId() + "], but the status failed to update");
                 }
-            } catch (SQLException | RuntimeException ex) {
+            } catch (RuntimeException ex) {
                 ex.printStackTrace();
             }
-
-            if (mysql != null && !mysql.getStatus().isClosed()) {
-                mysql.close();
-            }
         });
     }
 
@@ -50,27 +45,21 @@ public class GuildEvents extends ListenerAdapter {
         super.onGuildLeave(e);
 
         CompletableFuture.runAsync(() -> {
-            MySQL mysql = null;
             try {
-                mysql = new MySQL();
-                MySQL.Status status = mysql.setGuildStatus(e.getGuild().getId(), false);
+                MySQL.Status status = SettingsCache.get().setGuildStatus(e.getGuild().getId(), false);
 
                 if (ChatBridge.isDebug()) {
                     System.out.println("onGuildLeave: " + Arrays.toString(status.get()));
                 }
 
-                if (status.isUpdated() || status.isInserted()) {
+                if (!status.isFailed()) {
                     System.out.println("ChatBridge has been removed from " + e.getGuild().getName() + " [" + e.getGuild().getId() + "]");
                 } else {
                     System.out.println("ChatBridge has been removed from " + e.getGuild().getName() + " [" + e.getGuild().getId() + "], but status failed to update");
                 }
-            } catch (SQLException | RuntimeException ex) {
+            } catch (RuntimeException ex) {
                 ex.printStackTrace();
             }
-
-            if (mysql != null && !mysql.getStatus().isClosed()) {
-                mysql.close();
-            }
         });
     }
 
@@ -78,7 +67,9 @@ public class GuildEvents extends ListenerAdapter {
     public void onGuildReady(@NotNull GuildReadyEvent e) {
         super.onGuildReady(e);
 
-        this.readyGuilds.add(e.getGuild().getId());
+        synchronized (this.readyGuilds) {
+            this.readyGuilds.add(e.getGuild().getId());
+        }
         System.out.println("ChatBridge is ready for use in " + e.getGuild().getName() + " [" + e.getGuild().getId() + "]");
     }
 
@@ -86,8 +77,6 @@ public class GuildEvents extends ListenerAdapter {
     public void onReady(@NotNull ReadyEvent e) {
         super.onReady(e);
 
-        if (ChatBridge.isDev()) return;
-
         CompletableFuture.runAsync(() -> {
             final Set<String> finReadyGuilds;
             synchronized (this.readyGuilds) {
@@ -95,28 +84,12 @@ public class GuildEvents extends ListenerAdapter {
                 this.readyGuilds.clear();
             }
 
-            MySQL mysql = null;
             try {
-                mysql = new MySQL();
-                final Map<String, Boolean> registeredGuilds = mysql.getGuilds();
-
-                for (String guildId : registeredGuilds.keySet()) {
-                    boolean isReady = finReadyGuilds.contains(guildId);
-                    mysql.setGuildStatus(guildId, isReady);
-                }
-
-                for (String guildId : finReadyGuilds) {
-                    if (!registeredGuilds.containsKey(guildId)) {
-                        mysql.setGuildStatus(guildId, true);
-                    }
-                }
+                final Map<String, Boolean> changes = SettingsCache.get().reconcileGuilds(finReadyGuilds);
+                System.out.println("Reconciled guild statuses: " + changes.size() + " of " + finReadyGuilds.size() + " ready guilds changed or were registered");
             } catch (SQLException | RuntimeException ex) {
                 ex.printStackTrace();
             }
-
-            if (mysql != null && !mysql.getStatus().isClosed()) {
-                mysql.close();
-            }
         });
     }
 }
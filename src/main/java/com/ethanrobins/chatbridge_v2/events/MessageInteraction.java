@@ -2,6 +2,7 @@ package com.ethanrobins.chatbridge_v2.events;
 
 import com.ethanrobins.chatbridge_v2.*;
 import com.ethanrobins.chatbridge_v2.drivers.*;
+import com.ethanrobins.chatbridge_v2.exceptions.BudgetExceededException;
 import com.ethanrobins.chatbridge_v2.exceptions.EndUserError;
 import com.ethanrobins.chatbridge_v2.utils.Messages;
 import com.ethanrobins.chatbridge_v2.utils.RandomString;
@@ -11,6 +12,7 @@ import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.EmbedType;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.MessageContextInteractionEvent;
@@ -24,22 +26,25 @@ import net.dv8tion.jda.api.utils.messages.MessageEditBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 // TODO: (maybe) Add translations for link embeds
 public class MessageInteraction extends ListenerAdapter {
+    private static final Duration HOOK_LIFETIME = Duration.ofMinutes(15);
+    private static final Duration HOOK_EDIT_MARGIN = Duration.ofSeconds(30);
+
     @Override
     public void onMessageContextInteraction(@NotNull MessageContextInteractionEvent e) {
         super.onMessageContextInteraction(e);
 
         CompletableFuture.runAsync(() -> {
-            MySQL mysql = null;
             try {
-                mysql = new MySQL();
-                MySQL.Status status = mysql.updateLocale(e.getUser().getId(), e.getUserLocale());
+                MySQL.Status status = SettingsCache.get().updateLocale(e.getUser().getId(), e.getUserLocale());
 
                 User user = ChatBridge.getJda().retrieveUserById(e.getUser().getId()).complete();
                 if (user != null) {
@@ -60,12 +65,7 @@ public class MessageInteraction extends ListenerAdapter {
                         }
                     }
                 }
-
-                mysql.close();
-            } catch (SQLException | RuntimeException ex) {
-                if (mysql != null && !mysql.getStatus().isClosed()) {
-                    mysql.close();
-                }
+            } catch (RuntimeException ex) {
                 ex.printStackTrace();
             }
 
@@ -181,33 +181,68 @@ public class MessageInteraction extends ListenerAdapter {
                 embeds.removeIf(embed -> embed.getType() != EmbedType.RICH);
                 
                 SafetyLevel safetyLevel;
-                if (isPrivate) {
-                    MySQL sql = new MySQL();
-                    safetyLevel = sql.getSafetyLevel(true, event.getUser().getId());
-                    sql.close();
+                if (isPrivate || !event.isFromGuild()) {
+                    safetyLevel = SettingsCache.get().getSafetyLevel(true, event.getUser().getId());
                 } else {
-                    if (event.isFromGuild()) {
-                        MySQL sql = new MySQL();
-                        safetyLevel = sql.getSafetyLevel(false, Objects.requireNonNull(event.getGuild()).getId());
-                        sql.close();
-                    } else {
-                        MySQL sql = new MySQL();
-                        safetyLevel = sql.getSafetyLevel(true, event.getUser().getId());
-                        sql.close();
-                    }
+                    safetyLevel = SettingsCache.get().getSafetyLevel(false, Objects.requireNonNull(event.getGuild()).getId());
                 }
 
                 if (embeds.isEmpty()) {
                     final ReplyGroup rg = new ReplyGroup(event);
 
-                    Request request = new Request(new Request.Prompt(PromptType.MESSAGE.getId(), PromptType.MESSAGE.getVersion(), event.getUserLocale().getLocale(), event.getTarget().getContentRaw()));
+                    Request.Prompt prompt = new Request.Prompt(PromptType.MESSAGE.getId(), PromptType.MESSAGE.getVersion(), event.getUserLocale().getLocale(), event.getTarget().getContentRaw());
+                    Request request = new Request(selectVariants(prompt, PromptType.MESSAGE_SINGLE, safetyLevel))
+                            .setDeadline(getHookDeadline(event))
+                            .setOrigin(event.getGuild() != null ? event.getGuild().getId() : null, event.getUser().getId());
                     rg.addRequest(request);
-                    request.queue().thenAccept(response -> {
+                    CompletableFuture<Response> translation;
+                    if (TranslationClient.get().isStreaming()) {
+                        translation = request.stream(partial -> {
+                            String text = partial.getBySafetyLevel(safetyLevel);
+                            if (partial.hasHeader() && text != null && !text.isBlank()) {
+                                rg.setPartialMessage(getCaption(event.getTarget().getJumpUrl(), partial.getSourceTag(), partial.getSourceLang(), partial.getTargetTag(), partial.getTargetLang(), text + " …"));
+                            }
+                        });
+                    } else {
+                        translation = request.queue();
+                    }
+                    translation.thenAccept(response -> {
                         Response.Data responseData = Objects.requireNonNull(Objects.requireNonNull(response.getOutput()).getContent()).getData();
 
-                        if (responseData.getTarget() instanceof Response.Data.MessageTarget tgt) {
+                        Response.Data.Target<?> tgt = responseData.getTarget();
+                        if (tgt.getBySafetyLevel(safetyLevel) instanceof String text) {
+                            Response.Data.Source src = responseData.getSource();
+                            rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, text));
+                        } else {
+                            System.err.println("Unexpected target type: " + responseData.getTarget().getClass().getName());
+                        }
+                    }).exceptionally(ex -> {
+                        ex.printStackTrace();
+                        EndUserError err = buildEndUserError((Exception) ex);
+                        event.getHook().setEphemeral(true).editOriginal(err.getLocaleMessages().get(event.getUserLocale())).queue();
+                        return null;
+                    });
+                } else if (embeds.size() > 1 && PromptType.EMBEDS.isAvailable()) {
+                    final ReplyGroup rg = new ReplyGroup(event, embeds.size());
+
+                    Request request = new Request(new Request.Prompt(PromptType.EMBEDS.getId(), PromptType.EMBEDS.getVersion(), event.getUserLocale().getLocale(), event.getTarget().getContentRaw(), embeds))
+                            .setDeadline(getHookDeadline(event))
+                            .setOrigin(event.getGuild() != null ? event.getGuild().getId() : null, event.getUser().getId());
+                    rg.addRequest(request);
+                    request.queue().thenAccept(response -> {
+                        Response.Data responseData = Objects.requireNonNull(Objects.requireNonNull(response.getOutput()).getContent()).getData();
+                        if (responseData.getTarget() instanceof Response.Data.EmbedsTarget tgt) {
                             Response.Data.Source src = responseData.getSource();
-                            rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, tgt.getBySafetyLevel(safetyLevel)));
+                            Response.Data.EmbedsContent content = tgt.getBySafetyLevel(safetyLevel);
+                            if (content.getEmbeds().size() != embeds.size()) {
+                                System.err.println("Expected " + embeds.size() + " translated embeds but got " + content.getEmbeds().size() + ". Untranslated embeds are kept as-is.");
+                            }
+
+                            rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, content.getMessage()));
+                            for (int i = 0; i < embeds.size(); i++) {
+                                MessageEmbed origEmbed = embeds.get(i);
+                                rg.addEmbed(i < content.getEmbeds().size() ? rebuildEmbed(origEmbed, content.getEmbeds().get(i)) : origEmbed);
+                            }
                         } else {
                             System.err.println("Unexpected target type: " + responseData.getTarget().getClass().getName());
                         }
@@ -221,39 +256,19 @@ public class MessageInteraction extends ListenerAdapter {
                     final ReplyGroup rg = new ReplyGroup(event, embeds.size());
                     boolean isFirst = true;
                     for (MessageEmbed origEmbed : embeds) {
-                        Request request = new Request(new Request.Prompt(PromptType.EMBED.getId(), PromptType.EMBED.getVersion(), event.getUserLocale().getLocale(), isFirst ? event.getTarget().getContentRaw() : null, origEmbed.getTitle(), origEmbed.getAuthor(), origEmbed.getDescription(), origEmbed.getFooter(), origEmbed.getFields()));
+                        Request.Prompt prompt = new Request.Prompt(PromptType.EMBED.getId(), PromptType.EMBED.getVersion(), event.getUserLocale().getLocale(), isFirst ? event.getTarget().getContentRaw() : null, origEmbed.getTitle(), origEmbed.getAuthor(), origEmbed.getDescription(), origEmbed.getFooter(), origEmbed.getFields());
+                        Request request = new Request(selectVariants(prompt, PromptType.EMBED_SINGLE, safetyLevel))
+                                .setDeadline(getHookDeadline(event))
+                                .setOrigin(event.getGuild() != null ? event.getGuild().getId() : null, event.getUser().getId());
                         rg.addRequest(request);
                         isFirst = false;
                         request.queue().thenAccept(response -> {
-                            EmbedBuilder e = new EmbedBuilder();
-                            e.copyFrom(origEmbed);
                             Response.Data responseData = Objects.requireNonNull(Objects.requireNonNull(response.getOutput()).getContent()).getData();
-                            if (responseData.getTarget() instanceof Response.Data.EmbedTarget tgt) {
+                            Response.Data.Target<?> tgt = responseData.getTarget();
+                            if (tgt.getBySafetyLevel(safetyLevel) instanceof Response.Data.EmbedContent content) {
                                 Response.Data.Source src = responseData.getSource();
-                                e.setTitle(tgt.getBySafetyLevel(safetyLevel).getTitle());
-                                e.setAuthor(tgt.getBySafetyLevel(safetyLevel).getAuthor(), origEmbed.getAuthor() != null ? origEmbed.getAuthor().getUrl() : null, origEmbed.getAuthor() != null ? origEmbed.getAuthor().getIconUrl() : null);
-                                e.setDescription(tgt.getBySafetyLevel(safetyLevel).getDescription());
-                                e.setFooter(tgt.getBySafetyLevel(safetyLevel).getFooter(), origEmbed.getFooter() != null ? origEmbed.getFooter().getIconUrl() : null);
-                                e.clearFields();
-                                if (tgt.getBySafetyLevel(safetyLevel).getFields() != null && !tgt.getBySafetyLevel(safetyLevel).getFields().isEmpty()) {
-                                    for (int i = 0; i < tgt.getBySafetyLevel(safetyLevel).getFields().size(); i++) {
-                                        Response.Data.EmbedContent.Field f = tgt.getBySafetyLevel(safetyLevel).getFields().get(i);
-                                        if (f == null) continue;
-                                        String name = f.getName();
-                                        if (name == null) name = "";
-                                        String value = f.getValue();
-                                        if (value == null) value = "";
-
-                                        e.addField(name, value, origEmbed.getFields().get(i).isInline());
-                                    }
-                                }
-
-                                if (tgt.getBySafetyLevel(safetyLevel).getMessage() != null) {
-                                    rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, tgt.getBySafetyLevel(safetyLevel).getMessage()));
-                                } else {
-                                    rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, null));
-                                }
-                                rg.addEmbed(e.build());
+                                rg.setMessage(getCaption(event.getTarget().getJumpUrl(), src, tgt, content.getMessage()));
+                                rg.addEmbed(rebuildEmbed(origEmbed, content));
                             } else {
                                 System.err.println("Unexpected target type: " + responseData.getTarget().getClass().getName());
                             }
@@ -273,9 +288,54 @@ public class MessageInteraction extends ListenerAdapter {
         });
     }
 
+    /**
+     * Rebuilds an embed with translated text, keeping everything else of the original: colour, images, URLs,
+     * the author's URL and icon, the footer icon and the inline flag of each field.
+     * @param origEmbed The original embed.
+     * @param content The translated text of {@code origEmbed}.
+     * @return The translated {@link MessageEmbed}.
+     */
+    public static MessageEmbed rebuildEmbed(@NotNull MessageEmbed origEmbed, @NotNull Response.Data.EmbedContent content) {
+        EmbedBuilder e = new EmbedBuilder();
+        e.copyFrom(origEmbed);
+        e.setTitle(content.getTitle(), origEmbed.getUrl());
+        e.setAuthor(content.getAuthor(), origEmbed.getAuthor() != null ? origEmbed.getAuthor().getUrl() : null, origEmbed.getAuthor() != null ? origEmbed.getAuthor().getIconUrl() : null);
+        e.setDescription(content.getDescription());
+        e.setFooter(content.getFooter(), origEmbed.getFooter() != null ? origEmbed.getFooter().getIconUrl() : null);
+        e.clearFields();
+        if (content.getFields() != null && !content.getFields().isEmpty()) {
+            for (int i = 0; i < content.getFields().size(); i++) {
+                Response.Data.EmbedContent.Field f = content.getFields().get(i);
+                if (f == null) continue;
+                String name = f.getName();
+                if (name == null) name = "";
+                String value = f.getValue();
+                if (value == null) value = "";
+
+                e.addField(name, value, i < origEmbed.getFields().size() && origEmbed.getFields().get(i).isInline());
+            }
+        }
+        return e.build();
+    }
+
+    /**
+     * The time after which the interaction's hook can no longer be edited, minus a margin for the final edit itself.
+     * @param event The interaction.
+     * @return The latest time a translation for {@code event} is still useful.
+     */
+    public static Instant getHookDeadline(@NotNull MessageContextInteractionEvent event) {
+        return event.getTimeCreated().toInstant().plus(HOOK_LIFETIME).minus(HOOK_EDIT_MARGIN);
+    }
+
     public static EndUserError buildEndUserError(Exception ex) {
         Map<DiscordLocale, String> localeMessages = new HashMap<>();
 
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BudgetExceededException) {
+                return buildBudgetError(ex);
+            }
+        }
+
         String discordInvite = ChatBridge.getSecret().get("discord", "discordInvite");
         localeMessages.put(DiscordLocale.BULGARIAN, "Неуспех при превеждането на съобщението. Моля, докладвайте този инцидент на официалния сървър в Discord за ChatBridge: " + discordInvite);
         localeMessages.put(DiscordLocale.CHINESE_CHINA, "消息翻译失败。请将此事件报告至官方的 ChatBridge Discord 服务器：" + discordInvite);
@@ -313,18 +373,90 @@ public class MessageInteraction extends ListenerAdapter {
         return new EndUserError(ex, localeMessages);
     }
 
+    /**
+     * Builds the {@link EndUserError} shown when a guild has used up its translation budget.
+     * @param ex The exception, caused by a {@link BudgetExceededException}.
+     * @return The {@link EndUserError}.
+     * @see UsageLedger
+     */
+    public static EndUserError buildBudgetError(Exception ex) {
+        Map<DiscordLocale, String> localeMessages = new HashMap<>();
+
+        localeMessages.put(DiscordLocale.BULGARIAN, "Този сървър достигна лимита си за преводи. Моля, опитайте отново по-късно.");
+        localeMessages.put(DiscordLocale.CHINESE_CHINA, "此服务器已达到翻译限额。请稍后再试。");
+        localeMessages.put(DiscordLocale.CHINESE_TAIWAN, "此伺服器已達到翻譯限額。請稍後再試。");
+        localeMessages.put(DiscordLocale.CROATIAN, "Ovaj poslužitelj je dosegao ograničenje prijevoda. Molimo pokušajte ponovno kasnije.");
+        localeMessages.put(DiscordLocale.CZECH, "Tento server dosáhl limitu překladů. Zkuste to prosím později.");
+        localeMessages.put(DiscordLocale.DANISH, "Denne server har nået sin grænse for oversættelser. Prøv venligst igen senere.");
+        localeMessages.put(DiscordLocale.DUTCH, "Deze server heeft zijn vertaallimiet bereikt. Probeer het later opnieuw.");
+        localeMessages.put(DiscordLocale.ENGLISH_UK, "This server has reached its translation limit. Please try again later.");
+        localeMessages.put(DiscordLocale.ENGLISH_US, "This server has reached its translation limit. Please try again later.");
+        localeMessages.put(DiscordLocale.FINNISH, "Tämä palvelin on saavuttanut käännösrajansa. Yritä myöhemmin uudelleen.");
+        localeMessages.put(DiscordLocale.FRENCH, "Ce serveur a atteint sa limite de traductions. Veuillez réessayer plus tard.");
+        localeMessages.put(DiscordLocale.GERMAN, "Dieser Server hat sein Übersetzungslimit erreicht. Bitte versuchen Sie es später erneut.");
+        localeMessages.put(DiscordLocale.GREEK, "Αυτός ο διακομιστής έχει φτάσει το όριο μεταφράσεών του. Παρακαλώ δοκιμάστε ξανά αργότερα.");
+        localeMessages.put(DiscordLocale.HINDI, "इस सर्वर की अनुवाद सीमा पूरी हो गई है। कृपया बाद में पुनः प्रयास करें।");
+        localeMessages.put(DiscordLocale.HUNGARIAN, "Ez a szerver elérte a fordítási korlátját. Kérjük, próbálja újra később.");
+        localeMessages.put(DiscordLocale.INDONESIAN, "Server ini telah mencapai batas terjemahannya. Silakan coba lagi nanti.");
+        localeMessages.put(DiscordLocale.ITALIAN, "Questo server ha raggiunto il limite di traduzioni. Riprova più tardi.");
+        localeMessages.put(DiscordLocale.JAPANESE, "このサーバーは翻訳の上限に達しました。しばらくしてからもう一度お試しください。");
+        localeMessages.put(DiscordLocale.KOREAN, "이 서버의 번역 한도에 도달했습니다. 나중에 다시 시도해 주세요.");
+        localeMessages.put(DiscordLocale.LITHUANIAN, "Šis serveris pasiekė vertimų limitą. Bandykite dar kartą vėliau.");
+        localeMessages.put(DiscordLocale.NORWEGIAN, "Denne serveren har nådd grensen for oversettelser. Vennligst prøv igjen senere.");
+        localeMessages.put(DiscordLocale.POLISH, "Ten serwer osiągnął limit tłumaczeń. Spróbuj ponownie później.");
+        localeMessages.put(DiscordLocale.PORTUGUESE_BRAZILIAN, "Este servidor atingiu seu limite de traduções. Por favor, tente novamente mais tarde.");
+        localeMessages.put(DiscordLocale.ROMANIAN_ROMANIA, "Acest server a atins limita de traduceri. Vă rugăm să încercați din nou mai târziu.");
+        localeMessages.put(DiscordLocale.RUSSIAN, "Этот сервер достиг лимита переводов. Пожалуйста, попробуйте позже.");
+        localeMessages.put(DiscordLocale.SPANISH, "Este servidor ha alcanzado su límite de traducciones. Inténtelo de nuevo más tarde.");
+        localeMessages.put(DiscordLocale.SPANISH_LATAM, "Este servidor alcanzó su límite de traducciones. Por favor, inténtelo de nuevo más tarde.");
+        localeMessages.put(DiscordLocale.SWEDISH, "Den här servern har nått sin gräns för översättningar. Försök igen senare.");
+        localeMessages.put(DiscordLocale.THAI, "เซิร์ฟเวอร์นี้ใช้การแปลครบโควตาแล้ว โปรดลองอีกครั้งในภายหลัง");
+        localeMessages.put(DiscordLocale.TURKISH, "Bu sunucu çeviri sınırına ulaştı. Lütfen daha sonra tekrar deneyin.");
+        localeMessages.put(DiscordLocale.UKRAINIAN, "Цей сервер досяг ліміту перекладів. Будь ласка, спробуйте пізніше.");
+        localeMessages.put(DiscordLocale.VIETNAMESE, "Máy chủ này đã đạt giới hạn dịch. Vui lòng thử lại sau.");
+
+        return new EndUserError(ex, localeMessages);
+    }
+
+    /**
+     * Chooses between the dual-variant prompt and its single-variant counterpart for one request.
+     * <p>
+     * The single-variant prompt only generates the text for {@code safetyLevel}, roughly halving the output tokens.
+     * The dual-variant prompt is kept when it is already cached, since it then costs nothing, or when no
+     * single-variant prompt is configured.
+     * </p>
+     * @param prompt The dual-variant prompt.
+     * @param single The single-variant {@link PromptType} to use instead.
+     * @param safetyLevel The {@link SafetyLevel} that will be shown.
+     * @return The {@link Request.Prompt} to send.
+     */
+    public static Request.Prompt selectVariants(@NotNull Request.Prompt prompt, @NotNull PromptType single, @NotNull SafetyLevel safetyLevel) {
+        if (!single.isAvailable() || TranslationCache.get().contains(TranslationKey.of(prompt))) {
+            return prompt;
+        }
+        return prompt.singleVariant(single, safetyLevel);
+    }
+
     public static String getCaption(@Nullable String jumpUrl, @NotNull Response.Data.Source src, @NotNull Response.Data.Target<?> tgt, @Nullable String msg) {
+        return getCaption(jumpUrl, src.getTag(), src.getLang(), tgt.getTag(), tgt.getLang(), msg);
+    }
+    public static String getCaption(@Nullable String jumpUrl, @NotNull String srcTag, @NotNull String srcLang, @NotNull String tgtTag, @NotNull String tgtLang, @Nullable String msg) {
         return "%jumpUrl%**(%srcTag%) %srcLang% → (%tgtTag%) %tgtLang%**%message%"
                 .replace("%jumpUrl%", jumpUrl != null ? jumpUrl + ": " : "")
-                .replace("%srcTag%", src.getTag())
-                .replace("%srcLang%", src.getLang())
-                .replace("%tgtTag%", tgt.getTag())
-                .replace("%tgtLang%", tgt.getLang())
+                .replace("%srcTag%", srcTag)
+                .replace("%srcLang%", srcLang)
+                .replace("%tgtTag%", tgtTag)
+                .replace("%tgtLang%", tgtLang)
                 .replace("%message%", msg != null ? "\n" + msg : "");
     }
 
     @Getter
     public static class ReplyGroup {
+        /**
+         * The minimum time between two progressive edits of the reply, to stay well within Discord's rate limits.
+         */
+        private static final long PARTIAL_EDIT_INTERVAL_MILLIS = 1000;
+
         private final @NotNull String id = RandomString.generate(20, RandomString.Content.LOWERCASE, RandomString.Content.UPPERCASE, RandomString.Content.NUMBERS);
         private @NotNull final MessageContextInteractionEvent event;
         private @Nullable String message = null;
@@ -335,6 +467,11 @@ public class MessageInteraction extends ListenerAdapter {
         private final int waitCount;
         private int finishCount = 0;
 
+        private boolean completed = false;
+        private long lastPartialEdit = 0;
+        private @Nullable String pendingPartial = null;
+        private boolean partialScheduled = false;
+
         public ReplyGroup(@NotNull MessageContextInteractionEvent event, int waitCount) {
             this.event = event;
             this.messageOnly = false;
@@ -355,6 +492,37 @@ public class MessageInteraction extends ListenerAdapter {
                 complete();
             }
         }
+        /**
+         * Shows a translation that is still being generated.
+         * <br>The reply is edited at most once per {@link #PARTIAL_EDIT_INTERVAL_MILLIS}; updates in between are
+         * collapsed into a single trailing edit. Nothing is edited once the reply has been {@linkplain #complete() completed}.
+         * @param message The message generated so far.
+         */
+        public synchronized void setPartialMessage(@NotNull String message) {
+            if (this.completed) return;
+            this.pendingPartial = message.length() > Message.MAX_CONTENT_LENGTH ? message.substring(0, Message.MAX_CONTENT_LENGTH - 1) + "…" : message;
+
+            long wait = this.lastPartialEdit + PARTIAL_EDIT_INTERVAL_MILLIS - System.currentTimeMillis();
+            if (wait <= 0) {
+                flushPartial();
+            } else if (!this.partialScheduled) {
+                this.partialScheduled = true;
+                CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS).execute(() -> {
+                    synchronized (this) {
+                        this.partialScheduled = false;
+                        flushPartial();
+                    }
+                });
+            }
+        }
+
+        private void flushPartial() {
+            if (this.completed || this.pendingPartial == null) return;
+            this.event.getHook().editOriginal(this.pendingPartial).queue();
+            this.pendingPartial = null;
+            this.lastPartialEdit = System.currentTimeMillis();
+        }
+
         public void addRequest(@NotNull Request request) {
             this.requestData.add(request);
         }
@@ -368,7 +536,8 @@ public class MessageInteraction extends ListenerAdapter {
             }
         }
 
-        public void complete() {
+        public synchronized void complete() {
+            this.completed = true;
             InteractionHook hook = this.event.getHook();
 
             String reportLink = "https://chatbridge.app/report?id=" + this.id;
@@ -21,10 +21,8 @@ public class MessageReceived extends ListenerAdapter {
 
         if (!e.getAuthor().isBot() && e.getChannelType() == ChannelType.PRIVATE) {
             try {
-                MySQL mysql = new MySQL();
-                DiscordLocale locale = mysql.getLocale(e.getAuthor().getId(), true);
+                DiscordLocale locale = SettingsCache.get().getLocale(e.getAuthor().getId());
                 System.out.println(locale);
-                mysql.close();
                 if (locale == null) {
                     MessageEmbed embed = Messages.firstPrivateMessageUnregistered(e);
 
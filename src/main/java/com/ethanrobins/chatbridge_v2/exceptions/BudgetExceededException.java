@@ -0,0 +1,16 @@
+package com.ethanrobins.chatbridge_v2.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a guild has used up its translation token budget and a request is refused before it is sent.
+ */
+@Getter
+public class BudgetExceededException extends RuntimeException {
+    private final String guildId;
+
+    public BudgetExceededException(String guildId, String message) {
+        super(message);
+        this.guildId = guildId;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ethanrobins.chatbridge_v2;
+
+import com.ethanrobins.chatbridge_v2.drivers.MockResponsesServer;
+import com.ethanrobins.chatbridge_v2.drivers.TranslationClient;
+import org.ini4j.Ini;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Runs {@link ChatBridge} in development mode with every translation sent to a {@link MockResponsesServer} started
+ * in-process, so the translation path can be exercised without spending API quota.
+ * <br>Started with {@code gradle runMock}. Arguments are passed on to {@link ChatBridge#main(String[])}.
+ */
+public class MockChatBridge {
+    public static void main(String[] args) throws IOException {
+        URL resource = MockChatBridge.class.getClassLoader().getResource("secret.ini");
+        if (resource == null) {
+            throw new RuntimeException("Secret file not found!");
+        }
+        Ini secret = new Ini(resource);
+
+        MockResponsesServer mock = MockResponsesServer.fromSecret(secret).start();
+        TranslationClient.set(TranslationClient.fromSecret(secret, mock.getUri()));
+        System.out.println("Running with a mock Responses API at " + mock.getUri() + "! No API quota is used!");
+
+        String[] devArgs = Arrays.copyOf(args, args.length + 1);
+        devArgs[args.length] = "--dev";
+        ChatBridge.main(devArgs);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+    @Test
+    void parsesSingleUnits() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), AdmissionController.parseDurationNanos("20ms"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), AdmissionController.parseDurationNanos("1s"));
+        assertEquals(TimeUnit.MINUTES.toNanos(6), AdmissionController.parseDurationNanos("6m"));
+        assertEquals(TimeUnit.HOURS.toNanos(1), AdmissionController.parseDurationNanos("1h"));
+    }
+
+    @Test
+    void parsesCompoundDurations() {
+        assertEquals(TimeUnit.MINUTES.toNanos(6), AdmissionController.parseDurationNanos("6m0s"));
+        assertEquals(TimeUnit.SECONDS.toNanos(3723), AdmissionController.parseDurationNanos("1h2m3s"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), AdmissionController.parseDurationNanos("1s500ms"));
+    }
+
+    @Test
+    void parsesFractions() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), AdmissionController.parseDurationNanos("1.5s"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(17_450), AdmissionController.parseDurationNanos(" 17.45s "));
+    }
+
+    @Test
+    void minutesAreNotMistakenForMilliseconds() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), AdmissionController.parseDurationNanos("2ms"));
+        assertEquals(TimeUnit.MINUTES.toNanos(2), AdmissionController.parseDurationNanos("2m"));
+    }
+
+    @Test
+    void unparseableIsZero() {
+        assertEquals(0, AdmissionController.parseDurationNanos(""));
+        assertEquals(0, AdmissionController.parseDurationNanos("soon"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private static final StubDriver driver = new StubDriver();
+
+    @BeforeAll
+    static void register() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    static void deregister() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Test
+    void recentlyReturnedConnectionsAreNotValidated() throws Exception {
+        try (ConnectionPool pool = newPool()) {
+            driver.validations.set(0);
+            pool.borrow().close();
+            pool.borrow().close();
+            pool.borrow().close();
+            assertEquals(0, driver.validations.get());
+            assertEquals(1, pool.getStats().created());
+        }
+    }
+
+    @Test
+    void connectionsIdleForLongerAreValidated() throws Exception {
+        try (ConnectionPool pool = newPool()) {
+            driver.validations.set(0);
+            pool.borrow().close();
+            Thread.sleep(600);
+            pool.borrow().close();
+            assertEquals(1, driver.validations.get());
+            assertEquals(1, pool.getStats().created());
+        }
+    }
+
+    @Test
+    void invalidIdleConnectionsAreReplaced() throws Exception {
+        try (ConnectionPool pool = newPool()) {
+            pool.borrow().close();
+            Thread.sleep(600);
+            driver.valid.set(false);
+            try {
+                pool.borrow().close();
+            } finally {
+                driver.valid.set(true);
+            }
+            assertEquals(2, pool.getStats().created());
+            assertEquals(1, pool.getStats().retired());
+        }
+    }
+
+    private static ConnectionPool newPool() {
+        return new ConnectionPool("jdbc:stub:pool", null, null, 2, Duration.ofSeconds(1), Duration.ofMinutes(30), Duration.ofMinutes(10), Duration.ZERO);
+    }
+
+    /**
+     * Hands out connections that only answer {@link Connection#isValid(int)} and the calls the pool makes on return.
+     */
+    private static final class StubDriver implements Driver {
+        private final AtomicInteger validations = new AtomicInteger();
+        private final AtomicBoolean valid = new AtomicBoolean(true);
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, (proxy, method, args) -> switch (method.getName()) {
+                case "isValid" -> {
+                    this.validations.incrementAndGet();
+                    yield this.valid.get() && !closed.get();
+                }
+                case "isClosed" -> closed.get();
+                case "close" -> {
+                    closed.set(true);
+                    yield null;
+                }
+                case "getAutoCommit" -> true;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.Model;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import org.ini4j.Ini;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * <b>Local stand-in for the OpenAI Responses endpoint.</b>
+ * <p>
+ * Answers the calls {@link Request#queue()} makes with schema-valid Responses API payloads, replaying assistant
+ * outputs from {@code training_data/training.jsonl}, so the translation path can be load-tested and measured
+ * without spending API quota. Outputs are adapted to the prompt that was sent: the requested locale, every target of
+ * a {@link PromptType#MESSAGES} prompt, every embed of a {@link PromptType#EMBEDS} prompt and the {@code lvl} of a
+ * single-variant prompt.
+ * </p>
+ *
+ * <h2>Simulation:</h2>
+ * <ul>
+ *     <li><b>Latency:</b> every response is delayed by a sample of the configured distribution.</li>
+ *     <li><b>Faults:</b> a configurable share of calls fails with {@code 429}, {@code 500} or {@code 503}.</li>
+ *     <li><b>Rate limits:</b> request and token buckets are refilled every minute and reported in
+ *     {@code x-ratelimit-*} headers; an empty bucket answers {@code 429} with {@code retry-after}.</li>
+ *     <li><b>Streaming:</b> a request with {@code "stream": true} receives server-sent events, with the output text
+ *     split into deltas.</li>
+ * </ul>
+ *
+ * <h2>Configuration ({@code secret.ini}):</h2>
+ * <pre>
+ * [mock]
+ * port = 0                   ; 0 picks a free port
+ * latency = lognormal 600 0.4 ; "fixed &lt;ms&gt;", "uniform &lt;min&gt; &lt;max&gt;" or "lognormal &lt;median&gt; &lt;sigma&gt;"
+ * error429 = 0.0             ; share of calls, 0 to 1
+ * error500 = 0.0
+ * error503 = 0.0
+ * requestsPerMinute = 5000
+ * tokensPerMinute = 2000000
+ * streamChunkChars = 24
+ * streamChunkDelay = 20      ; milliseconds
+ * seed = 42                  ; optional, for reproducible runs
+ * </pre>
+ * <p>
+ * Run {@link com.ethanrobins.chatbridge_v2.MockChatBridge} ({@code gradle runMock}) to send all translations to a
+ * server started in-process, or run {@link #main(String[])} to start one on its own.
+ * </p>
+ */
+public class MockResponsesServer implements AutoCloseable {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String TRAINING_DATA = "/training_data/training.jsonl";
+
+    private final @NotNull HttpServer server;
+    private final @NotNull ExecutorService executor;
+    private final @NotNull Latency latency;
+    private final double error429;
+    private final double error500;
+    private final double error503;
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+    private final int streamChunkChars;
+    private final long streamChunkDelay;
+    private final SplittableRandom random;
+
+    private final List<Sample> messages = new ArrayList<>();
+    private final List<Sample> embeds = new ArrayList<>();
+
+    private final AtomicLong ids = new AtomicLong();
+    private long windowStart = 0;
+    private long requestsLeft;
+    private long tokensLeft;
+
+    /**
+     * The number of calls answered, including injected failures.
+     */
+    @Getter
+    private final AtomicLong served = new AtomicLong();
+
+    /**
+     * Creates a server bound to the loopback address. It does not accept calls until {@link #start()} is called.
+     * @param port The port, or {@code 0} to pick a free one.
+     * @param latency The latency added to every call.
+     * @param error429 The share of calls answered with {@code 429}.
+     * @param error500 The share of calls answered with {@code 500}.
+     * @param error503 The share of calls answered with {@code 503}.
+     * @param requestsPerMinute The simulated request rate limit.
+     * @param tokensPerMinute The simulated token rate limit.
+     * @param streamChunkChars The length of each streamed delta.
+     * @param streamChunkDelay The delay between streamed deltas, in milliseconds.
+     * @param seed The random seed, or {@code null} for a random one.
+     * @throws IOException If the server cannot be bound or the training data cannot be read.
+     */
+    public MockResponsesServer(int port, @NotNull Latency latency, double error429, double error500, double error503, long requestsPerMinute, long tokensPerMinute, int streamChunkChars, long streamChunkDelay, @Nullable Long seed) throws IOException {
+        this.latency = latency;
+        this.error429 = error429;
+        this.error500 = error500;
+        this.error503 = error503;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.streamChunkChars = Math.max(1, streamChunkChars);
+        this.streamChunkDelay = Math.max(0, streamChunkDelay);
+        this.random = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+        this.requestsLeft = requestsPerMinute;
+        this.tokensLeft = tokensPerMinute;
+        loadSamples();
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/v1/responses", this::handle);
+    }
+
+    /**
+     * Builds a {@link MockResponsesServer} from the optional {@code [mock]} section of the given secret configuration.
+     * @param secret The secret configuration.
+     * @return A new, not yet started {@link MockResponsesServer}.
+     * @throws IOException If the server cannot be bound or the training data cannot be read.
+     */
+    public static @NotNull MockResponsesServer fromSecret(@Nullable Ini secret) throws IOException {
+        Map<String, String> section = secret != null && secret.get("mock") != null ? secret.get("mock") : Map.of();
+        try {
+            String seed = section.get("seed");
+            return new MockResponsesServer(
+                    Integer.parseInt(section.getOrDefault("port", "0").trim()),
+                    Latency.parse(section.getOrDefault("latency", "lognormal 600 0.4")),
+                    Double.parseDouble(section.getOrDefault("error429", "0").trim()),
+                    Double.parseDouble(section.getOrDefault("error500", "0").trim()),
+                    Double.parseDouble(section.getOrDefault("error503", "0").trim()),
+                    Long.parseLong(section.getOrDefault("requestsPerMinute", "5000").trim()),
+                    Long.parseLong(section.getOrDefault("tokensPerMinute", "2000000").trim()),
+                    Integer.parseInt(section.getOrDefault("streamChunkChars", "24").trim()),
+                    Long.parseLong(section.getOrDefault("streamChunkDelay", "20").trim()),
+                    seed != null && !seed.isBlank() ? Long.parseLong(seed.trim()) : null
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Invalid [mock] configuration in secret.ini: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Starts a server from {@code secret.ini} in the working directory, if present, and runs until the process is stopped.
+     * @param args An optional port, overriding {@code [mock] port}.
+     */
+    public static void main(String[] args) throws IOException {
+        java.io.File file = new java.io.File("secret.ini");
+        Ini secret = file.exists() ? new Ini(file) : null;
+        if (args.length > 0) {
+            if (secret == null) secret = new Ini();
+            secret.put("mock", "port", args[0]);
+        }
+        MockResponsesServer server = fromSecret(secret).start();
+        System.out.println("\u001B[36mmock\u001B[0m Responses API listening on " + server.getUri());
+    }
+
+    /**
+     * Starts accepting calls.
+     * @return This {@link MockResponsesServer}.
+     */
+    public @NotNull MockResponsesServer start() {
+        this.server.start();
+        return this;
+    }
+
+    /**
+     * @return The Responses endpoint of this server, to use as {@code [chatgpt] url}.
+     */
+    public @NotNull URI getUri() {
+        InetSocketAddress address = this.server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/v1/responses");
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        try (exchange) {
+            this.served.incrementAndGet();
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "invalid_request_error", "Only POST is supported");
+                return;
+            }
+
+            JsonNode request;
+            try (InputStream in = exchange.getRequestBody()) {
+                request = objectMapper.readTree(in);
+            } catch (IOException ex) {
+                sendError(exchange, 400, "invalid_request_error", "Could not parse the JSON body: " + ex.getMessage());
+                return;
+            }
+            JsonNode variables = request.path("prompt").path("variables");
+            if (!variables.isObject()) {
+                sendError(exchange, 400, "invalid_request_error", "Missing prompt.variables");
+                return;
+            }
+
+            int inputTokens = 600 + variables.toString().length() / 3;
+            sleep(this.latency.sample(this::nextDouble));
+
+            double roll = nextDouble();
+            if (roll < this.error429) {
+                exchange.getResponseHeaders().set("retry-after", "1");
+                sendError(exchange, 429, "rate_limit_exceeded", "Injected rate limit");
+                return;
+            } else if (roll < this.error429 + this.error500) {
+                sendError(exchange, 500, "server_error", "Injected server error");
+                return;
+            } else if (roll < this.error429 + this.error500 + this.error503) {
+                sendError(exchange, 503, "server_error", "Injected overload");
+                return;
+            }
+
+            String text = objectMapper.writeValueAsString(buildOutput(variables));
+            int outputTokens = text.length() / 3;
+            if (!takeBudget(exchange, inputTokens + outputTokens)) {
+                sendError(exchange, 429, "rate_limit_exceeded", "Simulated rate limit reached");
+                return;
+            }
+
+            ObjectNode response = buildResponse(request, text, inputTokens, outputTokens);
+            if (request.path("stream").asBoolean(false)) {
+                sendStream(exchange, response, text);
+            } else {
+                byte[] body = objectMapper.writeValueAsBytes(response);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Builds the assistant output for a prompt from the replayed samples.
+     */
+    private @NotNull ObjectNode buildOutput(@NotNull JsonNode variables) throws IOException {
+        String lvl = text(variables.path("lvl"), null);
+
+        if (variables.has("tgts")) {
+            Sample sample = pick(this.messages, null);
+            ObjectNode output = objectMapper.createObjectNode();
+            output.set("src", sample.output.get("src"));
+            ArrayNode targets = output.putArray("tgts");
+            for (JsonNode tag : objectMapper.readTree(text(variables.path("tgts"), "[]"))) {
+                ObjectNode target = pick(this.messages, tag.asText()).output.get("tgt").deepCopy();
+                target.put("tag", tag.asText());
+                targets.add(target);
+            }
+            return output;
+        }
+
+        String tgt = text(variables.path("tgt"), "en-US");
+        if (variables.has("embeds")) {
+            int count = Math.max(1, objectMapper.readTree(text(variables.path("embeds"), "[]")).size());
+            Sample sample = pick(this.embeds, tgt);
+            ObjectNode output = sample.output.deepCopy();
+            ObjectNode target = (ObjectNode) output.get("tgt");
+            target.put("tag", tgt);
+            for (String variant : List.of("e", "s")) {
+                ObjectNode content = (ObjectNode) target.get(variant);
+                ObjectNode combined = objectMapper.createObjectNode();
+                combined.set("msg", content.remove("msg"));
+                ArrayNode list = combined.putArray("embeds");
+                for (int i = 0; i < count; i++) list.add(content.deepCopy());
+                target.set(variant, combined);
+            }
+            return singleVariant(output, lvl);
+        }
+
+        ObjectNode output = pick(variables.has("title") ? this.embeds : this.messages, tgt).output.deepCopy();
+        ((ObjectNode) output.get("tgt")).put("tag", tgt);
+        return singleVariant(output, lvl);
+    }
+
+    private static @NotNull ObjectNode singleVariant(@NotNull ObjectNode output, @Nullable String lvl) {
+        if (lvl == null) return output;
+        ObjectNode target = (ObjectNode) output.get("tgt");
+        JsonNode variant = target.get(SafetyLevel.SAFE.getId().equals(lvl) ? "s" : "e");
+        target.remove(List.of("e", "s"));
+        target.put("lvl", lvl);
+        target.set("v", variant);
+        return output;
+    }
+
+    private @NotNull ObjectNode buildResponse(@NotNull JsonNode request, @NotNull String text, int inputTokens, int outputTokens) {
+        long id = this.ids.incrementAndGet();
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", "resp_mock_" + id);
+        response.put("object", "response");
+        response.put("created_at", System.currentTimeMillis() / 1000);
+        response.put("status", "completed");
+        response.put("background", false);
+        response.putNull("error");
+        response.put("model", text(request.path("model"), Model.getDefault().getId()));
+
+        ObjectNode message = response.putArray("output").addObject();
+        message.put("id", "msg_mock_" + id);
+        message.put("type", "message");
+        message.put("status", "completed");
+        message.put("role", "assistant");
+        ObjectNode content = message.putArray("content").addObject();
+        content.put("type", "output_text");
+        content.putArray("annotations");
+        content.put("text", text);
+
+        ObjectNode usage = response.putObject("usage");
+        usage.put("input_tokens", inputTokens);
+        usage.put("output_tokens", outputTokens);
+        usage.put("total_tokens", inputTokens + outputTokens);
+        return response;
+    }
+
+    private void sendStream(@NotNull HttpExchange exchange, @NotNull ObjectNode response, @NotNull String text) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+
+        ObjectNode created = objectMapper.createObjectNode();
+        created.put("type", "response.created");
+        writeEvent(out, created);
+        for (int i = 0; i < text.length(); i += this.streamChunkChars) {
+            sleep(this.streamChunkDelay);
+            ObjectNode delta = objectMapper.createObjectNode();
+            delta.put("type", "response.output_text.delta");
+            delta.put("delta", text.substring(i, Math.min(text.length(), i + this.streamChunkChars)));
+            writeEvent(out, delta);
+        }
+        ObjectNode completed = objectMapper.createObjectNode();
+        completed.put("type", "response.completed");
+        completed.set("response", response);
+        writeEvent(out, completed);
+    }
+
+    private static void writeEvent(@NotNull OutputStream out, @NotNull ObjectNode event) throws IOException {
+        out.write(("event: " + event.path("type").asText() + "\ndata: " + objectMapper.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendError(@NotNull HttpExchange exchange, int status, @NotNull String type, @NotNull String message) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        ObjectNode error = body.putObject("error");
+        error.put("message", message);
+        error.put("type", type);
+        error.putNull("param");
+        error.put("code", type);
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Takes one request and {@code tokens} from the simulated buckets and reports what is left.
+     * @return {@code false} if a bucket is empty.
+     */
+    private synchronized boolean takeBudget(@NotNull HttpExchange exchange, int tokens) {
+        long now = System.currentTimeMillis();
+        if (now - this.windowStart >= 60_000) {
+            this.windowStart = now;
+            this.requestsLeft = this.requestsPerMinute;
+            this.tokensLeft = this.tokensPerMinute;
+        }
+        long resetMillis = Math.max(0, this.windowStart + 60_000 - now);
+        boolean admitted = this.requestsLeft > 0 && this.tokensLeft >= tokens;
+        if (admitted) {
+            this.requestsLeft--;
+            this.tokensLeft -= tokens;
+        } else {
+            exchange.getResponseHeaders().set("retry-after", String.valueOf((resetMillis + 999) / 1000));
+        }
+
+        exchange.getResponseHeaders().set("x-ratelimit-limit-requests", String.valueOf(this.requestsPerMinute));
+        exchange.getResponseHeaders().set("x-ratelimit-limit-tokens", String.valueOf(this.tokensPerMinute));
+        exchange.getResponseHeaders().set("x-ratelimit-remaining-requests", String.valueOf(this.requestsLeft));
+        exchange.getResponseHeaders().set("x-ratelimit-remaining-tokens", String.valueOf(this.tokensLeft));
+        exchange.getResponseHeaders().set("x-ratelimit-reset-requests", resetMillis + "ms");
+        exchange.getResponseHeaders().set("x-ratelimit-reset-tokens", resetMillis + "ms");
+        return admitted;
+    }
+
+    private @NotNull Sample pick(@NotNull List<Sample> samples, @Nullable String tgt) {
+        if (tgt != null) {
+            List<Sample> matching = new ArrayList<>();
+            for (Sample s : samples) {
+                if (tgt.equalsIgnoreCase(s.tgt)) matching.add(s);
+            }
+            if (!matching.isEmpty()) return matching.get(nextInt(matching.size()));
+        }
+        return samples.get(nextInt(samples.size()));
+    }
+
+    private synchronized int nextInt(int bound) {
+        return this.random.nextInt(bound);
+    }
+
+    private synchronized double nextDouble() {
+        return this.random.nextDouble();
+    }
+
+    private void loadSamples() throws IOException {
+        InputStream in = MockResponsesServer.class.getResourceAsStream(TRAINING_DATA);
+        if (in == null) {
+            throw new IOException("Training data not found on the classpath: " + TRAINING_DATA);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String type = null;
+                JsonNode user = null;
+                JsonNode output = null;
+                for (Iterator<JsonNode> it = objectMapper.readTree(line).path("messages").elements(); it.hasNext(); ) {
+                    JsonNode message = it.next();
+                    switch (message.path("role").asText()) {
+                        case "system" -> type = message.path("content").asText();
+                        case "user" -> user = objectMapper.readTree(message.path("content").asText());
+                        case "assistant" -> output = objectMapper.readTree(message.path("content").asText());
+                        default -> {}
+                    }
+                }
+                // Skip samples the client could not decode either
+                if (output == null || !output.path("tgt").has("e") || !output.path("tgt").has("s")) continue;
+                if (output.path("tgt").path("e").isObject() && output.path("tgt").path("e").path("fields").isTextual()) continue;
+
+                Sample sample = new Sample(user != null ? text(user.path("tgt"), null) : null, (ObjectNode) output);
+                if (TranslateType.EMBED_V1.getSystemPrompt().equals(type)) {
+                    this.embeds.add(sample);
+                } else if (TranslateType.MESSAGE_V1.getSystemPrompt().equals(type)) {
+                    this.messages.add(sample);
+                }
+            }
+        }
+
+        if (this.messages.isEmpty() || this.embeds.isEmpty()) {
+            throw new IOException("Training data has no usable message or embed samples");
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The value of a string node, or {@code def} if the node is missing, {@code null} or not a string.
+     */
+    private static @Nullable String text(@NotNull JsonNode node, @Nullable String def) {
+        return node.isTextual() ? node.textValue() : def;
+    }
+
+    private record Sample(@Nullable String tgt, @NotNull ObjectNode output) {}
+
+    /**
+     * A latency distribution, in milliseconds.
+     * @param kind {@code fixed}, {@code uniform} or {@code lognormal}.
+     * @param a The fixed value, the minimum or the median.
+     * @param b Unused, the maximum or sigma.
+     */
+    public record Latency(@NotNull String kind, double a, double b) {
+        /**
+         * @param spec {@code "fixed <ms>"}, {@code "uniform <min> <max>"} or {@code "lognormal <median> <sigma>"}.
+         * @return The parsed {@link Latency}.
+         * @throws IllegalArgumentException If {@code spec} is not valid.
+         */
+        public static @NotNull Latency parse(@NotNull String spec) {
+            String[] parts = spec.trim().toLowerCase(Locale.ROOT).split("\\s+");
+            int expected = switch (parts[0]) {
+                case "fixed" -> 2;
+                case "uniform", "lognormal" -> 3;
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+            if (parts.length != expected) {
+                throw new IllegalArgumentException("Latency '" + spec + "' must have " + (expected - 1) + " parameter(s)");
+            }
+            return switch (parts[0]) {
+                case "fixed" -> new Latency("fixed", Double.parseDouble(parts[1]), 0);
+                case "uniform", "lognormal" -> new Latency(parts[0], Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                default -> throw new IllegalStateException();
+            };
+        }
+
+        long sample(@NotNull DoubleSupplier uniform) {
+            return switch (this.kind) {
+                case "uniform" -> (long) (this.a + uniform.getAsDouble() * (this.b - this.a));
+                case "lognormal" -> (long) (this.a * Math.exp(this.b * gaussian(uniform)));
+                default -> (long) this.a;
+            };
+        }
+
+        private static double gaussian(@NotNull DoubleSupplier uniform) {
+            double u = 1.0 - uniform.getAsDouble();
+            double v = uniform.getAsDouble();
+            return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+        }
+    }
+}
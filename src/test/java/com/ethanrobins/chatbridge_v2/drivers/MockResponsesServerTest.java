@@ -0,0 +1,44 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MockResponsesServerTest {
+    @Test
+    void parsesLatencies() {
+        assertEquals(new MockResponsesServer.Latency("fixed", 5, 0), MockResponsesServer.Latency.parse("fixed 5"));
+        assertEquals(new MockResponsesServer.Latency("uniform", 5, 10), MockResponsesServer.Latency.parse(" Uniform 5  10 "));
+        assertEquals(new MockResponsesServer.Latency("lognormal", 600, 0.4), MockResponsesServer.Latency.parse("lognormal 600 0.4"));
+    }
+
+    @Test
+    void rejectsIncompleteLatencies() {
+        for (String spec : List.of("fixed", "uniform 5", "lognormal", "fixed 1 2", "normal 5 1", "")) {
+            assertThrows(IllegalArgumentException.class, () -> MockResponsesServer.Latency.parse(spec), spec);
+        }
+    }
+
+    @Test
+    void answersWithADecodableTranslation() throws Exception {
+        MockResponsesServer.Latency none = new MockResponsesServer.Latency("fixed", 0, 0);
+        try (MockResponsesServer server = new MockResponsesServer(0, none, 0, 0, 0, 5000, 2_000_000, 24, 0, 42L).start();
+             HttpClient client = HttpClient.newHttpClient()) {
+            Request request = new Request(new Request.Prompt("pmpt_1", null, "fr", "Hello there"));
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(server.getUri())
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(RequestWriter.write(request)))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+
+            assertEquals(200, response.statusCode());
+            Response.Data data = ResponseDecoder.decode(response.body()).getOutput().getContent().getData();
+            assertNotNull(data);
+            assertEquals("fr", data.getTarget().getTag());
+            assertInstanceOf(Response.Data.MessageTarget.class, data.getTarget());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialTranslationTest {
+    private static final String COMPLETE = "{\"src\":{\"tag\":\"fr\",\"lang\":\"French\"},\"tgt\":{\"tag\":\"en-US\",\"lang\":\"English\",\"e\":\"Damn, it's hot\",\"s\":\"Wow, it's hot\"}}";
+
+    @Test
+    void parsesCompleteDocument() {
+        PartialTranslation partial = PartialTranslation.parse(COMPLETE);
+        assertTrue(partial.hasHeader());
+        assertEquals("fr", partial.getSourceTag());
+        assertEquals("English", partial.getTargetLang());
+        assertEquals("Damn, it's hot", partial.getBySafetyLevel(SafetyLevel.EXPLICIT));
+        assertEquals("Wow, it's hot", partial.getBySafetyLevel(SafetyLevel.SAFE));
+    }
+
+    @Test
+    void everyPrefixParses() {
+        for (int i = 0; i <= COMPLETE.length(); i++) {
+            PartialTranslation partial = PartialTranslation.parse(COMPLETE.substring(0, i));
+            String explicit = partial.getExplicit();
+            if (explicit != null) assertTrue("Damn, it's hot".startsWith(explicit), explicit);
+        }
+    }
+
+    @Test
+    void recoversStringBeingWritten() {
+        PartialTranslation partial = PartialTranslation.parse("{\"src\":{\"tag\":\"fr\",\"lang\":\"French\"},\"tgt\":{\"tag\":\"en-US\",\"lang\":\"English\",\"e\":\"Damn, it");
+        assertTrue(partial.hasHeader());
+        assertEquals("Damn, it", partial.getExplicit());
+        assertNull(partial.getSafe());
+    }
+
+    @Test
+    void truncatedMidEscape() {
+        assertEquals("line", PartialTranslation.parse("{\"tgt\":{\"e\":\"line\\").getExplicit());
+        assertEquals("line\nnext", PartialTranslation.parse("{\"tgt\":{\"e\":\"line\\nnext").getExplicit());
+        assertEquals("say \"hi", PartialTranslation.parse("{\"tgt\":{\"e\":\"say \\\"hi").getExplicit());
+    }
+
+    @Test
+    void truncatedMidUnicodeEscape() {
+        for (String cut : new String[]{ "\\", "\\u", "\\u0", "\\u00", "\\u00e" }) {
+            assertEquals("caf", PartialTranslation.parse("{\"tgt\":{\"e\":\"caf" + cut).getExplicit(), cut);
+        }
+        assertEquals("café", PartialTranslation.parse("{\"tgt\":{\"e\":\"caf\\u00e9").getExplicit());
+    }
+
+    @Test
+    void truncatedMidSurrogatePair() {
+        // U+1F600 is 😀
+        assertEquals("ok ", PartialTranslation.parse("{\"tgt\":{\"e\":\"ok \\uD83D").getExplicit());
+        assertEquals("ok ", PartialTranslation.parse("{\"tgt\":{\"e\":\"ok \\uD83D\\uDE").getExplicit());
+        assertEquals("ok 😀", PartialTranslation.parse("{\"tgt\":{\"e\":\"ok \\uD83D\\uDE00").getExplicit());
+        // A raw pair cut after its high surrogate
+        assertEquals("ok ", PartialTranslation.parse("{\"tgt\":{\"e\":\"ok \uD83D").getExplicit());
+    }
+
+    @Test
+    void skipsValuesInNestedArrays() {
+        PartialTranslation partial = PartialTranslation.parse("{\"notes\":[[\"a\",\"b\"],[\"c\"]],\"tgt\":{\"tag\":\"de\",\"e\":[\"x\"],\"s\":\"Hallo");
+        assertEquals("de", partial.getTargetTag());
+        assertNull(partial.getExplicit());
+        assertEquals("Hallo", partial.getSafe());
+    }
+
+    @Test
+    void singleVariantIsNeverShownAsSafeUnlessSafe() {
+        PartialTranslation explicit = PartialTranslation.parse("{\"tgt\":{\"lvl\":\"explicit\",\"v\":\"Damn");
+        assertEquals("Damn", explicit.getBySafetyLevel(SafetyLevel.EXPLICIT));
+        assertNull(explicit.getBySafetyLevel(SafetyLevel.SAFE));
+
+        PartialTranslation safe = PartialTranslation.parse("{\"tgt\":{\"lvl\":\"safe\",\"v\":\"Wow");
+        assertEquals("Wow", safe.getBySafetyLevel(SafetyLevel.SAFE));
+    }
+}
@@ -0,0 +1,37 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.ini4j.Ini;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptTypeTest {
+    @AfterEach
+    void reset() {
+        PromptType.init(new Ini());
+    }
+
+    @Test
+    void builtInIdsWithoutConfiguration() {
+        PromptType.init(new Ini());
+        assertTrue(PromptType.MESSAGE.isAvailable());
+        assertFalse(PromptType.EMBEDS.isAvailable());
+        assertThrows(IllegalStateException.class, PromptType.EMBEDS::getId);
+        assertSame(PromptType.MESSAGE, PromptType.fromId(PromptType.MESSAGE.getId()));
+        assertNull(PromptType.fromId("pmpt_unknown"));
+    }
+
+    @Test
+    void configuredIdsOverrideBuiltInOnes() {
+        Ini secret = new Ini();
+        secret.put("prompts", "embeds", " pmpt_embeds ");
+        secret.put("prompts", "message", "pmpt_message");
+        PromptType.init(secret);
+
+        assertEquals("pmpt_embeds", PromptType.EMBEDS.getId());
+        assertSame(PromptType.EMBEDS, PromptType.fromId("pmpt_embeds"));
+        assertSame(PromptType.MESSAGE, PromptType.fromId("pmpt_message"));
+        assertNull(PromptType.fromId("pmpt_68b501fb1e2c81938482bd862d30b2f1021303d66903eb25"));
+    }
+}
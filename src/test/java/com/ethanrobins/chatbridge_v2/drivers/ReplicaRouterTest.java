@@ -0,0 +1,194 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRouterTest {
+    private static final StubDriver driver = new StubDriver();
+
+    @BeforeAll
+    static void register() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    static void deregister() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Test
+    void replicasWithinTheMaxLagServeReads() {
+        ReplicaRouter router = newRouter(false);
+        try {
+            driver.status(true, 3L);
+            router.check();
+            assertNotNull(router.route("1"));
+            assertEquals(3, router.getStats().getFirst().lagSeconds());
+
+            driver.status(true, 6L);
+            router.check();
+            assertNull(router.route("1"));
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void replicasWithStoppedReplicationAreNotUsed() {
+        ReplicaRouter router = newRouter(false);
+        try {
+            driver.status(true, null);
+            router.check();
+            assertNull(router.route("1"));
+            assertEquals(-1, router.getStats().getFirst().lagSeconds());
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void serversThatDoNotReplicateAreNotUsed() {
+        ReplicaRouter router = newRouter(false);
+        try {
+            driver.status(false, null);
+            router.check();
+            assertNull(router.route("1"));
+            assertFalse(router.getStats().getFirst().healthy());
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void serversThatDoNotReplicateAreUsedWhenAllowed() {
+        ReplicaRouter router = newRouter(true);
+        try {
+            driver.status(false, null);
+            router.check();
+            assertNotNull(router.route("1"));
+            assertEquals(0, router.getStats().getFirst().lagSeconds());
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void theSharedRouterDefaultsToThePrimary() {
+        ReplicaRouter.set(null);
+        try {
+            ReplicaRouter router = ReplicaRouter.get();
+            assertSame(router, ReplicaRouter.get());
+            assertTrue(router.getReplicas().isEmpty());
+            assertNull(router.route("1"));
+        } finally {
+            ReplicaRouter.set(null);
+        }
+    }
+
+    private static ReplicaRouter newRouter(boolean allowStandalone) {
+        ConnectionPool pool = new ConnectionPool("jdbc:replica-stub:", null, null, 1, Duration.ofSeconds(1), Duration.ofMinutes(30), Duration.ofMinutes(10), Duration.ZERO);
+        ReplicaRouter.Replica replica = new ReplicaRouter.Replica("replica-1:3306", pool);
+        return new ReplicaRouter(List.of(replica), Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(10), allowStandalone);
+    }
+
+    /**
+     * Hands out connections whose only query is {@code SHOW REPLICA STATUS}, answered from {@link #status(boolean, Long)}.
+     */
+    private static final class StubDriver implements Driver {
+        private volatile boolean replicating = false;
+        private volatile Long lag = null;
+
+        void status(boolean replicating, Long lag) {
+            this.replicating = replicating;
+            this.lag = lag;
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            AtomicBoolean closed = new AtomicBoolean();
+            return proxy(Connection.class, (proxy, method, args) -> switch (method.getName()) {
+                case "createStatement" -> proxy(Statement.class, (stmt, m, a) -> m.getName().equals("executeQuery") ? replicaStatus() : null);
+                case "isValid" -> !closed.get();
+                case "isClosed" -> closed.get();
+                case "close" -> {
+                    closed.set(true);
+                    yield null;
+                }
+                case "getAutoCommit" -> true;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+        }
+
+        private ResultSet replicaStatus() {
+            AtomicBoolean read = new AtomicBoolean();
+            Long lag = this.lag;
+            boolean replicating = this.replicating;
+            return proxy(ResultSet.class, (rs, method, args) -> switch (method.getName()) {
+                case "next" -> replicating && !read.getAndSet(true);
+                case "findColumn" -> {
+                    if (!"Seconds_Behind_Source".equals(args[0])) throw new SQLException("Unknown column " + args[0]);
+                    yield 1;
+                }
+                case "getLong" -> lag != null ? lag : 0L;
+                case "wasNull" -> lag == null;
+                default -> null;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, handler);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:replica-stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import com.ethanrobins.chatbridge_v2.exceptions.BudgetExceededException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTest {
+    private static boolean wasDev;
+
+    @BeforeAll
+    static void devMode() throws Exception {
+        // Keeps the usage ledger from going to the database
+        wasDev = ChatBridge.isDev();
+        setDev(true);
+    }
+
+    @AfterAll
+    static void restore() throws Exception {
+        setDev(wasDev);
+        UsageLedger.set(null);
+    }
+    @Test
+    void estimatesBothVariants() {
+        Request request = new Request(new Request.Prompt("pmpt_1", null, "fr", "x".repeat(300)));
+        // "fr" and the message are 302 characters: 600 overhead + 101 input, then 202 + 64 output
+        assertEquals(600 + 101 + 266, request.estimateTokens());
+    }
+
+    @Test
+    void estimatesOneVariantForSingleVariantPrompts() {
+        Request.Prompt prompt = new Request.Prompt("pmpt_1", null, "fr", "x".repeat(300)).singleVariant(PromptType.MESSAGE, SafetyLevel.SAFE);
+        Request request = new Request(prompt);
+        // "safe" makes 306 characters: 600 overhead + 102 input, then 102 + 64 output
+        assertEquals(600 + 102 + 166, request.estimateTokens());
+    }
+
+    @Test
+    void maxTokensReplacesTheOutputEstimate() {
+        Request request = new Request(null, null, null, 50, null, new Request.Prompt("pmpt_1", null, "fr", "x".repeat(300)));
+        assertEquals(600 + 101 + 50, request.estimateTokens());
+    }
+
+    @Test
+    void identicalRequestsOfDifferentGuildsAreChargedToTheirOwnBudgets() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 0, 0, Map.of());
+        UsageLedger.set(ledger);
+        try (MockResponsesServer server = slowServer();
+             TranslationClient client = new TranslationClient(server.getUri(), "key", Duration.ofSeconds(5), Duration.ofSeconds(5), 2)) {
+            TranslationCache cache = new TranslationCache(1 << 20, Duration.ofHours(1));
+            CompletableFuture<Response> first = new Request(new Request.Prompt("pmpt_1", null, "fr", "Hello there")).setOrigin("1", "10").queue(client, cache);
+            CompletableFuture<Response> second = new Request(new Request.Prompt("pmpt_1", null, "fr", "Hello there")).setOrigin("2", "20").queue(client, cache);
+
+            assertNotNull(first.get().getOutput());
+            assertNotNull(second.get().getOutput());
+            assertTrue(ledger.getSpentToday("1") > 0);
+            assertTrue(ledger.getSpentToday("2") > 0);
+        }
+    }
+
+    @Test
+    void aGuildOverItsBudgetCannotJoinAnotherGuildsCall() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 0, 0, Map.of("2", 1L));
+        UsageLedger.set(ledger);
+        try (MockResponsesServer server = slowServer();
+             TranslationClient client = new TranslationClient(server.getUri(), "key", Duration.ofSeconds(5), Duration.ofSeconds(5), 2)) {
+            TranslationCache cache = new TranslationCache(1 << 20, Duration.ofHours(1));
+            CompletableFuture<Response> first = new Request(new Request.Prompt("pmpt_1", null, "fr", "Hello there")).setOrigin("1", "10").queue(client, cache);
+            CompletableFuture<Response> second = new Request(new Request.Prompt("pmpt_1", null, "fr", "Hello there")).setOrigin("2", "20").queue(client, cache);
+
+            ExecutionException refused = assertThrows(ExecutionException.class, second::get);
+            BudgetExceededException cause = assertInstanceOf(BudgetExceededException.class, refused.getCause());
+            assertEquals("2", cause.getGuildId());
+            assertNotNull(first.get().getOutput());
+            assertEquals(0, ledger.getSpentToday("2"));
+        }
+    }
+
+    private static MockResponsesServer slowServer() throws Exception {
+        // Slow enough that the second request is queued while the first is still in flight
+        return new MockResponsesServer(0, new MockResponsesServer.Latency("fixed", 300, 0), 0, 0, 0, 5000, 2_000_000, 24, 0, 42L).start();
+    }
+
+    private static void setDev(boolean dev) throws Exception {
+        Field field = ChatBridge.class.getDeclaredField("dev");
+        field.setAccessible(true);
+        field.setBoolean(null, dev);
+    }
+}
@@ -0,0 +1,71 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.Model;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestWriterTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String TEXT = "Héllo \"wörld\"\n\t\\ </script> \u0001 😀 日本語";
+
+    @Test
+    void writesMessagePromptsLikeDataBinding() throws Exception {
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", null, "fr", TEXT)));
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", "3", "de", "")));
+    }
+
+    @Test
+    void writesEveryOptionalPropertyLikeDataBinding() throws Exception {
+        Request request = new Request("request_1", Model.values()[0], 0.7, 512, false, new Request.Prompt("pmpt_1", "2", "fr", TEXT));
+        assertSameBytes(request);
+
+        Field stream = Request.class.getDeclaredField("stream");
+        stream.setAccessible(true);
+        stream.setBoolean(request, true);
+        assertSameBytes(request);
+    }
+
+    @Test
+    void writesEmbedPromptsLikeDataBinding() throws Exception {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("Name", TEXT);
+        fields.put("Empty", "");
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", null, "fr", TEXT, "Title", "Author", TEXT, "Footer", fields)));
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", null, "fr", null, null, (String) null, null, null, null)));
+    }
+
+    @Test
+    void writesMultiTargetPromptsLikeDataBinding() throws Exception {
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", null, List.of("fr", "de", "pt-BR"), TEXT)));
+    }
+
+    @Test
+    void writesSingleVariantPromptsLikeDataBinding() throws Exception {
+        assertSameBytes(new Request(new Request.Prompt("pmpt_1", null, "fr", TEXT).singleVariant(PromptType.MESSAGE, SafetyLevel.EXPLICIT)));
+    }
+
+    @Test
+    void encodesNestedVariablesLikeDataBinding() throws Exception {
+        Map<String, Object> embed = new LinkedHashMap<>();
+        embed.put("title", TEXT);
+        embed.put("fields", List.of(Map.of("name", "a", "value", TEXT)));
+        Object[] values = { null, TEXT, Map.of(), List.of(), List.of("fr", "de"), Map.of("k", TEXT), List.of(embed) };
+        for (Object value : values) {
+            assertEquals(mapper.writeValueAsString(value), RequestWriter.toJson(value));
+        }
+    }
+
+    private static void assertSameBytes(Request request) throws Exception {
+        byte[] expected = mapper.writeValueAsBytes(request);
+        byte[] actual = RequestWriter.write(request);
+        assertArrayEquals(expected, actual, () -> new String(expected, StandardCharsets.UTF_8) + "\n" + new String(actual, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseDecoderTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void decodesEveryTrainingOutputLikeJackson() throws IOException {
+        List<String> outputs = trainingOutputs();
+        assertEquals(235, outputs.size());
+
+        for (String text : outputs) {
+            String expected = expected(text);
+            char[] chars = text.toCharArray();
+            assertEquals(expected, describe(ResponseDecoder.decodeData(chars, 0, chars.length)), text);
+        }
+    }
+
+    @Test
+    void decodesOutputsInsideALargerBuffer() throws IOException {
+        for (String text : trainingOutputs()) {
+            String expected = expected(text);
+            // The parser reports locations relative to the offset it was given, not to the start of the buffer
+            String padded = "x".repeat(37) + text + "{\"junk\":true}";
+            assertEquals(expected, describe(ResponseDecoder.decodeData(padded.toCharArray(), 37, text.length())), text);
+        }
+    }
+
+    @Test
+    void decodesOutputsInsideAResponseBody() throws IOException {
+        for (String text : trainingOutputs()) {
+            String expected = expected(text);
+            String body = "{\"id\":\"resp_1\",\"created_at\":1,\"model\":\"m\",\"output\":[{\"id\":\"msg_1\",\"status\":\"completed\",\"content\":[{\"type\":\"output_text\",\"text\":"
+                    + mapper.writeValueAsString(text) + "}]}],\"usage\":{\"input_tokens\":1,\"output_tokens\":2,\"total_tokens\":3}}";
+            Response response = ResponseDecoder.decode(body.getBytes(StandardCharsets.UTF_8));
+            assertEquals(expected, describe(response.getOutput().getContent().getData()), text);
+        }
+    }
+
+    /**
+     * Decodes {@code text} the way {@link Response.Output.Content} always has, through the annotated classes.
+     */
+    private static String expected(String text) {
+        // The decoder also accepts the "" the model sometimes writes for no fields, which the annotated classes reject
+        Response.Data data = new Response.Output.Content(text.replace("\"fields\":\"\"", "\"fields\":[]")).getData();
+        assertNotNull(data, text);
+        return describe(data);
+    }
+
+    private static List<String> trainingOutputs() throws IOException {
+        List<String> outputs = new ArrayList<>();
+        try (InputStream in = Objects.requireNonNull(ResponseDecoderTest.class.getResourceAsStream("/training_data/training.jsonl"));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode messages = mapper.readTree(line).path("messages");
+                outputs.add(messages.get(messages.size() - 1).path("content").textValue());
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Renders everything a {@link Response.Data} exposes, since the response classes cannot be serialized.
+     */
+    private static String describe(Response.Data data) {
+        if (data == null) return "null";
+        StringBuilder out = new StringBuilder();
+        out.append("src=").append(data.getSource().getTag()).append('/').append(data.getSource().getLang());
+        for (Response.Data.Target<?> t : data.getTargets()) {
+            out.append("\ntgt ").append(t.getClass().getSimpleName()).append(' ').append(t.getTag()).append('/').append(t.getLang());
+            if (t instanceof Response.Data.VariantTarget<?> vt) {
+                out.append("\n  ").append(vt.getLevel()).append('=').append(describeVariant(vt.getContent()));
+            } else {
+                out.append("\n  e=").append(describeVariant(t.getExplicit()));
+                out.append("\n  s=").append(describeVariant(t.getSafe()));
+            }
+        }
+        return out.toString();
+    }
+
+    private static String describeVariant(Object variant) {
+        if (variant instanceof Response.Data.EmbedsContent c) {
+            StringBuilder out = new StringBuilder("embeds msg=").append(c.getMessage());
+            for (Response.Data.EmbedContent embed : c.getEmbeds()) {
+                out.append(" [").append(describeVariant(embed)).append(']');
+            }
+            return out.toString();
+        }
+        if (variant instanceof Response.Data.EmbedContent c) {
+            StringBuilder out = new StringBuilder("embed msg=").append(c.getMessage())
+                    .append(" title=").append(c.getTitle())
+                    .append(" author=").append(c.getAuthor())
+                    .append(" desc=").append(c.getDescription())
+                    .append(" footer=").append(c.getFooter());
+            if (c.getFields() != null) {
+                for (Response.Data.EmbedContent.Field f : c.getFields()) {
+                    out.append(" field=").append(f.getName()).append(':').append(f.getValue());
+                }
+            }
+            return out.toString();
+        }
+        return String.valueOf(variant);
+    }
+}
@@ -0,0 +1,124 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the migrations against a real server.
+ * <p>
+ * Skipped unless {@code CHATBRIDGE_TEST_MYSQL_URL} (for example {@code jdbc:mysql://127.0.0.1:3306/chatbridge_test}),
+ * {@code CHATBRIDGE_TEST_MYSQL_USER} and {@code CHATBRIDGE_TEST_MYSQL_PASS} are set. Every {@code chatbridge_} table in
+ * that database is dropped, so never point it at a database that matters.
+ * </p>
+ */
+class SchemaMigrationsTest {
+    private static final String URL = System.getenv("CHATBRIDGE_TEST_MYSQL_URL");
+    private static final BigInteger FIRST_ID = new BigInteger("100000000000000000");
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void connect() throws SQLException {
+        assumeTrue(URL != null && !URL.isBlank(), "CHATBRIDGE_TEST_MYSQL_URL is not set");
+        this.pool = new ConnectionPool(URL, System.getenv("CHATBRIDGE_TEST_MYSQL_USER"), System.getenv("CHATBRIDGE_TEST_MYSQL_PASS"),
+                2, Duration.ofSeconds(5), Duration.ofMinutes(30), Duration.ofMinutes(10), Duration.ZERO);
+        ConnectionPool.set(this.pool);
+        execute("DROP TABLE IF EXISTS chatbridge_schema_version, chatbridge_userstore, chatbridge_guildstore, chatbridge_usage");
+    }
+
+    @AfterEach
+    void disconnect() {
+        ConnectionPool.set(null);
+    }
+
+    @Test
+    void migratesAnEmptyDatabase() throws SQLException {
+        assertEquals(SchemaMigrations.getLatestVersion(), SchemaMigrations.migrate());
+        assertEquals(0, SchemaMigrations.migrate());
+
+        execute("INSERT INTO chatbridge_userstore (id, locale_code, safety_code) VALUES (18446744073709551615, 5, 1)");
+        execute("INSERT INTO chatbridge_guildstore (id, status, safety_code) VALUES (1, TRUE, 0)");
+        execute("INSERT INTO chatbridge_usage (day, guild_id, requests) VALUES (CURRENT_DATE, '1', 1)");
+    }
+
+    @Test
+    void backfillsEveryStoredLocaleAndSafetyLevel() throws SQLException {
+        // The tables as the bot created them before migrations existed, status still nullable
+        execute("CREATE TABLE chatbridge_userstore (id VARCHAR(32) NOT NULL PRIMARY KEY, locale VARCHAR(16) NULL, safety VARCHAR(16) NOT NULL DEFAULT 'safe')");
+        execute("CREATE TABLE chatbridge_guildstore (id VARCHAR(32) NOT NULL PRIMARY KEY, status BOOLEAN NULL, safety VARCHAR(16) NULL DEFAULT 'safe')");
+
+        // Every string the bot ever wrote: each DiscordLocale tag including "unknown", and no locale at all
+        Map<BigInteger, DiscordLocale> locales = new HashMap<>();
+        Map<BigInteger, SafetyLevel> safety = new HashMap<>();
+        BigInteger id = FIRST_ID;
+        for (DiscordLocale locale : DiscordLocale.values()) {
+            SafetyLevel level = locales.size() % 2 == 0 ? SafetyLevel.SAFE : SafetyLevel.EXPLICIT;
+            insertUser(id, locale.getLocale(), level.getId());
+            locales.put(id, locale != DiscordLocale.UNKNOWN ? locale : null);
+            safety.put(id, level);
+            id = id.add(BigInteger.ONE);
+        }
+        insertUser(id, null, "explicit");
+        locales.put(id, null);
+        safety.put(id, SafetyLevel.EXPLICIT);
+
+        execute("INSERT INTO chatbridge_guildstore (id, status, safety) VALUES "
+                + "('1', TRUE, 'explicit'), ('2', FALSE, 'safe'), ('3', NULL, NULL), ('4', TRUE, 'unknown')");
+
+        assertEquals(SchemaMigrations.getLatestVersion(), SchemaMigrations.migrate());
+
+        int users = 0;
+        try (Connection conn = this.pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, locale_code, safety_code FROM chatbridge_userstore")) {
+            while (rs.next()) {
+                BigInteger userId = rs.getObject("id", BigInteger.class);
+                assertEquals(locales.get(userId), SettingsCodes.locale(rs.getInt("locale_code")), "locale of " + userId);
+                assertEquals(safety.get(userId), SettingsCodes.safetyLevel(rs.getInt("safety_code")), "safety level of " + userId);
+                users++;
+            }
+        }
+        assertEquals(locales.size(), users);
+
+        Map<Long, String> guilds = new HashMap<>();
+        try (Connection conn = this.pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, status, safety_code FROM chatbridge_guildstore")) {
+            while (rs.next()) {
+                guilds.put(rs.getLong("id"), rs.getBoolean("status") + " " + SettingsCodes.safetyLevel(rs.getInt("safety_code")).getId());
+            }
+        }
+        assertEquals(Map.of(1L, "true explicit", 2L, "false safe", 3L, "false safe", 4L, "true safe"), guilds);
+    }
+
+    private void insertUser(BigInteger id, String locale, String safety) throws SQLException {
+        try (Connection conn = this.pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO chatbridge_userstore (id, locale, safety) VALUES (?, ?, ?)")) {
+            stmt.setString(1, id.toString());
+            stmt.setString(2, locale);
+            stmt.setString(3, safety);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = this.pool.borrow(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettingsCacheTest {
+    @Test
+    void unknownUsersHaveNoLocale() throws SQLException {
+        SettingsCache cache = new SettingsCache(new InMemorySettingsStore(), 100, Duration.ofHours(1), Duration.ofMinutes(5));
+        assertNull(cache.getLocale("1"));
+    }
+
+    @Test
+    void registeredUsersHaveTheirLocale() throws SQLException {
+        InMemorySettingsStore store = new InMemorySettingsStore();
+        store.updateLocale("1", DiscordLocale.FRENCH);
+        SettingsCache cache = new SettingsCache(store, 100, Duration.ofHours(1), Duration.ofMinutes(5));
+        assertEquals(DiscordLocale.FRENCH, cache.getLocale("1"));
+    }
+
+    @Test
+    void failedLoadsAreThrownAndNotCached() throws SQLException {
+        InMemorySettingsStore store = new InMemorySettingsStore();
+        store.updateLocale("1", DiscordLocale.FRENCH);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        SettingsCache cache = new SettingsCache(failingReads(store, failing), 100, Duration.ofHours(1), Duration.ofMinutes(5));
+
+        assertThrows(SQLException.class, () -> cache.getLocale("1"));
+        // Other reads still fall back to the default
+        assertEquals(SafetyLevel.SAFE, cache.getSafetyLevel(true, "1"));
+
+        failing.set(false);
+        assertEquals(DiscordLocale.FRENCH, cache.getLocale("1"));
+    }
+
+    /**
+     * @return A store whose reads fail while {@code failing} is set, and that otherwise delegates to {@code store}.
+     */
+    private static SettingsStore failingReads(SettingsStore store, AtomicBoolean failing) {
+        return (SettingsStore) Proxy.newProxyInstance(SettingsStore.class.getClassLoader(), new Class<?>[]{ SettingsStore.class }, (proxy, method, args) -> {
+            if (failing.get() && method.getName().startsWith("get")) {
+                throw new SQLTransientConnectionException("Connection refused");
+            }
+            try {
+                return method.invoke(store, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        });
+    }
+}
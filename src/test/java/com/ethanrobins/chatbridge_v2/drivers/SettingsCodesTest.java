@@ -0,0 +1,59 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import net.dv8tion.jda.api.interactions.DiscordLocale;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettingsCodesTest {
+    @Test
+    void everyLocaleRoundTrips() {
+        Set<Integer> codes = new HashSet<>();
+        for (DiscordLocale locale : DiscordLocale.values()) {
+            if (locale == DiscordLocale.UNKNOWN) continue;
+            int code = SettingsCodes.localeCode(locale);
+            assertTrue(code > 0 && code <= 255, locale + " has no code");
+            assertTrue(codes.add(code), locale + " shares code " + code);
+            assertEquals(locale, SettingsCodes.locale(code));
+        }
+    }
+
+    @Test
+    void noLocaleIsCodeZero() {
+        assertEquals(0, SettingsCodes.localeCode(null));
+        assertEquals(0, SettingsCodes.localeCode(DiscordLocale.UNKNOWN));
+        assertNull(SettingsCodes.locale(0));
+        assertNull(SettingsCodes.locale(-1));
+        assertNull(SettingsCodes.locale(255));
+    }
+
+    @Test
+    void everySafetyLevelRoundTrips() {
+        assertEquals(0, SettingsCodes.safetyCode(SafetyLevel.SAFE));
+        for (SafetyLevel level : SafetyLevel.values()) {
+            assertEquals(level, SettingsCodes.safetyLevel(SettingsCodes.safetyCode(level)));
+        }
+        assertEquals(SafetyLevel.SAFE, SettingsCodes.safetyLevel(200));
+    }
+
+    @Test
+    void safetyCaseSql() {
+        assertEquals("CASE safety WHEN 'safe' THEN 0 WHEN 'explicit' THEN 1 ELSE 0 END", SettingsCodes.safetyCodeSql("safety"));
+    }
+
+    @Test
+    void localeCaseSqlMatchesTheCodes() {
+        String sql = SettingsCodes.localeCodeSql("locale");
+        assertTrue(sql.startsWith("CASE locale WHEN "), sql);
+        assertTrue(sql.endsWith(" ELSE 0 END"), sql);
+        for (DiscordLocale locale : DiscordLocale.values()) {
+            if (locale == DiscordLocale.UNKNOWN) continue;
+            String when = " WHEN '" + locale.getLocale() + "' THEN " + SettingsCodes.localeCode(locale);
+            assertTrue(sql.contains(when + " ") , "Missing" + when);
+        }
+        assertFalse(sql.contains("'unknown'"), sql);
+    }
+}
@@ -0,0 +1,49 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettingsStoreTest {
+    @Test
+    void nothingChangesWhenInSync() {
+        assertEquals(Map.of(), SettingsStore.diffGuilds(Map.of("1", true, "2", false), Set.of("1")));
+    }
+
+    @Test
+    void deactivatesGuildsThatAreNotReady() {
+        assertEquals(Map.of("1", false), SettingsStore.diffGuilds(Map.of("1", true, "2", true), Set.of("2")));
+    }
+
+    @Test
+    void reactivatesRegisteredGuilds() {
+        assertEquals(Map.of("2", true), SettingsStore.diffGuilds(Map.of("1", true, "2", false), Set.of("1", "2")));
+    }
+
+    @Test
+    void registersNewGuilds() {
+        assertEquals(Map.of("3", true), SettingsStore.diffGuilds(Map.of("1", true), Set.of("1", "3")));
+        assertEquals(Map.of("1", true, "2", true), SettingsStore.diffGuilds(Map.of(), Set.of("1", "2")));
+    }
+
+    @Test
+    void noReadyGuildsDeactivatesAll() {
+        assertEquals(Map.of("1", false), SettingsStore.diffGuilds(Map.of("1", true, "2", false), Set.of()));
+    }
+
+    @Test
+    void reconcileWritesOnlyChanges() throws Exception {
+        InMemorySettingsStore store = new InMemorySettingsStore();
+        store.setGuildStatus("1", true);
+        store.setGuildStatus("2", true);
+        store.setSafetyLevel(false, "2", SafetyLevel.EXPLICIT);
+
+        assertEquals(Map.of("2", false, "3", true), store.reconcileGuilds(Set.of("1", "3")));
+        assertEquals(Map.of("1", true, "2", false, "3", true), store.getGuildStatuses());
+        assertEquals(SafetyLevel.EXPLICIT, store.getGuild("2").safetyLevel());
+        assertEquals(Map.of(), store.reconcileGuilds(Set.of("1", "3")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranslationCacheTest {
+    private static final TranslationKey KEY = new TranslationKey("pmpt_1", "", "fr", "hash");
+    private static final String EMBED = "{\"src\":{\"tag\":\"en-US\",\"lang\":\"English\"},\"tgt\":{\"tag\":\"fr\",\"lang\":\"French\","
+            + "\"e\":{\"title\":\"Bonjour\",\"desc\":\"Salut tout le monde\",\"fields\":[{\"name\":\"a\",\"value\":\"b\"}]},"
+            + "\"s\":{\"title\":\"Bonjour\",\"desc\":\"Bonjour tout le monde\",\"fields\":[{\"name\":\"a\",\"value\":\"b\"}]}}}";
+    private static final String MESSAGE = "{\"src\":{\"tag\":\"en-US\",\"lang\":\"English\"},\"tgt\":{\"tag\":\"fr\",\"lang\":\"French\",\"e\":\"Salut\",\"s\":\"Bonjour\"}}";
+
+    @Test
+    void decodingDropsTheJson() {
+        LazyContent<String> content = LazyContent.of("{\"a\":1}", String::toUpperCase);
+        assertEquals("{\"a\":1}", content.getJson());
+        assertFalse(content.isMaterialized());
+
+        assertEquals("{\"A\":1}", content.get());
+        assertTrue(content.isMaterialized());
+        assertNull(content.getJson());
+        assertSame(content, content.detached());
+    }
+
+    @Test
+    void hitsDecodeIntoTheirOwnCopy() {
+        TranslationCache cache = new TranslationCache(1 << 20, Duration.ofHours(1));
+        cache.put(KEY, decode(EMBED));
+        long bytes = cache.getBytes();
+
+        Response.Data first = cache.get(KEY);
+        assertNotNull(first);
+        assertEquals("Salut tout le monde", ((Response.Data.EmbedContent) first.getTarget().getExplicit()).getDescription());
+        assertTrue(((Response.Data.EmbedTarget) first.getTarget()).getExplicitContent().isMaterialized());
+
+        Response.Data second = cache.get(KEY);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertFalse(((Response.Data.EmbedTarget) second.getTarget()).getExplicitContent().isMaterialized());
+        assertEquals(bytes, cache.getBytes());
+    }
+
+    @Test
+    void storingDoesNotTouchTheCallersCopy() {
+        TranslationCache cache = new TranslationCache(1 << 20, Duration.ofHours(1));
+        Response.Data data = decode(EMBED);
+        cache.put(KEY, data);
+
+        data.getTarget().getSafe();
+        assertTrue(((Response.Data.EmbedTarget) data.getTarget()).getSafeContent().isMaterialized());
+        assertFalse(((Response.Data.EmbedTarget) cache.get(KEY).getTarget()).getSafeContent().isMaterialized());
+    }
+
+    @Test
+    void rawVariantsAreChargedOnce() {
+        Response.Data data = decode(EMBED);
+        Response.Data.EmbedTarget target = (Response.Data.EmbedTarget) data.getTarget();
+        long raw = TranslationCache.sizeOf(data);
+
+        long strings = 2 * 40 + 2L * ("en-US".length() + "English".length())
+                + 2 * 40 + 2L * ("fr".length() + "French".length())
+                + 40 + 2L * target.getExplicitContent().getJson().length()
+                + 40 + 2L * target.getSafeContent().getJson().length();
+        assertEquals(strings, raw);
+    }
+
+    @Test
+    void messagesAreNotCopied() {
+        Response.Data data = decode(MESSAGE);
+        assertSame(data, TranslationCache.detached(data));
+    }
+
+    private static Response.Data decode(String text) {
+        char[] chars = text.toCharArray();
+        Response.Data data = ResponseDecoder.decodeData(chars, 0, chars.length);
+        assertNotNull(data);
+        return data;
+    }
+}
@@ -0,0 +1,238 @@
+package com.ethanrobins.chatbridge_v2.drivers;
+
+import com.ethanrobins.chatbridge_v2.ChatBridge;
+import com.ethanrobins.chatbridge_v2.exceptions.BudgetExceededException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageLedgerTest {
+    private static boolean wasDev;
+
+    @BeforeAll
+    static void devMode() throws Exception {
+        // Keeps loadSpent from going to the database
+        wasDev = ChatBridge.isDev();
+        setDev(true);
+    }
+
+    @AfterAll
+    static void restore() throws Exception {
+        setDev(wasDev);
+    }
+
+    @Test
+    void concurrentReservationsStayWithinTheDailyBudget() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 1000, 0, Map.of());
+        AtomicInteger reserved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        try {
+                            ledger.reserve("1", 10, null);
+                            reserved.incrementAndGet();
+                        } catch (BudgetExceededException ignored) {
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) task.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(100, reserved.get());
+        assertEquals(1000, ledger.getSpentToday("1"));
+    }
+
+    @Test
+    void settlingGivesUnusedTokensBack() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 100, 0, Map.of());
+        ledger.reserve("1", 100, null);
+        assertThrows(BudgetExceededException.class, () -> ledger.reserve("1", 1, null));
+
+        ledger.settle("1", null, 100, null, null);
+        assertEquals(0, ledger.getSpentToday("1"));
+        ledger.reserve("1", 100, null);
+    }
+
+    @Test
+    void refusingPastTheDeadlineDoesNotSpendTheBudget() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 1000, 100, Map.of());
+        ledger.reserve("1", 100, null);
+        // The next minute has no room before the deadline
+        assertThrows(BudgetExceededException.class, () -> ledger.reserve("1", 100, Instant.now()));
+        assertEquals(100, ledger.getSpentToday("1"));
+    }
+
+    @Test
+    void usageAboveTheReservationCountsTowardsTheMinute() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 0, 1000, Map.of());
+        ledger.reserve("1", 100, null);
+        ledger.settle("1", null, 100, null, response(900));
+        // Only 100 of the minute's 1000 tokens are left
+        assertThrows(BudgetExceededException.class, () -> ledger.reserve("1", 200, Instant.now()));
+        assertEquals(900, ledger.getSpentToday("1"));
+    }
+
+    @Test
+    void discardedAttemptsAreCharged() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 1000, 0, Map.of());
+        ledger.reserve("1", 500, null);
+        ledger.settle("1", null, 500, null, response(400));
+        ledger.settle("1", null, 0, null, response(400));
+        assertEquals(800, ledger.getSpentToday("1"));
+        assertThrows(BudgetExceededException.class, () -> ledger.reserve("1", 300, null));
+    }
+
+    @Test
+    void requestsOutsideAGuildAreNotLimited() throws Exception {
+        UsageLedger ledger = new UsageLedger(Duration.ofMinutes(1), 1, 1, Map.of());
+        assertEquals(0, ledger.reserve(null, 1000, null));
+    }
+
+    @Test
+    void reservingAndSettlingDoNotWaitForTheDatabase() throws Exception {
+        StalledDriver driver = new StalledDriver();
+        DriverManager.registerDriver(driver);
+        ConnectionPool.set(new ConnectionPool("jdbc:usage-stub:", null, null, 1, Duration.ofSeconds(5), Duration.ofMinutes(30), Duration.ofMinutes(10), Duration.ZERO));
+        UsageLedger ledger = new UsageLedger(Duration.ofHours(1), 1000, 0, Map.of());
+        setDev(false);
+        try {
+            ledger.start();
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+                ledger.reserve("1", 100, null);
+                ledger.settle("1", null, 100, null, null);
+                ledger.reserve("1", 100, null);
+            });
+            assertEquals(100, ledger.getSpentToday("1"));
+
+            // The database answers, and what the guild spent earlier today is added
+            driver.stall.countDown();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (ledger.getSpentToday("1") == 100 && System.nanoTime() < deadline) Thread.sleep(10);
+            assertEquals(600, ledger.getSpentToday("1"));
+        } finally {
+            driver.stall.countDown();
+            ledger.settle("1", null, 100, null, null);
+            ledger.shutdown();
+            setDev(true);
+            ConnectionPool.set(null);
+            DriverManager.deregisterDriver(driver);
+        }
+    }
+
+    private static Response response(int tokens) {
+        return new Response("resp_1", 0, null, null, null, List.of(), new Response.Usage(tokens / 2, tokens - tokens / 2, tokens));
+    }
+
+    private static void setDev(boolean dev) throws Exception {
+        Field field = ChatBridge.class.getDeclaredField("dev");
+        field.setAccessible(true);
+        field.setBoolean(null, dev);
+    }
+
+    /**
+     * Answers every query with a spend of 500 tokens, but only once {@link #stall} is counted down.
+     */
+    private static final class StalledDriver implements Driver {
+        private final CountDownLatch stall = new CountDownLatch(1);
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            AtomicBoolean closed = new AtomicBoolean();
+            return proxy(Connection.class, (proxy, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> proxy(PreparedStatement.class, (stmt, m, a) -> m.getName().equals("executeQuery") ? spend() : null);
+                case "isValid" -> !closed.get();
+                case "isClosed" -> closed.get();
+                case "close" -> {
+                    closed.set(true);
+                    yield null;
+                }
+                case "getAutoCommit" -> true;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+        }
+
+        private ResultSet spend() throws InterruptedException {
+            this.stall.await();
+            AtomicBoolean read = new AtomicBoolean();
+            return proxy(ResultSet.class, (rs, method, args) -> switch (method.getName()) {
+                case "next" -> !read.getAndSet(true);
+                case "getLong" -> 500L;
+                default -> null;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, handler);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:usage-stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}